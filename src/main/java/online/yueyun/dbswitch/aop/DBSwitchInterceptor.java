@@ -1,27 +1,45 @@
 package online.yueyun.dbswitch.aop;
 
 import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.cache.QueryResultCache;
 import online.yueyun.dbswitch.datasource.DynamicDataSource;
 import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
 import online.yueyun.dbswitch.datasource.DynamicDataSourceSelector;
+import online.yueyun.dbswitch.datasource.ReadYourWritesContext;
 import online.yueyun.dbswitch.enums.MQType;
 import online.yueyun.dbswitch.enums.OperationType;
+import online.yueyun.dbswitch.enums.WriteMode;
 import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
 import online.yueyun.dbswitch.mq.producer.MQProducer;
-import online.yueyun.dbswitch.util.SqlParserUtil;
+import online.yueyun.dbswitch.mq.producer.MQProducerSelector;
+import online.yueyun.dbswitch.mq.producer.impl.AsyncBatchingMQProducer;
+import online.yueyun.dbswitch.mq.producer.impl.CoalescingMQProducer;
+import online.yueyun.dbswitch.outbox.OutboxService;
+import online.yueyun.dbswitch.service.ReplicationLagService;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
-import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.plugin.Intercepts;
 import org.apache.ibatis.plugin.Invocation;
 import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -30,113 +48,315 @@ import java.util.UUID;
 @Slf4j
 @Component
 @Intercepts({
-    @Signature(type = org.apache.ibatis.executor.Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
-    @Signature(type = org.apache.ibatis.executor.Executor.class, method = "query", args = {MappedStatement.class, Object.class, org.apache.ibatis.session.RowBounds.class, org.apache.ibatis.session.ResultHandler.class})
+    @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+    @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, org.apache.ibatis.session.RowBounds.class, org.apache.ibatis.session.ResultHandler.class})
 })
 public class DBSwitchInterceptor implements Interceptor {
 
     @Autowired
     private DynamicDataSourceSelector dataSourceSelector;
 
+    @Autowired
+    private MappedStatementRouteRegistry routeRegistry;
+
+    @Autowired
+    private MQProducerSelector mqProducerSelector;
+
     @Autowired(required = false)
-    private MQType mqType;
+    private AsyncBatchingMQProducer asyncMQProducer;
 
     @Autowired(required = false)
-    @Qualifier("rocketMQProducer")
-    private MQProducer rocketMQProducer;
+    private CoalescingMQProducer coalescingMQProducer;
 
     @Autowired(required = false)
-    @Qualifier("rabbitMQProducer")
-    private MQProducer rabbitMQProducer;
+    private OutboxService outboxService;
+
+    @Autowired
+    private DBSwitchMetrics metrics;
+
+    @Autowired
+    private ReplicationLagService replicationLagService;
+
+    @Autowired(required = false)
+    private QueryResultCache queryResultCache;
+
+    @Autowired(required = false)
+    private ParallelDualWriter parallelDualWriter;
+
+    @Autowired(required = false)
+    private ShadowReadVerifier shadowReadVerifier;
+
+    @Value("${dbswitch.read-your-writes.min-pin-ms:1000}")
+    private long minPinMillis;
 
     @Override
     public Object intercept(Invocation invocation) throws Throwable {
+        // 消费端回放双写消息时已指定目标数据源，直接执行，不再路由和双写
+        if (DynamicDataSource.isDataSourceSet()) {
+            Object result = invocation.proceed();
+            if (queryResultCache != null) {
+                invalidateQueryCache(invocation);
+            }
+            return result;
+        }
+
+        long start = System.nanoTime();
         Object[] args = invocation.getArgs();
         MappedStatement ms = (MappedStatement) args[0];
         Object parameter = args[1];
         
-        // 获取Mapper类名和方法名
-        String mapperClassName = ms.getId().substring(0, ms.getId().lastIndexOf("."));
-        String methodName = ms.getId().substring(ms.getId().lastIndexOf(".") + 1);
+        // 获取预先解析的路由描述（Mapper类名、方法名、操作类型）
+        MappedStatementRoute route = routeRegistry.getRoute(ms);
+        String mapperClassName = route.getMapperClassName();
+        String methodName = route.getMethodName();
+        OperationType operationType = route.getOperationType();
         
-        // 解析操作类型
-        OperationType operationType = parseOperationType(ms);
+        // 获取本次调用的写入模式快照，后续所有路由判断均基于该快照
+        WriteMode writeMode = dataSourceSelector.currentWriteMode();
         
         // 判断是否需要双写
-        boolean needDualWrite = dataSourceSelector.needDualWrite(operationType);
+        boolean needDualWrite = route.isDualWriteEligible() && dataSourceSelector.needDualWrite(writeMode, operationType);
         
         // 执行单库操作（查询或非双写模式下的写操作）
         if (!needDualWrite) {
-            return executeSingleOperation(invocation, operationType, mapperClassName, methodName);
+            return executeSingleOperation(invocation, ms, parameter, start, writeMode, operationType, mapperClassName, methodName);
         }
         
         // 执行双写操作
-        return executeDualWriteOperation(invocation, operationType, parameter, mapperClassName, methodName);
+        return executeDualWriteOperation(invocation, ms, start, writeMode, operationType, parameter, mapperClassName, methodName);
     }
 
     /**
      * 执行单库操作
      */
-    private Object executeSingleOperation(Invocation invocation, OperationType operationType, 
-                                         String mapperClassName, String methodName) throws Throwable {
+    private Object executeSingleOperation(Invocation invocation, MappedStatement ms, Object parameter, long start,
+                                         WriteMode writeMode, OperationType operationType, String mapperClassName,
+                                         String methodName) throws Throwable {
         // 根据操作类型和写入模式，切换到对应的数据源
-        boolean useMaster = dataSourceSelector.useMasterDataSource(operationType);
-        DynamicDataSource.setDataSource(useMaster ? DataSourceType.MASTER : DataSourceType.SLAVE);
+        boolean select = operationType == OperationType.SELECT;
+        boolean pinned = select && pinReadToFirstWrite(ms, parameter, writeMode);
+        boolean useMaster = select && !pinned
+                ? dataSourceSelector.useMasterForRead(writeMode, ms.getId())
+                : dataSourceSelector.useMasterDataSource(writeMode, operationType);
+        DataSourceType dataSourceType = useMaster ? DataSourceType.MASTER : DataSourceType.SLAVE;
+        // 固定到先写的库的查询读该库本身，不路由到可能落后的只读副本
+        DynamicDataSource.setDataSource(dataSourceType, select && !pinned);
+        if (shadowReadVerifier != null && operationType == OperationType.SELECT) {
+            shadowReadVerifier.sample(ms, parameter, (RowBounds) invocation.getArgs()[2], dataSourceType);
+        }
         
+        long statementNanos = 0;
         try {
             log.debug("单库操作，类型: {}, 数据源: {}, Mapper: {}, 方法: {}", 
                      operationType, useMaster ? "主库" : "从库", mapperClassName, methodName);
-            return invocation.proceed();
+            long statementStart = System.nanoTime();
+            try {
+                if (queryResultCache == null) {
+                    return invocation.proceed();
+                }
+                if (operationType == OperationType.SELECT) {
+                    return queryWithCache(invocation, ms, parameter, dataSourceType);
+                }
+                Object result = invocation.proceed();
+                invalidateQueryCache(invocation);
+                return result;
+            } finally {
+                statementNanos = System.nanoTime() - statementStart;
+                metrics.recordStatement(ms.getId(), dataSourceType, statementNanos);
+            }
         } finally {
             DynamicDataSource.clearDataSource();
+            metrics.recordInterceptorOverhead(System.nanoTime() - start - statementNanos);
         }
     }
 
     /**
      * 执行双写操作
      */
-    private Object executeDualWriteOperation(Invocation invocation, OperationType operationType, 
-                                            Object parameter, String mapperClassName, String methodName) throws Throwable {
-        // 决定先执行哪个库
-        boolean useMaster = dataSourceSelector.useMasterDataSource(operationType);
-        
-        // 切换到第一个数据源
-        DynamicDataSource.setDataSource(useMaster ? DataSourceType.MASTER : DataSourceType.SLAVE);
-        
-        // 执行第一个库的操作
-        Object result = null;
+    private Object executeDualWriteOperation(Invocation invocation, MappedStatement ms, long start, WriteMode writeMode,
+                                            OperationType operationType, Object parameter, String mapperClassName,
+                                            String methodName) throws Throwable {
+        long statementNanos = 0;
         try {
-            log.debug("双写操作，第一个数据源: {}, Mapper: {}, 方法: {}", 
-                     useMaster ? "主库" : "从库", mapperClassName, methodName);
-            result = invocation.proceed();
+            // 决定先执行哪个库
+            boolean useMaster = dataSourceSelector.useMasterDataSource(writeMode, operationType);
+            DataSourceType dataSourceType = useMaster ? DataSourceType.MASTER : DataSourceType.SLAVE;
+
+            // 并行同步双写：第二个库与第一个库同时执行
+            ParallelDualWriter.SecondWrite secondWrite = null;
+            if (parallelDualWriter != null && parallelDualWriter.isEligible(ms, routeRegistry.getWriteTables(ms, parameter))) {
+                DataSourceType secondType = dataSourceSelector.secondWriteInMaster(writeMode)
+                        ? DataSourceType.MASTER : DataSourceType.SLAVE;
+                secondWrite = parallelDualWriter.submit(ms, parameter, secondType);
+            }
+
+            // 切换到第一个数据源
+            DynamicDataSource.setDataSource(dataSourceType);
+
+            // 执行第一个库的操作
+            Object result = null;
+            try {
+                log.debug("双写操作，第一个数据源: {}, Mapper: {}, 方法: {}",
+                         useMaster ? "主库" : "从库", mapperClassName, methodName);
+                long statementStart = System.nanoTime();
+                try {
+                    result = invocation.proceed();
+                    if (queryResultCache != null) {
+                        invalidateQueryCache(invocation);
+                    }
+                } catch (Throwable e) {
+                    if (secondWrite != null) {
+                        secondWrite.abort();
+                    }
+                    throw e;
+                } finally {
+                    statementNanos = System.nanoTime() - statementStart;
+                    metrics.recordStatement(ms.getId(), dataSourceType, statementNanos);
+                }
+
+                // 第二个库在超时时间内提交成功时不再发送消息，否则回退到下面的异步双写
+                if (secondWrite != null && secondWrite.commit()) {
+                    log.debug("并行同步双写完成，Mapper: {}, 方法: {}", mapperClassName, methodName);
+                    return result;
+                }
+
+                // 发件箱模式：在第一个库的同一连接和事务中写入消息，由发件箱投递任务发送
+                if (outboxService != null) {
+                    boolean secondMaster = dataSourceSelector.secondWriteInMaster(writeMode);
+                    DBOperationMessage message = buildMessage(mapperClassName, methodName, parameter, operationType, secondMaster);
+                    recordWrite(ms, parameter, message);
+                    saveToOutbox(invocation, message);
+                    return result;
+                }
+            } finally {
+                DynamicDataSource.clearDataSource();
+            }
+
+            // 检查是否配置了MQ，如果没有则直接返回结果
+            if (mqProducerSelector.getMqType() == null) {
+                log.warn("未配置消息队列类型或未找到消息队列依赖，跳过双写操作");
+                return result;
+            }
+
+            // 通过消息队列异步执行第二个库的操作
+            try {
+                // 获取第二个数据源信息
+                boolean secondMaster = dataSourceSelector.secondWriteInMaster(writeMode);
+
+                log.debug("双写操作，发送消息队列，第二个数据源: {}, Mapper: {}, 方法: {}",
+                         secondMaster ? "主库" : "从库", mapperClassName, methodName);
+
+                // 构建消息，添加第二个数据源信息
+                DBOperationMessage message = buildMessage(mapperClassName, methodName, parameter, operationType, secondMaster);
+                recordWrite(ms, parameter, message);
+
+                // 发送消息
+                sendMessage(message);
+            } catch (Exception e) {
+                log.error("发送双写消息失败: ", e);
+            }
+
+            return result;
         } finally {
-            DynamicDataSource.clearDataSource();
+            metrics.recordInterceptorOverhead(System.nanoTime() - start - statementNanos);
         }
+    }
 
-        // 检查是否配置了MQ，如果没有则直接返回结果
-        if (mqType == null) {
-            log.warn("未配置消息队列类型或未找到消息队列依赖，跳过双写操作");
-            return result;
+    /**
+     * 使用查询结果缓存执行查询
+     * 只缓存未指定ResultHandler、事务外、涉及的表全部可缓存的查询；缓存键为MyBatis的CacheKey加上目标数据源
+     */
+    private Object queryWithCache(Invocation invocation, MappedStatement ms, Object parameter,
+                                  DataSourceType dataSourceType) throws Throwable {
+        Object[] args = invocation.getArgs();
+        if (args[3] != Executor.NO_RESULT_HANDLER || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return invocation.proceed();
+        }
+        Set<String> tables = routeRegistry.getTables(ms, parameter);
+        if (!queryResultCache.isCacheable(tables)) {
+            return invocation.proceed();
+        }
+
+        Executor executor = (Executor) invocation.getTarget();
+        BoundSql boundSql = ms.getBoundSql(parameter);
+        CacheKey key = executor.createCacheKey(ms, parameter, (RowBounds) args[2], boundSql);
+        key.update(dataSourceType);
+        // 缓存返回的是结果副本，调用方修改结果对象不影响缓存
+        List<?> cached = queryResultCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // 先读取表版本再查询，查询期间发生的写操作会使本次结果不被缓存
+        long[] versions = queryResultCache.versions(tables);
+        Object result = invocation.proceed();
+        if (result instanceof List<?> list) {
+            queryResultCache.put(key, tables, versions, list);
+        }
+        return result;
+    }
+
+    /**
+     * 写操作后使查询缓存中涉及的表失效，处于事务中时在事务结束后再失效一次，避免事务提交前读到的旧数据被缓存
+     */
+    private void invalidateQueryCache(Invocation invocation) {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        if (routeRegistry.getRoute(ms).getOperationType() == OperationType.SELECT) {
+            return;
+        }
+        Set<String> tables = routeRegistry.getWriteTables(ms, invocation.getArgs()[1]);
+        queryResultCache.invalidate(tables);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    queryResultCache.invalidate(tables);
+                }
+            });
+        }
+    }
+
+    /**
+     * 查询是否固定到先写的库
+     * 查询涉及本请求（或会话）写过且第二个库尚未执行到的表时，读先写的库本身：
+     * 第二个库和先写的库的只读副本都可能还看不到这次写入
+     */
+    private boolean pinReadToFirstWrite(MappedStatement ms, Object parameter, WriteMode writeMode) {
+        if (!ReadYourWritesContext.isActive() || !dataSourceSelector.isDualWriteMode(writeMode)) {
+            return false;
         }
+        if (ReadYourWritesContext.mustReadFirst(routeRegistry.getTables(ms, parameter),
+                replicationLagService.getGlobalWatermark(), minPinMillis)) {
+            log.debug("读己之写，查询固定到先写的库: {}", ms.getId());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 在读己之写上下文中记录写入的表，写入时间取双写消息的创建时间，与已执行水位可比
+     */
+    private void recordWrite(MappedStatement ms, Object parameter, DBOperationMessage message) {
+        if (ReadYourWritesContext.isActive()) {
+            ReadYourWritesContext.recordWrite(routeRegistry.getWriteTables(ms, parameter), message.getCreateTime().getTime());
+        }
+    }
 
-        // 通过消息队列异步执行第二个库的操作
+    /**
+     * 在业务写操作的连接上写入发件箱
+     * 处于事务中时写入失败直接抛出异常，使业务写操作一并回滚；自动提交时改为直接发送消息队列
+     */
+    private void saveToOutbox(Invocation invocation, DBOperationMessage message) throws SQLException {
+        Connection connection = ((Executor) invocation.getTarget()).getTransaction().getConnection();
         try {
-            // 获取第二个数据源信息
-            boolean secondMaster = dataSourceSelector.secondWriteInMaster();
-            
-            log.debug("双写操作，发送消息队列，第二个数据源: {}, Mapper: {}, 方法: {}", 
-                     secondMaster ? "主库" : "从库", mapperClassName, methodName);
-            
-            // 构建消息，添加第二个数据源信息
-            DBOperationMessage message = buildMessage(mapperClassName, methodName, parameter, operationType, secondMaster);
-            
-            // 发送消息
+            outboxService.save(connection, message);
+        } catch (SQLException e) {
+            if (!connection.getAutoCommit()) {
+                throw e;
+            }
+            log.error("写入发件箱失败，改为直接发送消息队列: {}", message.getMessageId(), e);
             sendMessage(message);
-        } catch (Exception e) {
-            log.error("发送双写消息失败: ", e);
         }
-        
-        return result;
     }
 
     /**
@@ -162,24 +382,23 @@ public class DBSwitchInterceptor implements Interceptor {
      * 发送消息到消息队列
      */
     private void sendMessage(DBOperationMessage message) {
+        MQType mqType = mqProducerSelector.getMqType();
         if (mqType == null) {
             log.error("未配置消息队列类型，无法发送消息");
             return;
         }
 
-        MQProducer producer = null;
-        if (mqType == MQType.ROCKET_MQ && rocketMQProducer != null) {
-            producer = rocketMQProducer;
-        } else if (mqType == MQType.RABBIT_MQ && rabbitMQProducer != null) {
-            producer = rabbitMQProducer;
-        }
-
+        // 开启写入合并时，消息先按行合并；开启异步批量发送时，消息只写入本地缓冲区；开启本地日志时，发送失败的消息写入本地日志
+        MQProducer producer = coalescingMQProducer != null ? coalescingMQProducer
+                : asyncMQProducer != null ? asyncMQProducer : mqProducerSelector.getDualWriteProducer();
         if (producer == null) {
             log.error("无法找到对应的消息队列生产者: {}", mqType);
             return;
         }
 
-        producer.sendMessage(message);
+        if (!producer.sendMessage(message)) {
+            log.error("发送双写消息失败: {}", message.getMessageId());
+        }
     }
 
     /**
@@ -192,27 +411,6 @@ public class DBSwitchInterceptor implements Interceptor {
         return new String[]{parameter.getClass().getName()};
     }
 
-    /**
-     * 解析操作类型
-     */
-    private OperationType parseOperationType(MappedStatement ms) {
-        SqlCommandType sqlCommandType = ms.getSqlCommandType();
-        String methodName = ms.getId().substring(ms.getId().lastIndexOf(".") + 1);
-        
-        switch (sqlCommandType) {
-            case SELECT:
-                return OperationType.SELECT;
-            case INSERT:
-                return OperationType.INSERT;
-            case UPDATE:
-                return OperationType.UPDATE;
-            case DELETE:
-                return OperationType.DELETE;
-            default:
-                return SqlParserUtil.parseOperationTypeByMethodName(methodName);
-        }
-    }
-
     @Override
     public Object plugin(Object target) {
         return Interceptor.super.plugin(target);
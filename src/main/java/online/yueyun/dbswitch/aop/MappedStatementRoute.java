@@ -0,0 +1,56 @@
+package online.yueyun.dbswitch.aop;
+
+import lombok.Getter;
+import online.yueyun.dbswitch.enums.OperationType;
+import online.yueyun.dbswitch.util.SqlAnalysis;
+
+/**
+ * MappedStatement路由描述
+ * 启动时按MappedStatement预先解析，拦截器热路径上直接使用，避免重复拆分语句ID
+ */
+@Getter
+public class MappedStatementRoute {
+
+    /**
+     * MappedStatement ID
+     */
+    private final String statementId;
+
+    /**
+     * Mapper全类名
+     */
+    private final String mapperClassName;
+
+    /**
+     * 方法名
+     */
+    private final String methodName;
+
+    /**
+     * 操作类型
+     */
+    private final OperationType operationType;
+
+    /**
+     * 是否可参与双写
+     */
+    private final boolean dualWriteEligible;
+
+    /**
+     * 语句分析结果，只有静态SQL在首次执行时按实际SQL分析并缓存
+     */
+    private volatile SqlAnalysis analysis;
+
+    public MappedStatementRoute(String statementId, String mapperClassName, String methodName,
+                                OperationType operationType) {
+        this.statementId = statementId;
+        this.mapperClassName = mapperClassName;
+        this.methodName = methodName;
+        this.operationType = operationType;
+        this.dualWriteEligible = operationType != OperationType.SELECT;
+    }
+
+    void setAnalysis(SqlAnalysis analysis) {
+        this.analysis = analysis;
+    }
+}
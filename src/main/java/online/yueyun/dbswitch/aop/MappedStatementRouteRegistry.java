@@ -0,0 +1,211 @@
+package online.yueyun.dbswitch.aop;
+
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.enums.OperationType;
+import online.yueyun.dbswitch.util.SqlAnalysis;
+import online.yueyun.dbswitch.util.SqlParserUtil;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * MappedStatement路由表
+ * 在MyBatis Configuration加载完成后一次性为所有MappedStatement构建路由描述，
+ * 运行时未登记的语句（如延迟解析的语句）在首次访问时补充登记
+ */
+@Slf4j
+@Component
+public class MappedStatementRouteRegistry implements SmartInitializingSingleton {
+
+    @Autowired
+    private ObjectProvider<SqlSessionFactory> sqlSessionFactories;
+
+    /**
+     * 路由表，以MappedStatement实例为键
+     */
+    private final ConcurrentMap<MappedStatement, MappedStatementRoute> routes = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        sqlSessionFactories.orderedStream().forEach(factory -> register(factory.getConfiguration()));
+        log.info("MappedStatement路由表初始化完成，共 {} 条", routes.size());
+    }
+
+    /**
+     * 登记Configuration中的全部MappedStatement
+     *
+     * @param configuration MyBatis配置
+     */
+    public void register(Configuration configuration) {
+        // 同一语句会以全名和简名各登记一次，按实例去重
+        for (Object value : new ArrayList<>(configuration.getMappedStatements())) {
+            if (value instanceof MappedStatement) {
+                MappedStatement ms = (MappedStatement) value;
+                routes.computeIfAbsent(ms, this::createRoute);
+            }
+        }
+    }
+
+    /**
+     * 获取语句的路由描述
+     *
+     * @param ms MappedStatement
+     * @return 路由描述
+     */
+    public MappedStatementRoute getRoute(MappedStatement ms) {
+        MappedStatementRoute route = routes.get(ms);
+        if (route != null) {
+            return route;
+        }
+        return routes.computeIfAbsent(ms, this::createRoute);
+    }
+
+    /**
+     * 获取语句分析结果
+     * 静态SQL的分析结果缓存在路由描述中；动态SQL每次按本次参数生成的SQL分析，由SqlParserUtil按SQL文本缓存
+     *
+     * @param ms MappedStatement
+     * @param parameter 语句参数
+     * @return 分析结果
+     */
+    public SqlAnalysis getAnalysis(MappedStatement ms, Object parameter) {
+        if (!isStatic(ms.getSqlSource())) {
+            return SqlParserUtil.analyze(ms.getBoundSql(parameter).getSql());
+        }
+        MappedStatementRoute route = getRoute(ms);
+        SqlAnalysis analysis = route.getAnalysis();
+        if (analysis == null) {
+            analysis = SqlParserUtil.analyze(ms.getBoundSql(parameter).getSql());
+            route.setAnalysis(analysis);
+        }
+        return analysis;
+    }
+
+    /**
+     * SQL文本是否与参数无关
+     */
+    private boolean isStatic(SqlSource sqlSource) {
+        return sqlSource instanceof RawSqlSource || sqlSource instanceof StaticSqlSource;
+    }
+
+    /**
+     * 获取语句涉及的表
+     *
+     * @param ms MappedStatement
+     * @param parameter 语句参数
+     * @return 表名集合（小写）
+     */
+    public Set<String> getTables(MappedStatement ms, Object parameter) {
+        return getAnalysis(ms, parameter).getTables();
+    }
+
+    /**
+     * 获取写操作修改的表，无法确定写入目标时返回语句涉及的全部表
+     *
+     * @param ms MappedStatement
+     * @param parameter 语句参数
+     * @return 表名集合（小写）
+     */
+    public Set<String> getWriteTables(MappedStatement ms, Object parameter) {
+        SqlAnalysis analysis = getAnalysis(ms, parameter);
+        return analysis.getWriteTables().isEmpty() ? analysis.getTables() : analysis.getWriteTables();
+    }
+
+    /**
+     * 按语句ID获取写操作修改的表，用于消息消费端等只持有语句ID的场景
+     *
+     * @param statementId MappedStatement ID
+     * @param parameter 语句参数
+     * @return 表名集合（小写），找不到语句或无法生成SQL时返回空集合
+     */
+    public Set<String> getWriteTables(String statementId, Object parameter) {
+        MappedStatement ms = findStatement(statementId);
+        if (ms == null) {
+            return Collections.emptySet();
+        }
+        try {
+            return getWriteTables(ms, parameter);
+        } catch (RuntimeException e) {
+            log.debug("无法解析语句写入的表: {}", statementId, e);
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * 在全部MyBatis配置中查找语句
+     */
+    private MappedStatement findStatement(String statementId) {
+        return sqlSessionFactories.orderedStream()
+                .map(SqlSessionFactory::getConfiguration)
+                .filter(configuration -> configuration.hasStatement(statementId, false))
+                .map(configuration -> configuration.getMappedStatement(statementId, false))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * 获取全部已登记的路由描述
+     *
+     * @return 只读的路由描述集合
+     */
+    public Collection<MappedStatementRoute> getRoutes() {
+        return Collections.unmodifiableCollection(routes.values());
+    }
+
+    /**
+     * 构建路由描述
+     */
+    private MappedStatementRoute createRoute(MappedStatement ms) {
+        String statementId = ms.getId();
+        int index = statementId.lastIndexOf('.');
+        String mapperClassName = index > 0 ? statementId.substring(0, index) : statementId;
+        String methodName = statementId.substring(index + 1);
+        return new MappedStatementRoute(statementId, mapperClassName, methodName,
+                parseOperationType(ms, methodName));
+    }
+
+    /**
+     * 解析操作类型
+     */
+    private OperationType parseOperationType(MappedStatement ms, String methodName) {
+        switch (ms.getSqlCommandType()) {
+            case SELECT:
+                return OperationType.SELECT;
+            case INSERT:
+                return OperationType.INSERT;
+            case UPDATE:
+                return OperationType.UPDATE;
+            case DELETE:
+                return OperationType.DELETE;
+            default:
+                return parseOperationTypeBySql(ms, methodName);
+        }
+    }
+
+    /**
+     * MyBatis无法识别语句类型时分析SQL，动态SQL无法在没有参数时生成则按方法名解析
+     */
+    private OperationType parseOperationTypeBySql(MappedStatement ms, String methodName) {
+        String sql;
+        try {
+            sql = ms.getBoundSql(null).getSql();
+        } catch (RuntimeException e) {
+            return SqlParserUtil.parseOperationTypeByMethodName(methodName);
+        }
+        return SqlParserUtil.parseOperationType(methodName, sql);
+    }
+}
@@ -0,0 +1,248 @@
+package online.yueyun.dbswitch.aop;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.datasource.DynamicDataSource;
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.StatementType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并行同步双写
+ * 配置的表或语句在双写模式下，第二个库的写操作与第一个库并行执行：第二个库在独立连接的本地事务中执行，
+ * 第一个库执行成功且第二个库在超时时间内执行完成才提交，否则回滚并回退到消息队列异步双写。
+ * 事务中的写操作、使用主键生成器的语句和非预编译语句不参与，仍走消息队列
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.sync-dual-write.enabled", havingValue = "true")
+public class ParallelDualWriter {
+
+    @Autowired
+    @Qualifier("dynamicDataSource")
+    private DataSource dynamicDataSource;
+
+    @Autowired
+    private DBSwitchMetrics metrics;
+
+    @Value("${dbswitch.sync-dual-write.tables:}")
+    private String[] tables;
+
+    @Value("${dbswitch.sync-dual-write.statements:}")
+    private String[] statements;
+
+    @Value("${dbswitch.sync-dual-write.timeout-ms:200}")
+    private long timeoutMs;
+
+    @Value("${dbswitch.sync-dual-write.pool-size:16}")
+    private int poolSize;
+
+    private Set<String> tableSet;
+
+    private Set<String> statementSet;
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        tableSet = toSet(tables, true);
+        statementSet = toSet(statements, false);
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 不排队，线程全忙时直接拒绝，由调用方回退到消息队列
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "dbswitch-sync-dual-write-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        log.info("并行同步双写已启用，表: {}, 语句: {}, 超时: {}ms, 线程数: {}", tableSet, statementSet, timeoutMs, poolSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 语句是否使用并行同步双写
+     *
+     * @param ms MappedStatement
+     * @param writeTables 写操作修改的表
+     * @return 是否使用
+     */
+    public boolean isEligible(MappedStatement ms, Set<String> writeTables) {
+        if (!statementSet.contains(ms.getId()) && writeTables.stream().noneMatch(tableSet::contains)) {
+            return false;
+        }
+        // 第二个库的事务无法加入调用方事务；主键生成器会在两个线程中同时回写参数对象
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                && ms.getStatementType() == StatementType.PREPARED
+                && ms.getKeyGenerator() instanceof NoKeyGenerator;
+    }
+
+    /**
+     * 提交第二个库的写操作，与调用方随后执行的第一个库写操作并行
+     *
+     * @param ms MappedStatement
+     * @param parameter 语句参数
+     * @param target 第二个库
+     * @return 第二个库的写操作，线程全忙时返回null
+     */
+    public SecondWrite submit(MappedStatement ms, Object parameter, DataSourceType target) {
+        DataSource dataSource = ((DynamicDataSource) dynamicDataSource).getResolvedDataSources().get(target);
+        // 在调用线程中生成SQL，工作线程只读取参数
+        BoundSql boundSql = ms.getBoundSql(parameter);
+        SecondWrite secondWrite = new SecondWrite(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+        try {
+            executor.execute(() -> secondWrite.run(dataSource, ms, parameter, boundSql, target));
+            return secondWrite;
+        } catch (RejectedExecutionException e) {
+            log.debug("并行同步双写线程已满，回退到消息队列: {}", ms.getId());
+            recordFallback(0);
+            return null;
+        }
+    }
+
+    /**
+     * 回退到消息队列的次数，包括线程已满、第二个库执行失败和超时
+     */
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    private void recordFallback(long nanos) {
+        fallbackCount.incrementAndGet();
+        metrics.recordSyncDualWrite(nanos, false);
+    }
+
+    private static Set<String> toSet(String[] values, boolean lowerCase) {
+        Set<String> set = new HashSet<>();
+        if (values != null) {
+            Arrays.stream(values).map(String::trim).filter(value -> !value.isEmpty())
+                    .map(value -> lowerCase ? value.toLowerCase() : value)
+                    .forEach(set::add);
+        }
+        return set;
+    }
+
+    /**
+     * 第二个库的写操作
+     * 执行完成后等待调用方决定提交或回滚，调用方必须调用commit或abort之一
+     */
+    public final class SecondWrite {
+
+        private final long deadline;
+
+        private final long start = System.nanoTime();
+
+        private final CompletableFuture<Integer> executed = new CompletableFuture<>();
+
+        private final CompletableFuture<Boolean> decision = new CompletableFuture<>();
+
+        private final CompletableFuture<Boolean> completed = new CompletableFuture<>();
+
+        private SecondWrite(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * 第一个库执行成功后调用：等待第二个库执行完成并提交，执行超时或失败时回滚。
+         * 通知提交之后不再受超时时间限制，等待第二个库提交或回滚完成，只有确认未提交时才返回false，避免重复写入
+         *
+         * @return 第二个库是否已提交，false时调用方应回退到消息队列
+         */
+        public boolean commit() {
+            try {
+                executed.get(remainingNanos(), TimeUnit.NANOSECONDS);
+                decision.complete(true);
+                // 不响应中断，中断后返回false会在第二个库提交的同时回退到消息队列
+                if (Boolean.TRUE.equals(completed.join())) {
+                    metrics.recordSyncDualWrite(System.nanoTime() - start, true);
+                    return true;
+                }
+                log.warn("并行同步双写第二个库提交失败，已回滚，回退到消息队列");
+            } catch (TimeoutException e) {
+                log.warn("并行同步双写第二个库超时，回退到消息队列，超时时间: {}ms", timeoutMs);
+            } catch (ExecutionException e) {
+                log.warn("并行同步双写第二个库执行失败，回退到消息队列", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            decision.complete(false);
+            recordFallback(System.nanoTime() - start);
+            return false;
+        }
+
+        /**
+         * 第一个库执行失败时调用：回滚第二个库
+         */
+        public void abort() {
+            decision.complete(false);
+        }
+
+        private long remainingNanos() {
+            return Math.max(0, deadline - System.nanoTime());
+        }
+
+        private void run(DataSource dataSource, MappedStatement ms, Object parameter, BoundSql boundSql,
+                         DataSourceType target) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    long statementStart = System.nanoTime();
+                    try (PreparedStatement statement = connection.prepareStatement(boundSql.getSql())) {
+                        ms.getConfiguration().newParameterHandler(ms, parameter, boundSql).setParameters(statement);
+                        executed.complete(statement.executeUpdate());
+                    } finally {
+                        metrics.recordStatement(ms.getId(), target, System.nanoTime() - statementStart);
+                    }
+                    if (decision.get()) {
+                        connection.commit();
+                        completed.complete(true);
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    executed.completeExceptionally(e);
+                }
+                connection.rollback();
+                completed.complete(false);
+            } catch (SQLException e) {
+                executed.completeExceptionally(e);
+                completed.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package online.yueyun.dbswitch.aop;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.datasource.DynamicDataSource;
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+import online.yueyun.dbswitch.enums.ShadowReadResult;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 影子读校验
+ * 按采样率选取查询，在独立的有界线程池中分别在当前读取的库和另一个库上执行同一条SQL，按行哈希比较结果；
+ * 调用线程只做一次随机数判断，采样时在调用线程生成SQL并取出参数值后非阻塞提交，
+ * 工作线程不再读取调用方的参数对象；线程池全忙时丢弃样本，不排队
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.shadow-read.enabled", havingValue = "true")
+public class ShadowReadVerifier {
+
+    @Autowired
+    @Qualifier("dynamicDataSource")
+    private DataSource dynamicDataSource;
+
+    @Autowired
+    private DBSwitchMetrics metrics;
+
+    @Value("${dbswitch.shadow-read.sample-rate:0.01}")
+    private double sampleRate;
+
+    @Value("${dbswitch.shadow-read.threads:2}")
+    private int threads;
+
+    /**
+     * 结果超过该行数时不比较
+     */
+    @Value("${dbswitch.shadow-read.max-rows:1000}")
+    private int maxRows;
+
+    @Value("${dbswitch.shadow-read.query-timeout-seconds:5}")
+    private int queryTimeoutSeconds;
+
+    /**
+     * 保留的最近不一致记录数
+     */
+    @Value("${dbswitch.shadow-read.max-mismatches:100}")
+    private int maxMismatches;
+
+    private ThreadPoolExecutor executor;
+
+    private final Deque<Mismatch> mismatches = new ArrayDeque<>();
+
+    private final AtomicLong matchedCount = new AtomicLong();
+
+    private final AtomicLong mismatchedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "dbswitch-shadow-read-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        log.info("影子读校验已启用，采样率: {}, 线程数: {}", sampleRate, threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 按采样率提交一次影子读校验
+     *
+     * @param ms MappedStatement
+     * @param parameter 语句参数
+     * @param rowBounds 分页参数，使用内存分页的查询不校验
+     * @param served 本次查询读取的库
+     */
+    public void sample(MappedStatement ms, Object parameter, RowBounds rowBounds, DataSourceType served) {
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate || rowBounds != RowBounds.DEFAULT
+                || ms.getStatementType() != StatementType.PREPARED) {
+            return;
+        }
+        // 在调用线程中生成SQL并取出参数值，调用方之后修改参数对象不影响校验
+        BoundSql boundSql;
+        Object[] values;
+        try {
+            boundSql = ms.getBoundSql(parameter);
+            values = parameterValues(ms.getConfiguration(), parameter, boundSql);
+        } catch (Exception e) {
+            log.debug("影子读取参数失败: {}", ms.getId(), e);
+            metrics.recordShadowRead(ShadowReadResult.SKIPPED);
+            return;
+        }
+        try {
+            executor.execute(() -> verify(ms, boundSql, values, served));
+        } catch (RejectedExecutionException e) {
+            droppedCount.incrementAndGet();
+            metrics.recordShadowRead(ShadowReadResult.DROPPED);
+        }
+    }
+
+    /**
+     * 在两个库上执行并比较
+     */
+    private void verify(MappedStatement ms, BoundSql boundSql, Object[] values, DataSourceType served) {
+        DataSourceType other = served == DataSourceType.MASTER ? DataSourceType.SLAVE : DataSourceType.MASTER;
+        try {
+            long[] servedRows = queryRowHashes(served, ms, boundSql, values);
+            long[] otherRows = queryRowHashes(other, ms, boundSql, values);
+            if (servedRows == null || otherRows == null) {
+                metrics.recordShadowRead(ShadowReadResult.SKIPPED);
+                return;
+            }
+            if (Arrays.equals(servedRows, otherRows)) {
+                matchedCount.incrementAndGet();
+                metrics.recordShadowRead(ShadowReadResult.MATCHED);
+                return;
+            }
+            mismatchedCount.incrementAndGet();
+            metrics.recordShadowRead(ShadowReadResult.MISMATCHED);
+            Mismatch mismatch = new Mismatch(ms.getId(), Arrays.toString(values),
+                    served, servedRows.length, otherRows.length);
+            log.warn("影子读结果不一致: {}", mismatch);
+            synchronized (mismatches) {
+                if (mismatches.size() >= maxMismatches) {
+                    mismatches.pollFirst();
+                }
+                mismatches.addLast(mismatch);
+            }
+        } catch (Exception e) {
+            log.debug("影子读校验失败: {}", ms.getId(), e);
+            metrics.recordShadowRead(ShadowReadResult.SKIPPED);
+        }
+    }
+
+    /**
+     * 执行查询并计算每行的哈希，排序后返回以忽略行顺序；超过最大行数时返回null
+     */
+    private long[] queryRowHashes(DataSourceType type, MappedStatement ms, BoundSql boundSql, Object[] values)
+            throws SQLException {
+        DataSource dataSource = ((DynamicDataSource) dynamicDataSource).getResolvedDataSources().get(type);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(boundSql.getSql())) {
+            statement.setQueryTimeout(queryTimeoutSeconds);
+            statement.setMaxRows(maxRows + 1);
+            setParameters(ms.getConfiguration(), statement, boundSql, values);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                int columns = resultSet.getMetaData().getColumnCount();
+                long[] hashes = new long[16];
+                int rows = 0;
+                while (resultSet.next()) {
+                    if (rows == maxRows) {
+                        return null;
+                    }
+                    long hash = 1;
+                    for (int i = 1; i <= columns; i++) {
+                        hash = 31 * hash + Objects.hashCode(resultSet.getString(i));
+                    }
+                    if (rows == hashes.length) {
+                        hashes = Arrays.copyOf(hashes, rows * 2);
+                    }
+                    hashes[rows++] = hash;
+                }
+                long[] result = Arrays.copyOf(hashes, rows);
+                Arrays.sort(result);
+                return result;
+            }
+        }
+    }
+
+    /**
+     * 按参数映射顺序取出参数值，取值规则与MyBatis的DefaultParameterHandler相同
+     */
+    private Object[] parameterValues(Configuration configuration, Object parameter, BoundSql boundSql) {
+        List<ParameterMapping> mappings = boundSql.getParameterMappings();
+        Object[] values = new Object[mappings.size()];
+        MetaObject metaObject = null;
+        for (int i = 0; i < values.length; i++) {
+            String property = mappings.get(i).getProperty();
+            if (boundSql.hasAdditionalParameter(property)) {
+                values[i] = boundSql.getAdditionalParameter(property);
+            } else if (parameter == null || configuration.getTypeHandlerRegistry().hasTypeHandler(parameter.getClass())) {
+                values[i] = parameter;
+            } else {
+                if (metaObject == null) {
+                    metaObject = configuration.newMetaObject(parameter);
+                }
+                values[i] = metaObject.getValue(property);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 用参数映射的类型处理器设置已取出的参数值
+     */
+    @SuppressWarnings("unchecked")
+    private void setParameters(Configuration configuration, PreparedStatement statement, BoundSql boundSql,
+                               Object[] values) throws SQLException {
+        List<ParameterMapping> mappings = boundSql.getParameterMappings();
+        for (int i = 0; i < values.length; i++) {
+            ParameterMapping mapping = mappings.get(i);
+            JdbcType jdbcType = mapping.getJdbcType();
+            if (values[i] == null && jdbcType == null) {
+                jdbcType = configuration.getJdbcTypeForNull();
+            }
+            ((TypeHandler<Object>) mapping.getTypeHandler()).setParameter(statement, i + 1, values[i], jdbcType);
+        }
+    }
+
+    /**
+     * 最近的不一致记录，按发生时间排序
+     */
+    public List<Mismatch> getRecentMismatches() {
+        synchronized (mismatches) {
+            return new ArrayList<>(mismatches);
+        }
+    }
+
+    public long getMatchedCount() {
+        return matchedCount.get();
+    }
+
+    public long getMismatchedCount() {
+        return mismatchedCount.get();
+    }
+
+    /**
+     * 线程池全忙时丢弃的样本数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 一次结果不一致的记录
+     */
+    @Getter
+    public static final class Mismatch {
+
+        private final long time = System.currentTimeMillis();
+
+        private final String statementId;
+
+        private final String parameters;
+
+        private final DataSourceType served;
+
+        private final int servedRows;
+
+        private final int otherRows;
+
+        Mismatch(String statementId, String parameters, DataSourceType served, int servedRows, int otherRows) {
+            this.statementId = statementId;
+            this.parameters = parameters;
+            this.served = served;
+            this.servedRows = servedRows;
+            this.otherRows = otherRows;
+        }
+
+        @Override
+        public String toString() {
+            return "Mismatch{statement=" + statementId + ", parameters=" + parameters + ", served=" + served
+                    + ", servedRows=" + servedRows + ", otherRows=" + otherRows + "}";
+        }
+    }
+}
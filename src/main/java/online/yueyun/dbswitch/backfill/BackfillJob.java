@@ -0,0 +1,82 @@
+package online.yueyun.dbswitch.backfill;
+
+import lombok.Getter;
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单张表的回填进度
+ */
+@Getter
+public class BackfillJob {
+
+    private final String table;
+
+    private final DataSourceType source;
+
+    private final DataSourceType target;
+
+    /**
+     * 已复制的行数（本次运行，不含恢复前已完成的部分）
+     */
+    private final AtomicLong copiedRows = new AtomicLong();
+
+    /**
+     * 写入时目标库已存在、被跳过或按版本保留的行数
+     */
+    private final AtomicLong skippedRows = new AtomicLong();
+
+    private final AtomicInteger completedRanges = new AtomicInteger();
+
+    /**
+     * 键范围总数，规划完成前为-1
+     */
+    private volatile int totalRanges = -1;
+
+    /**
+     * 失败原因，成功或进行中为null
+     */
+    private volatile String error;
+
+    /**
+     * 执行中的规划和范围复制任务数，归零时释放回填锁
+     */
+    private final AtomicInteger runningTasks = new AtomicInteger();
+
+    public BackfillJob(String table, DataSourceType source, DataSourceType target) {
+        this.table = table;
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * 是否已完成全部键范围
+     */
+    public boolean isDone() {
+        return totalRanges >= 0 && completedRanges.get() >= totalRanges;
+    }
+
+    /**
+     * 是否仍有任务在执行
+     */
+    public boolean isRunning() {
+        return runningTasks.get() > 0;
+    }
+
+    void setTotalRanges(int totalRanges) {
+        this.totalRanges = totalRanges;
+    }
+
+    void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "BackfillJob{" + table + ", " + source + "->" + target + ", ranges=" + completedRanges.get() + "/"
+                + totalRanges + ", copied=" + copiedRows.get() + ", skipped=" + skippedRows.get()
+                + (error == null ? "" : ", error=" + error) + "}";
+    }
+}
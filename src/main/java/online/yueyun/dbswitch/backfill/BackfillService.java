@@ -0,0 +1,539 @@
+package online.yueyun.dbswitch.backfill;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+import online.yueyun.dbswitch.enums.BackfillWriteMode;
+import online.yueyun.dbswitch.service.ReplicationLagService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 历史数据回填
+ * 把表从一个库复制到另一个库：每张表按主键范围切分，各范围在线程池中并行按主键分页复制，
+ * 每页在源库加共享锁读取、以多行INSERT写入目标库并提交后才释放源库的锁，再把该范围的进度写入Redis，中断后从断点继续。
+ * 与双写的协调：目标库已存在的行不覆盖（或只按版本列覆盖）；源库的行在复制期间不能被修改，
+ * 复制完成后产生的双写消息一定在目标行写入之后执行。每页读取前等待双写消息的全局已执行水位越过当前时间，
+ * 只能减少而不能排除在途消息在行复制之后重复执行：水位只统计消费端已收到的消息，
+ * 仍在消息队列、生产端缓冲或发件箱中的消息不在其中。这类消息回放到已复制的行上时，
+ * 整行赋值的更新结果不变，自增等非幂等更新会重复生效、插入会因主键冲突失败，回填结束后应执行一致性校验。
+ * 回填的目标库应为双写模式下消息队列写入的第二个库。
+ * 每张表的回填由持有Redis锁的一个节点执行，锁在每页完成后续期，该表的任务全部结束后释放
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.backfill.enabled", havingValue = "true")
+public class BackfillService {
+
+    private static final String DONE = "done";
+
+    private static final String RANGES_FIELD = "ranges";
+
+    /**
+     * 非数值主键不切分，整表作为一个范围
+     */
+    private static final String UNBOUNDED = "*";
+
+    /**
+     * 续期脚本：锁仍由当前节点持有时延长过期时间
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end "
+                    + "return 0", Long.class);
+
+    /**
+     * 释放脚本：锁仍由当前节点持有时删除
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('DEL', KEYS[1]) end "
+                    + "return 0", Long.class);
+
+    @Autowired
+    @Qualifier("masterDataSource")
+    private DataSource masterDataSource;
+
+    @Autowired
+    @Qualifier("slaveDataSource")
+    private DataSource slaveDataSource;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ReplicationLagService replicationLagService;
+
+    @Value("${dbswitch.backfill.tables:}")
+    private String[] tables;
+
+    @Value("${dbswitch.backfill.source:MASTER}")
+    private DataSourceType source;
+
+    @Value("${dbswitch.backfill.auto-start:false}")
+    private boolean autoStart;
+
+    @Value("${dbswitch.backfill.threads:4}")
+    private int threads;
+
+    @Value("${dbswitch.backfill.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${dbswitch.backfill.ranges-per-table:8}")
+    private int rangesPerTable;
+
+    @Value("${dbswitch.backfill.rows-per-second:0}")
+    private long rowsPerSecond;
+
+    @Value("${dbswitch.backfill.max-latency-ms:0}")
+    private long maxLatencyMs;
+
+    @Value("${dbswitch.backfill.write-mode:INSERT_IGNORE}")
+    private BackfillWriteMode writeMode;
+
+    /**
+     * UPSERT写入方式使用的版本列（如更新时间），源行的版本更大时才覆盖目标行
+     */
+    @Value("${dbswitch.backfill.version-column:}")
+    private String versionColumn;
+
+    @Value("${dbswitch.backfill.lock-source-rows:true}")
+    private boolean lockSourceRows;
+
+    @Value("${dbswitch.backfill.watermark-wait-ms:5000}")
+    private long watermarkWaitMs;
+
+    @Value("${dbswitch.backfill.key-prefix:dbswitch:backfill:}")
+    private String keyPrefix;
+
+    /**
+     * 回填锁的过期时间，应大于水位等待时间与单页复制耗时之和
+     */
+    @Value("${dbswitch.backfill.lock-ttl-ms:60000}")
+    private long lockTtlMs;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private ExecutorService executor;
+
+    private BackfillThrottle throttle;
+
+    private final Map<String, BackfillJob> jobs = new ConcurrentHashMap<>();
+
+    private volatile boolean stopped;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "dbswitch-backfill-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        throttle = new BackfillThrottle(rowsPerSecond, maxLatencyMs);
+        if (writeMode == BackfillWriteMode.UPSERT && versionColumn.isEmpty()) {
+            log.warn("UPSERT回填未配置版本列，改用INSERT_IGNORE");
+            writeMode = BackfillWriteMode.INSERT_IGNORE;
+        }
+        if (autoStart && tables.length > 0) {
+            start(source, Arrays.asList(tables));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopped = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 开始（或从断点继续）回填
+     *
+     * @param source 源库，目标库为另一个库
+     * @param tableNames 表名
+     * @return 各表的回填进度
+     */
+    public synchronized List<BackfillJob> start(DataSourceType source, List<String> tableNames) {
+        stopped = false;
+        DataSourceType target = source == DataSourceType.MASTER ? DataSourceType.SLAVE : DataSourceType.MASTER;
+        List<BackfillJob> started = new ArrayList<>();
+        for (String tableName : tableNames) {
+            String table = tableName.trim();
+            if (table.isEmpty()) {
+                continue;
+            }
+            BackfillJob running = jobs.get(checkpointKey(source, table));
+            if (running != null && running.isRunning()) {
+                log.info("回填已在执行: {}", running);
+                started.add(running);
+                continue;
+            }
+            BackfillJob job = new BackfillJob(table, source, target);
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey(job), nodeId, lockTtlMs, TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(locked)) {
+                log.info("表{}的回填由其他节点执行，跳过", table);
+                continue;
+            }
+            job.getRunningTasks().incrementAndGet();
+            jobs.put(checkpointKey(job), job);
+            started.add(job);
+            executor.execute(() -> plan(job));
+        }
+        log.info("开始回填，{} -> {}，表: {}", source, target, tableNames);
+        return started;
+    }
+
+    /**
+     * 停止回填，执行中的页完成后停止，进度保留在Redis中
+     */
+    public void stop() {
+        stopped = true;
+        log.info("回填已停止");
+    }
+
+    /**
+     * 清除一张表的回填进度，下次从头开始
+     *
+     * @param source 源库
+     * @param table 表名
+     */
+    public void reset(DataSourceType source, String table) {
+        redisTemplate.delete(checkpointKey(source, table));
+    }
+
+    /**
+     * 各表的回填进度
+     */
+    public Collection<BackfillJob> getJobs() {
+        return Collections.unmodifiableCollection(jobs.values());
+    }
+
+    /**
+     * 确定主键和键范围，为未完成的范围提交复制任务；范围边界首次计算后保存在Redis中，恢复时保持不变
+     */
+    private void plan(BackfillJob job) {
+        String key = checkpointKey(job);
+        try {
+            String keyColumn = primaryKey(dataSourceOf(job.getSource()), job.getTable());
+            String ranges = (String) redisTemplate.opsForHash().get(key, RANGES_FIELD);
+            if (ranges == null) {
+                ranges = computeRanges(dataSourceOf(job.getSource()), job.getTable(), keyColumn);
+                redisTemplate.opsForHash().put(key, RANGES_FIELD, ranges);
+            }
+            if (ranges.isEmpty()) {
+                job.setTotalRanges(0);
+                log.info("回填完成（空表）: {}", job);
+                return;
+            }
+            boolean numeric = !UNBOUNDED.equals(ranges);
+            String[] bounds = numeric ? ranges.split(",") : new String[]{null, null};
+            job.setTotalRanges(bounds.length - 1);
+            for (int i = 0; i < bounds.length - 1; i++) {
+                String field = "r" + i;
+                String checkpoint = (String) redisTemplate.opsForHash().get(key, field);
+                if (DONE.equals(checkpoint)) {
+                    job.getCompletedRanges().incrementAndGet();
+                    continue;
+                }
+                Object lower = toKey(checkpoint != null ? checkpoint : bounds[i], numeric);
+                Object upper = toKey(bounds[i + 1], numeric);
+                job.getRunningTasks().incrementAndGet();
+                executor.execute(() -> copyRange(job, keyColumn, field, lower, upper, numeric));
+            }
+        } catch (Exception e) {
+            job.setError(e.getMessage());
+            log.error("回填任务规划失败: {}", job.getTable(), e);
+        } finally {
+            finish(job);
+        }
+    }
+
+    /**
+     * 按主键分页复制一个范围(lower, upper]，每页完成后记录断点
+     */
+    private void copyRange(BackfillJob job, String keyColumn, String field, Object lower, Object upper,
+                           boolean numeric) {
+        String key = checkpointKey(job);
+        Object last = lower;
+        try {
+            while (!stopped) {
+                awaitWatermark();
+                Object next = copyChunk(job, keyColumn, last, upper);
+                if (next == null) {
+                    redisTemplate.opsForHash().put(key, field, DONE);
+                    job.getCompletedRanges().incrementAndGet();
+                    if (job.isDone()) {
+                        log.info("回填完成: {}", job);
+                    }
+                    return;
+                }
+                last = numeric ? ((Number) next).longValue() : next;
+                redisTemplate.opsForHash().put(key, field, String.valueOf(last));
+                Long renewed = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(lockKey(job)),
+                        nodeId, String.valueOf(lockTtlMs));
+                if (renewed == null || renewed == 0) {
+                    job.setError("回填锁已失效");
+                    log.warn("表{}的回填锁已失效，停止范围{}，断点: {}", job.getTable(), field, last);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            job.setError(e.getMessage());
+            log.error("回填失败，表: {}, 范围: {}, 断点: {}", job.getTable(), field, last, e);
+        } finally {
+            finish(job);
+        }
+    }
+
+    /**
+     * 规划或范围复制任务结束，该表的任务全部结束时释放回填锁
+     */
+    private void finish(BackfillJob job) {
+        if (job.getRunningTasks().decrementAndGet() == 0) {
+            redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(lockKey(job)), nodeId);
+        }
+    }
+
+    /**
+     * 复制一页，返回本页最后一行的主键，没有数据时返回null；
+     * 限速等待在读取之前、耗时退避在源库提交之后，都不持有源库的共享锁
+     */
+    private Object copyChunk(BackfillJob job, String keyColumn, Object lower, Object upper) throws SQLException {
+        try (Connection sourceConnection = dataSourceOf(job.getSource()).getConnection();
+             Connection targetConnection = dataSourceOf(job.getTarget()).getConnection()) {
+            sourceConnection.setAutoCommit(false);
+            targetConnection.setAutoCommit(false);
+            try {
+                // 读取前行数未知，按整页预约
+                throttle.acquire(chunkSize);
+                List<String> columns = new ArrayList<>();
+                List<Object[]> rows = new ArrayList<>(chunkSize);
+                Object lastKey = select(sourceConnection, job.getTable(), keyColumn, lower, upper, columns, rows);
+                if (rows.isEmpty()) {
+                    sourceConnection.commit();
+                    return null;
+                }
+
+                long start = System.nanoTime();
+                int affected = insert(targetConnection, job.getTable(), keyColumn, columns, rows);
+                targetConnection.commit();
+                long elapsed = System.nanoTime() - start;
+                // 目标库提交后才释放源库的共享锁
+                sourceConnection.commit();
+                throttle.onCompleted(elapsed);
+
+                job.getCopiedRows().addAndGet(rows.size());
+                if (writeMode == BackfillWriteMode.INSERT_IGNORE) {
+                    job.getSkippedRows().addAndGet(rows.size() - affected);
+                }
+                return lastKey;
+            } catch (SQLException e) {
+                targetConnection.rollback();
+                sourceConnection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private Object select(Connection connection, String table, String keyColumn, Object lower, Object upper,
+                          List<String> columns, List<Object[]> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(quote(table));
+        List<Object> args = new ArrayList<>(2);
+        if (lower != null) {
+            sql.append(" WHERE ").append(quote(keyColumn)).append(" > ?");
+            args.add(lower);
+        }
+        if (upper != null) {
+            sql.append(args.isEmpty() ? " WHERE " : " AND ").append(quote(keyColumn)).append(" <= ?");
+            args.add(upper);
+        }
+        sql.append(" ORDER BY ").append(quote(keyColumn)).append(" LIMIT ").append(chunkSize);
+        if (lockSourceRows) {
+            sql.append(" LOCK IN SHARE MODE");
+        }
+
+        Object lastKey = null;
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < args.size(); i++) {
+                statement.setObject(i + 1, args.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int count = metaData.getColumnCount();
+                for (int i = 1; i <= count; i++) {
+                    columns.add(metaData.getColumnLabel(i));
+                }
+                while (resultSet.next()) {
+                    Object[] row = new Object[count];
+                    for (int i = 0; i < count; i++) {
+                        row[i] = resultSet.getObject(i + 1);
+                    }
+                    rows.add(row);
+                    lastKey = resultSet.getObject(keyColumn);
+                }
+            }
+        }
+        return lastKey;
+    }
+
+    /**
+     * 多行INSERT写入目标库，返回受影响的行数
+     */
+    private int insert(Connection connection, String table, String keyColumn, List<String> columns,
+                       List<Object[]> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder(writeMode == BackfillWriteMode.INSERT_IGNORE ? "INSERT IGNORE INTO " : "INSERT INTO ");
+        sql.append(quote(table)).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(quote(columns.get(i)));
+        }
+        sql.append(") VALUES ");
+        String placeholders = "(" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(placeholders);
+        }
+        if (writeMode == BackfillWriteMode.UPSERT) {
+            // 版本列最后更新，前面的列比较的是更新前的版本
+            String version = quote(versionColumn);
+            sql.append(" ON DUPLICATE KEY UPDATE ");
+            for (String column : columns) {
+                if (!column.equalsIgnoreCase(keyColumn) && !column.equalsIgnoreCase(versionColumn)) {
+                    String quoted = quote(column);
+                    sql.append(quoted).append(" = IF(VALUES(").append(version).append(") > ").append(version)
+                            .append(", VALUES(").append(quoted).append("), ").append(quoted).append("), ");
+                }
+            }
+            sql.append(version).append(" = GREATEST(").append(version).append(", VALUES(").append(version).append("))");
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Object[] row : rows) {
+                for (Object value : row) {
+                    statement.setObject(index++, value);
+                }
+            }
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * 等待双写消息的全局已执行水位越过当前时间，最长等待watermark-wait-ms
+     * 水位不含尚未被消费端收到的消息，等待只缩小而不消除在途消息重复执行的窗口
+     */
+    private void awaitWatermark() {
+        long now = System.currentTimeMillis();
+        long deadline = now + watermarkWaitMs;
+        while (replicationLagService.getGlobalWatermark() < now && System.currentTimeMillis() < deadline && !stopped) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 单列主键，联合主键或无主键的表不支持
+     */
+    private String primaryKey(DataSource dataSource, String table) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            List<String> keys = new ArrayList<>(1);
+            try (ResultSet resultSet = metaData.getPrimaryKeys(connection.getCatalog(), null, table)) {
+                while (resultSet.next()) {
+                    keys.add(resultSet.getString("COLUMN_NAME"));
+                }
+            }
+            if (keys.size() != 1) {
+                throw new IllegalStateException("回填只支持单列主键，表: " + table + ", 主键: " + keys);
+            }
+            return keys.get(0);
+        }
+    }
+
+    /**
+     * 数值主键按最小值和最大值等分为rangesPerTable个范围，返回逗号分隔的边界（左开右闭）；
+     * 空表返回空字符串，非数值主键返回UNBOUNDED
+     */
+    private String computeRanges(DataSource dataSource, String table, String keyColumn) throws SQLException {
+        String sql = "SELECT MIN(" + quote(keyColumn) + "), MAX(" + quote(keyColumn) + ") FROM " + quote(table);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            Object min = resultSet.getObject(1);
+            Object max = resultSet.getObject(2);
+            if (min == null) {
+                return "";
+            }
+            if (!(min instanceof Number) || !(max instanceof Number)) {
+                return UNBOUNDED;
+            }
+            long lower = ((Number) min).longValue() - 1;
+            long upper = ((Number) max).longValue();
+            int count = (int) Math.max(1, Math.min(rangesPerTable, upper - lower));
+            StringBuilder bounds = new StringBuilder().append(lower);
+            for (int i = 1; i <= count; i++) {
+                long bound = i == count ? upper : lower + (upper - lower) / count * i;
+                bounds.append(',').append(bound);
+            }
+            return bounds.toString();
+        }
+    }
+
+    private Object toKey(String value, boolean numeric) {
+        if (value == null) {
+            return null;
+        }
+        return numeric ? Long.valueOf(value) : value;
+    }
+
+    private DataSource dataSourceOf(DataSourceType type) {
+        return type == DataSourceType.MASTER ? masterDataSource : slaveDataSource;
+    }
+
+    private String checkpointKey(BackfillJob job) {
+        return checkpointKey(job.getSource(), job.getTable());
+    }
+
+    private String checkpointKey(DataSourceType source, String table) {
+        return keyPrefix + source.name().toLowerCase() + ":" + table;
+    }
+
+    private String lockKey(BackfillJob job) {
+        return checkpointKey(job) + ":lock";
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
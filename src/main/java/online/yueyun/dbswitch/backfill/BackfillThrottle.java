@@ -0,0 +1,59 @@
+package online.yueyun.dbswitch.backfill;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 回填限速，一致性校验也使用
+ * 按每秒行数预约处理时间，所有线程共享；单批操作耗时超过阈值时按超出的耗时退避
+ */
+public class BackfillThrottle {
+
+    /**
+     * 每行占用的纳秒数，0表示不限速
+     */
+    private final long nanosPerRow;
+
+    private final long maxLatencyNanos;
+
+    private final AtomicLong nextFreeNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param rowsPerSecond 每秒最大行数，0表示不限
+     * @param maxLatencyMs 单批操作耗时阈值，0表示不限
+     */
+    public BackfillThrottle(long rowsPerSecond, long maxLatencyMs) {
+        this.nanosPerRow = rowsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / rowsPerSecond : 0;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+    }
+
+    /**
+     * 处理一批行之前调用，超过速率时等待
+     *
+     * @param rows 行数
+     */
+    public void acquire(int rows) {
+        if (nanosPerRow == 0) {
+            return;
+        }
+        long cost = nanosPerRow * rows;
+        long now = System.nanoTime();
+        long start = nextFreeNanos.getAndAccumulate(cost, (next, add) -> Math.max(next, now) + add);
+        long wait = Math.max(start, now) - now;
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * 一批操作完成后调用，耗时超过阈值时退避
+     *
+     * @param nanos 本批操作耗时（纳秒），回填为目标库写入耗时，一致性校验为查询耗时
+     */
+    public void onCompleted(long nanos) {
+        if (maxLatencyNanos > 0 && nanos > maxLatencyNanos) {
+            LockSupport.parkNanos(nanos - maxLatencyNanos);
+        }
+    }
+}
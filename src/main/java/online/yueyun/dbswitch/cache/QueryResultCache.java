@@ -0,0 +1,377 @@
+package online.yueyun.dbswitch.cache;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 按表失效的查询结果缓存
+ * 只缓存涉及的表全部在配置的表集合中的查询。每张表维护一个版本号，缓存项保存查询执行前读取的表版本，
+ * 写操作递增表版本使相关缓存项失效，查询与写操作并发时查询结果不会以新版本写入缓存；
+ * 失效通过Redis发布订阅广播到其他节点。缓存按条目数和结果总行数淘汰最久未访问的条目。
+ * 调用方可能修改返回的结果对象，因此结果只由不可变类型（字符串、数值、日期时间、枚举等）组成时直接保存，
+ * 否则按Java序列化保存副本、每次命中时反序列化出新的对象，行对象不可序列化的查询不缓存
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.query-cache.enabled", havingValue = "true")
+public class QueryResultCache {
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${dbswitch.query-cache.tables:}")
+    private String[] cacheTables;
+
+    @Value("${dbswitch.query-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${dbswitch.query-cache.max-rows:100000}")
+    private long maxRows;
+
+    @Value("${dbswitch.query-cache.max-entry-rows:1000}")
+    private int maxEntryRows;
+
+    @Value("${dbswitch.query-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${dbswitch.query-cache.channel:dbswitch:query-cache:invalidate}")
+    private String invalidateChannel;
+
+    /**
+     * 本节点标识，用于忽略自己发出的失效通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 表版本号，只包含配置的表，启动后不再增减
+     */
+    private final Map<String, AtomicLong> tableVersions = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private LinkedHashMap<Object, Entry> entries;
+
+    private long totalRows;
+
+    private long ttlNanos;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 初始化表版本并订阅失效通知
+     */
+    @PostConstruct
+    public void init() {
+        for (String table : cacheTables) {
+            String name = table.trim().toLowerCase();
+            if (!name.isEmpty()) {
+                tableVersions.put(name, new AtomicLong());
+            }
+        }
+        ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        try {
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(redisTemplate.getRequiredConnectionFactory());
+            listenerContainer.addMessageListener(this::onInvalidateMessage, new ChannelTopic(invalidateChannel));
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
+        } catch (Exception e) {
+            log.error("订阅查询缓存失效通知失败，其他节点的写操作只能依赖缓存过期时间", e);
+        }
+        log.info("查询结果缓存已启用，缓存表: {}, 最大条目数: {}, 最大行数: {}", tableVersions.keySet(), maxEntries, maxRows);
+    }
+
+    /**
+     * 取消订阅
+     */
+    @PreDestroy
+    public void destroy() {
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                log.warn("关闭查询缓存失效订阅失败", e);
+            }
+        }
+    }
+
+    /**
+     * 查询涉及的表是否全部可缓存
+     *
+     * @param tables 查询涉及的表
+     * @return 是否可缓存
+     */
+    public boolean isCacheable(Set<String> tables) {
+        if (tables.isEmpty()) {
+            return false;
+        }
+        for (String table : tables) {
+            if (!tableVersions.containsKey(table)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查询执行前读取表版本
+     *
+     * @param tables 查询涉及的表，必须可缓存
+     * @return 表版本，与表的迭代顺序一致
+     */
+    public long[] versions(Set<String> tables) {
+        long[] versions = new long[tables.size()];
+        int i = 0;
+        for (String table : tables) {
+            versions[i++] = tableVersions.get(table).get();
+        }
+        return versions;
+    }
+
+    /**
+     * 获取缓存的查询结果，不存在、已过期或表版本已变化时返回null
+     *
+     * @param key 缓存键
+     * @return 查询结果
+     */
+    public List<?> get(Object key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        List<Object> result = entry == null || !isValid(entry) ? null : restore(entry.payload);
+        if (result == null) {
+            if (entry != null) {
+                remove(key, entry);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * 缓存查询结果的副本，结果行数超过单条上限或行对象不可序列化时不缓存
+     *
+     * @param key 缓存键
+     * @param tables 查询涉及的表
+     * @param versions 查询执行前读取的表版本
+     * @param result 查询结果
+     */
+    public void put(Object key, Set<String> tables, long[] versions, List<?> result) {
+        if (result.size() > maxEntryRows) {
+            return;
+        }
+        Object payload = snapshot(result);
+        if (payload == null) {
+            return;
+        }
+        Entry entry = new Entry(tables.toArray(new String[0]), versions, payload, result.size(), System.nanoTime() + ttlNanos);
+        if (!isValid(entry)) {
+            return;
+        }
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                totalRows -= previous.rows;
+            }
+            totalRows += entry.rows;
+            evict();
+        }
+    }
+
+    /**
+     * 保存结果副本：全部为不可变类型时保存列表，否则保存序列化结果，不可序列化时返回null
+     */
+    private Object snapshot(List<?> result) {
+        if (result.stream().allMatch(QueryResultCache::isImmutable)) {
+            return Collections.unmodifiableList(new ArrayList<>(result));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(new ArrayList<>(result));
+        } catch (IOException e) {
+            log.debug("查询结果不可序列化，不缓存: {}", e.getMessage());
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 由保存的副本生成新的结果列表，反序列化失败时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> restore(Object payload) {
+        if (payload instanceof List) {
+            return new ArrayList<>((List<Object>) payload);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream((byte[]) payload))) {
+            return (List<Object>) input.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            log.warn("反序列化缓存的查询结果失败", e);
+            return null;
+        }
+    }
+
+    private static boolean isImmutable(Object row) {
+        return row == null || row instanceof String || row instanceof Boolean || row instanceof Character
+                || row instanceof Integer || row instanceof Long || row instanceof Short || row instanceof Byte
+                || row instanceof Double || row instanceof Float || row instanceof BigDecimal
+                || row instanceof BigInteger || row instanceof Enum
+                || row.getClass().getPackageName().equals("java.time");
+    }
+
+    /**
+     * 写操作后使涉及的表失效，并通知其他节点
+     *
+     * @param tables 写操作涉及的表
+     */
+    public void invalidate(Collection<String> tables) {
+        List<String> changed = tables.stream().filter(tableVersions::containsKey).collect(Collectors.toList());
+        if (changed.isEmpty()) {
+            return;
+        }
+        bumpVersions(changed);
+        try {
+            redisTemplate.convertAndSend(invalidateChannel, nodeId + ":" + String.join(",", changed));
+        } catch (Exception e) {
+            log.warn("发送查询缓存失效通知失败: {}", changed, e);
+        }
+    }
+
+    /**
+     * 命中次数
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * 未命中次数
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * 当前缓存条目数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void bumpVersions(Collection<String> tables) {
+        for (String table : tables) {
+            AtomicLong version = tableVersions.get(table);
+            if (version != null) {
+                version.incrementAndGet();
+            }
+        }
+        log.debug("查询缓存表已失效: {}", tables);
+    }
+
+    /**
+     * 处理其他节点的失效通知
+     */
+    private void onInvalidateMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        bumpVersions(Arrays.asList(body.substring(separator + 1).split(",")));
+    }
+
+    private synchronized void remove(Object key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            totalRows -= entry.rows;
+        }
+    }
+
+    private boolean isValid(Entry entry) {
+        if (System.nanoTime() - entry.expireAt >= 0) {
+            return false;
+        }
+        for (int i = 0; i < entry.tables.length; i++) {
+            if (tableVersions.get(entry.tables[i]).get() != entry.versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按条目数和总行数淘汰最久未访问的条目，调用方持有锁
+     */
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || totalRows > maxRows)) {
+            totalRows -= iterator.next().rows;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 缓存项
+     */
+    private static final class Entry {
+
+        private final String[] tables;
+
+        private final long[] versions;
+
+        /**
+         * 不可变行组成的列表，或结果列表的序列化字节
+         */
+        private final Object payload;
+
+        private final int rows;
+
+        private final long expireAt;
+
+        Entry(String[] tables, long[] versions, Object payload, int rows, long expireAt) {
+            this.tables = tables;
+            this.versions = versions;
+            this.payload = payload;
+            this.rows = rows;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package online.yueyun.dbswitch.check;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.backfill.BackfillThrottle;
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+import online.yueyun.dbswitch.enums.RepairAction;
+import online.yueyun.dbswitch.service.ReplicationLagService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 主从表一致性校验
+ * 按主键范围在两个库上并行计算聚合校验和（库内MD5行哈希的BIT_XOR与行数），只对校验和不同的范围继续细分，
+ * 范围足够小时逐行比较行哈希；行级差异在双写消息的已执行水位越过校验时间后复查一次，排除复制延迟造成的暂时差异。
+ * 传输的数据只有每个范围一行校验和以及差异范围内的主键和行哈希，结果为以源库为准的修复列表
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.consistency-check.enabled", havingValue = "true")
+public class ConsistencyChecker {
+
+    @Autowired
+    @Qualifier("masterDataSource")
+    private DataSource masterDataSource;
+
+    @Autowired
+    @Qualifier("slaveDataSource")
+    private DataSource slaveDataSource;
+
+    @Autowired
+    private ReplicationLagService replicationLagService;
+
+    /**
+     * 同时校验的范围数
+     */
+    @Value("${dbswitch.consistency-check.threads:4}")
+    private int threads;
+
+    /**
+     * 校验和不同的范围细分的份数
+     */
+    @Value("${dbswitch.consistency-check.fanout:16}")
+    private int fanout;
+
+    /**
+     * 行数不超过该值的范围逐行比较
+     */
+    @Value("${dbswitch.consistency-check.leaf-size:1000}")
+    private int leafSize;
+
+    @Value("${dbswitch.consistency-check.rows-per-second:0}")
+    private long rowsPerSecond;
+
+    @Value("${dbswitch.consistency-check.max-latency-ms:0}")
+    private long maxLatencyMs;
+
+    @Value("${dbswitch.consistency-check.query-timeout-seconds:30}")
+    private int queryTimeoutSeconds;
+
+    @Value("${dbswitch.consistency-check.max-repairs:10000}")
+    private int maxRepairs;
+
+    /**
+     * 复查行级差异前等待已执行水位的最长时间
+     */
+    @Value("${dbswitch.consistency-check.recheck-wait-ms:5000}")
+    private long recheckWaitMs;
+
+    private ExecutorService executor;
+
+    /**
+     * 执行目标库一侧的查询，任务不会等待其他任务，不会死锁
+     */
+    private ExecutorService targetExecutor;
+
+    private BackfillThrottle throttle;
+
+    private final Map<String, ConsistencyReport> reports = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newFixedThreadPool(threads, threadFactory("dbswitch-check-"));
+        targetExecutor = Executors.newFixedThreadPool(threads, threadFactory("dbswitch-check-target-"));
+        throttle = new BackfillThrottle(rowsPerSecond, maxLatencyMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            targetExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 校验一张表，只支持单列数值主键
+     *
+     * @param table 表名
+     * @param source 作为基准的库，修复列表描述另一个库需要执行的操作
+     * @return 校验完成时完成的结果
+     */
+    public CompletableFuture<ConsistencyReport> check(String table, DataSourceType source) {
+        DataSourceType target = source == DataSourceType.MASTER ? DataSourceType.SLAVE : DataSourceType.MASTER;
+        ConsistencyReport report = new ConsistencyReport(table, source, target);
+        reports.put(source.name().toLowerCase() + ":" + table, report);
+        report.getPending().incrementAndGet();
+        executor.execute(() -> {
+            try {
+                TableContext context = prepare(report);
+                if (context != null) {
+                    submit(context, context.lower, context.upper);
+                }
+            } catch (Exception e) {
+                fail(report, e);
+            } finally {
+                finish(report);
+            }
+        });
+        return report.getFuture();
+    }
+
+    /**
+     * 各表最近一次校验结果
+     */
+    public Map<String, ConsistencyReport> getReports() {
+        return Collections.unmodifiableMap(reports);
+    }
+
+    /**
+     * 读取主键、列和主键范围，空表返回null
+     */
+    private TableContext prepare(ConsistencyReport report) throws SQLException {
+        DataSource source = dataSourceOf(report.getSource());
+        String table = report.getTable();
+        String keyColumn;
+        List<String> columns = new ArrayList<>();
+        try (Connection connection = source.getConnection()) {
+            List<String> keys = new ArrayList<>(1);
+            try (ResultSet resultSet = connection.getMetaData().getPrimaryKeys(connection.getCatalog(), null, table)) {
+                while (resultSet.next()) {
+                    keys.add(resultSet.getString("COLUMN_NAME"));
+                }
+            }
+            if (keys.size() != 1) {
+                throw new IllegalStateException("一致性校验只支持单列主键，表: " + table + ", 主键: " + keys);
+            }
+            keyColumn = keys.get(0);
+            try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM " + quote(table) + " WHERE 1 = 0");
+                 ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    columns.add(metaData.getColumnLabel(i));
+                }
+            }
+        }
+
+        TableContext context = new TableContext(report, keyColumn, columns);
+        // 主键范围取两个库的并集，任一侧多出的行都能被发现
+        long[] sourceBounds = keyBounds(source, context);
+        long[] targetBounds = keyBounds(dataSourceOf(report.getTarget()), context);
+        if (sourceBounds == null && targetBounds == null) {
+            return null;
+        }
+        context.lower = Math.min(sourceBounds == null ? Long.MAX_VALUE : sourceBounds[0],
+                targetBounds == null ? Long.MAX_VALUE : targetBounds[0]) - 1;
+        context.upper = Math.max(sourceBounds == null ? Long.MIN_VALUE : sourceBounds[1],
+                targetBounds == null ? Long.MIN_VALUE : targetBounds[1]);
+        return context;
+    }
+
+    private void submit(TableContext context, long lower, long upper) {
+        ConsistencyReport report = context.report;
+        report.getPending().incrementAndGet();
+        executor.execute(() -> {
+            try {
+                compareRange(context, lower, upper);
+            } catch (Exception e) {
+                fail(report, e);
+            } finally {
+                finish(report);
+            }
+        });
+    }
+
+    /**
+     * 比较范围(lower, upper]的校验和，不同则细分或逐行比较
+     */
+    private void compareRange(TableContext context, long lower, long upper) throws Exception {
+        ConsistencyReport report = context.report;
+        if (report.isTruncated() || report.getError() != null) {
+            return;
+        }
+        CompletableFuture<String[]> targetChecksum = supplyAsync(
+                () -> checksum(dataSourceOf(report.getTarget()), context, lower, upper));
+        String[] sourceChecksum = checksum(dataSourceOf(report.getSource()), context, lower, upper);
+        String[] other = targetChecksum.join();
+        report.getComparedRanges().incrementAndGet();
+        if (Objects.equals(sourceChecksum[0], other[0]) && Objects.equals(sourceChecksum[1], other[1])) {
+            return;
+        }
+
+        long rows = Math.max(Long.parseLong(sourceChecksum[0]), Long.parseLong(other[0]));
+        if (rows <= leafSize || Long.compareUnsigned(upper - lower, fanout) <= 0) {
+            compareRows(context, lower, upper);
+            return;
+        }
+        for (long[] range : split(lower, upper, fanout)) {
+            submit(context, range[0], range[1]);
+        }
+    }
+
+    /**
+     * 把范围(lower, upper]等分为最多fanout个首尾相接的子范围；跨度按无符号数计算，主键接近long边界时不溢出
+     */
+    static List<long[]> split(long lower, long upper, int fanout) {
+        long step = Long.divideUnsigned(upper - lower - 1, fanout) + 1;
+        List<long[]> ranges = new ArrayList<>(fanout);
+        long start = lower;
+        while (start != upper) {
+            long end = Long.compareUnsigned(upper - start, step) <= 0 ? upper : start + step;
+            ranges.add(new long[]{start, end});
+            start = end;
+        }
+        return ranges;
+    }
+
+    /**
+     * 逐行比较范围内的行哈希，差异在已执行水位越过比较时间后复查
+     */
+    private void compareRows(TableContext context, long lower, long upper) throws Exception {
+        ConsistencyReport report = context.report;
+        long compareTime = System.currentTimeMillis();
+        Map<Long, RepairAction> differences = diffRows(context, lower, upper, null);
+        if (differences.isEmpty()) {
+            return;
+        }
+
+        awaitWatermark(compareTime);
+        differences = diffRows(context, lower, upper, differences.keySet());
+        for (Map.Entry<Long, RepairAction> entry : new TreeMap<>(differences).entrySet()) {
+            if (!report.addRepair(new RepairItem(report.getTable(), entry.getKey(), entry.getValue()), maxRepairs)) {
+                log.warn("修复项数量达到上限{}，停止记录: {}", maxRepairs, report.getTable());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 在两个库上读取主键和行哈希并比较；keys不为null时只比较这些主键
+     */
+    private Map<Long, RepairAction> diffRows(TableContext context, long lower, long upper, Set<Long> keys)
+            throws Exception {
+        ConsistencyReport report = context.report;
+        CompletableFuture<Map<Long, String>> targetRows = supplyAsync(
+                () -> rowHashes(dataSourceOf(report.getTarget()), context, lower, upper, keys));
+        Map<Long, String> sourceRows = rowHashes(dataSourceOf(report.getSource()), context, lower, upper, keys);
+        Map<Long, String> otherRows = targetRows.join();
+        report.getComparedRows().addAndGet(sourceRows.size());
+
+        Map<Long, RepairAction> differences = new HashMap<>();
+        for (Map.Entry<Long, String> entry : sourceRows.entrySet()) {
+            String hash = otherRows.get(entry.getKey());
+            if (hash == null) {
+                differences.put(entry.getKey(), RepairAction.INSERT);
+            } else if (!hash.equals(entry.getValue())) {
+                differences.put(entry.getKey(), RepairAction.UPDATE);
+            }
+        }
+        for (Long key : otherRows.keySet()) {
+            if (!sourceRows.containsKey(key)) {
+                differences.put(key, RepairAction.DELETE);
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * 范围内的行数和行哈希的BIT_XOR，均以字符串返回（BIT_XOR为无符号64位）
+     */
+    private String[] checksum(DataSource dataSource, TableContext context, long lower, long upper)
+            throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(context.checksumSql)) {
+            statement.setQueryTimeout(queryTimeoutSeconds);
+            statement.setLong(1, lower);
+            statement.setLong(2, upper);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                String[] checksum = {resultSet.getString(1), resultSet.getString(2)};
+                throttle.acquire((int) Math.min(Integer.MAX_VALUE, Long.parseLong(checksum[0])));
+                return checksum;
+            }
+        } finally {
+            throttle.onCompleted(System.nanoTime() - start);
+        }
+    }
+
+    private Map<Long, String> rowHashes(DataSource dataSource, TableContext context, long lower, long upper,
+                                        Set<Long> keys) throws SQLException {
+        StringBuilder sql = new StringBuilder(context.rowHashSql);
+        if (keys != null) {
+            sql.append(" AND ").append(quote(context.keyColumn)).append(" IN (")
+                    .append(String.join(", ", Collections.nCopies(keys.size(), "?"))).append(")");
+        }
+        Map<Long, String> rows = new HashMap<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            statement.setQueryTimeout(queryTimeoutSeconds);
+            statement.setLong(1, lower);
+            statement.setLong(2, upper);
+            if (keys != null) {
+                int index = 3;
+                for (Long key : new TreeSet<>(keys)) {
+                    statement.setLong(index++, key);
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    rows.put(resultSet.getLong(1), resultSet.getString(2));
+                }
+            }
+        }
+        throttle.acquire(rows.size());
+        return rows;
+    }
+
+    /**
+     * 等待双写消息的全局已执行水位越过给定时间，最长等待recheck-wait-ms
+     */
+    private void awaitWatermark(long time) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + recheckWaitMs;
+        while (replicationLagService.getGlobalWatermark() < time && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+
+    /**
+     * 最小和最大主键，空表返回null
+     */
+    private long[] keyBounds(DataSource dataSource, TableContext context) throws SQLException {
+        String key = quote(context.keyColumn);
+        String sql = "SELECT MIN(" + key + "), MAX(" + key + ") FROM " + quote(context.report.getTable());
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            Object min = resultSet.getObject(1);
+            if (min == null) {
+                return null;
+            }
+            if (!(min instanceof Number)) {
+                throw new IllegalStateException("一致性校验只支持数值主键，表: " + context.report.getTable());
+            }
+            return new long[]{((Number) min).longValue(), resultSet.getLong(2)};
+        }
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(SqlSupplier<T> supplier) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return supplier.get();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }, targetExecutor);
+    }
+
+    private void fail(ConsistencyReport report, Exception e) {
+        if (report.getError() == null) {
+            report.setError(e.getMessage());
+            log.error("一致性校验失败: {}", report.getTable(), e);
+        }
+    }
+
+    private void finish(ConsistencyReport report) {
+        if (report.getPending().decrementAndGet() == 0) {
+            log.info("一致性校验完成: {}, 耗时: {}ms", report, System.currentTimeMillis() - report.getStartTime());
+            report.getFuture().complete(report);
+        }
+    }
+
+    private DataSource dataSourceOf(DataSourceType type) {
+        return type == DataSourceType.MASTER ? masterDataSource : slaveDataSource;
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+    @FunctionalInterface
+    private interface SqlSupplier<T> {
+        T get() throws SQLException;
+    }
+
+    /**
+     * 单张表的校验上下文，SQL只生成一次
+     */
+    private static final class TableContext {
+
+        private final ConsistencyReport report;
+
+        private final String keyColumn;
+
+        private final String checksumSql;
+
+        private final String rowHashSql;
+
+        private long lower;
+
+        private long upper;
+
+        TableContext(ConsistencyReport report, String keyColumn, List<String> columns) {
+            this.report = report;
+            this.keyColumn = keyColumn;
+            // 所有列以分隔符连接，另附各列是否为NULL的标记，区分NULL与空字符串
+            StringBuilder values = new StringBuilder();
+            StringBuilder nulls = new StringBuilder();
+            for (String column : columns) {
+                values.append(quote(column)).append(", ");
+                nulls.append(nulls.length() == 0 ? "" : ", ").append("ISNULL(").append(quote(column)).append(")");
+            }
+            String rowHash = "CAST(CONV(LEFT(MD5(CONCAT_WS('#', " + values + "CONCAT(" + nulls + "))), 16), 16, 10) AS UNSIGNED)";
+            String key = quote(keyColumn);
+            String range = " FROM " + quote(report.getTable()) + " WHERE " + key + " > ? AND " + key + " <= ?";
+            this.checksumSql = "SELECT COUNT(*), COALESCE(BIT_XOR(" + rowHash + "), 0)" + range;
+            this.rowHashSql = "SELECT " + key + ", " + rowHash + range;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package online.yueyun.dbswitch.check;
+
+import lombok.Getter;
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单张表的一致性校验结果
+ */
+@Getter
+public class ConsistencyReport {
+
+    private final String table;
+
+    private final DataSourceType source;
+
+    private final DataSourceType target;
+
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * 比较过校验和的范围数
+     */
+    private final AtomicLong comparedRanges = new AtomicLong();
+
+    /**
+     * 逐行比较过的行数
+     */
+    private final AtomicLong comparedRows = new AtomicLong();
+
+    /**
+     * 修复项数量达到上限后不再记录
+     */
+    private volatile boolean truncated;
+
+    private volatile String error;
+
+    private final List<RepairItem> repairs = new ArrayList<>();
+
+    /**
+     * 未完成的范围任务数，归零时校验完成
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final CompletableFuture<ConsistencyReport> future = new CompletableFuture<>();
+
+    public ConsistencyReport(String table, DataSourceType source, DataSourceType target) {
+        this.table = table;
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * 修复列表，以源库为准
+     */
+    public List<RepairItem> getRepairs() {
+        synchronized (repairs) {
+            return new ArrayList<>(repairs);
+        }
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * 两个库是否一致，校验完成且没有错误时有效
+     */
+    public boolean isConsistent() {
+        synchronized (repairs) {
+            return repairs.isEmpty() && !truncated && error == null;
+        }
+    }
+
+    /**
+     * 记录修复项，超过上限时返回false
+     */
+    boolean addRepair(RepairItem item, int maxRepairs) {
+        synchronized (repairs) {
+            if (repairs.size() >= maxRepairs) {
+                truncated = true;
+                return false;
+            }
+            repairs.add(item);
+            return true;
+        }
+    }
+
+    void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistencyReport{" + table + ", " + source + "->" + target + ", ranges=" + comparedRanges.get()
+                + ", rows=" + comparedRows.get() + ", repairs=" + getRepairs().size()
+                + (truncated ? "+" : "") + (error == null ? "" : ", error=" + error) + "}";
+    }
+}
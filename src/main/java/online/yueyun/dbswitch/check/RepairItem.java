@@ -0,0 +1,31 @@
+package online.yueyun.dbswitch.check;
+
+import lombok.Getter;
+import online.yueyun.dbswitch.enums.RepairAction;
+
+/**
+ * 修复项：目标库中需要按源库修复的一行
+ */
+@Getter
+public class RepairItem {
+
+    private final String table;
+
+    /**
+     * 主键值
+     */
+    private final long key;
+
+    private final RepairAction action;
+
+    public RepairItem(String table, long key, RepairAction action) {
+        this.table = table;
+        this.key = key;
+        this.action = action;
+    }
+
+    @Override
+    public String toString() {
+        return action + " " + table + "#" + key;
+    }
+}
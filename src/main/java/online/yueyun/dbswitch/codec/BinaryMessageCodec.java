@@ -0,0 +1,917 @@
+package online.yueyun.dbswitch.codec;
+
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.aop.MappedStatementRoute;
+import online.yueyun.dbswitch.aop.MappedStatementRouteRegistry;
+import online.yueyun.dbswitch.enums.OperationType;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import org.apache.ibatis.binding.MapperMethod;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 紧凑二进制编解码器
+ * <ul>
+ *     <li>语句ID按字典编码为64位哈希，字典来自MappedStatement路由表，字典中没有的语句内联写入类名和方法名</li>
+ *     <li>UUID格式的消息ID编码为两个long，时间、重试次数和标志位编码为基本类型</li>
+ *     <li>参数按类型标签编码，POJO按字段结构（类名 + 结构指纹 + 字段值）编码，Map和MyBatis ParamMap按键值对编码</li>
+ * </ul>
+ * 同一条消息内重复出现的类名只写一次；解码时POJO和枚举类型须在参数类型白名单中，
+ * 无法按字段编码的参数使用JDK序列化，反序列化时按白名单过滤。
+ * 解码时校验长度、数量和引用序号，限制嵌套深度，格式错误的数据一律抛出MessageCodecException
+ */
+@Slf4j
+public class BinaryMessageCodec implements MessageCodec {
+
+    public static final String NAME = "binary";
+
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_SUCCESS = 1;
+    private static final int FLAG_SUCCESS_PRESENT = 1 << 1;
+    private static final int FLAG_SECOND_MASTER = 1 << 2;
+    private static final int FLAG_SECOND_MASTER_PRESENT = 1 << 3;
+    private static final int FLAG_MESSAGE_ID_PRESENT = 1 << 4;
+    private static final int FLAG_MESSAGE_ID_UUID = 1 << 5;
+    private static final int FLAG_CREATE_TIME_PRESENT = 1 << 6;
+    private static final int FLAG_STATEMENT_INLINE = 1 << 7;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_TRUE = 4;
+    private static final byte TAG_FALSE = 5;
+    private static final byte TAG_DOUBLE = 6;
+    private static final byte TAG_FLOAT = 7;
+    private static final byte TAG_SHORT = 8;
+    private static final byte TAG_BYTE = 9;
+    private static final byte TAG_CHAR = 10;
+    private static final byte TAG_BIG_DECIMAL = 11;
+    private static final byte TAG_BIG_INTEGER = 12;
+    private static final byte TAG_DATE = 13;
+    private static final byte TAG_TIMESTAMP = 14;
+    private static final byte TAG_LOCAL_DATE_TIME = 15;
+    private static final byte TAG_LOCAL_DATE = 16;
+    private static final byte TAG_LOCAL_TIME = 17;
+    private static final byte TAG_INSTANT = 18;
+    private static final byte TAG_BYTES = 19;
+    private static final byte TAG_ENUM = 20;
+    private static final byte TAG_PARAM_MAP = 21;
+    private static final byte TAG_MAP = 22;
+    private static final byte TAG_LIST = 23;
+    private static final byte TAG_SET = 24;
+    private static final byte TAG_ARRAY = 25;
+    private static final byte TAG_POJO = 26;
+    private static final byte TAG_SERIALIZED = 27;
+
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+    /**
+     * 参数值的最大嵌套深度
+     */
+    private static final int MAX_NESTING_DEPTH = 64;
+
+    private final MappedStatementRouteRegistry routeRegistry;
+
+    private final ParameterTypeFilter typeFilter;
+
+    /**
+     * 语句哈希到路由的字典
+     */
+    private volatile Map<Long, MappedStatementRoute> dictionary = new HashMap<>();
+
+    private final ConcurrentMap<Class<?>, PojoSchema> schemas = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, PojoSchema> schemasByName = new ConcurrentHashMap<>();
+
+    public BinaryMessageCodec(MappedStatementRouteRegistry routeRegistry, ParameterTypeFilter typeFilter) {
+        this.routeRegistry = routeRegistry;
+        this.typeFilter = typeFilter;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(DBOperationMessage message) {
+        Output out = new Output(256);
+        ClassNames names = new ClassNames();
+
+        String mapperClassName = message.getMapperClassName();
+        String methodName = message.getMethodName();
+        long statementHash = statementHash(mapperClassName, methodName);
+        MappedStatementRoute route = lookup(statementHash);
+        boolean inline = route == null
+                || !route.getMapperClassName().equals(mapperClassName)
+                || !route.getMethodName().equals(methodName);
+
+        UUID uuid = parseUuid(message.getMessageId());
+
+        int flags = 0;
+        if (message.getSuccess() != null) {
+            flags |= FLAG_SUCCESS_PRESENT | (message.getSuccess() ? FLAG_SUCCESS : 0);
+        }
+        if (message.getUseSecondMaster() != null) {
+            flags |= FLAG_SECOND_MASTER_PRESENT | (message.getUseSecondMaster() ? FLAG_SECOND_MASTER : 0);
+        }
+        if (message.getMessageId() != null) {
+            flags |= FLAG_MESSAGE_ID_PRESENT | (uuid != null ? FLAG_MESSAGE_ID_UUID : 0);
+        }
+        if (message.getCreateTime() != null) {
+            flags |= FLAG_CREATE_TIME_PRESENT;
+        }
+        if (inline) {
+            flags |= FLAG_STATEMENT_INLINE;
+        }
+
+        out.writeByte(VERSION);
+        out.writeByte(flags);
+        out.writeByte(message.getOperationType() == null ? -1 : message.getOperationType().ordinal());
+        out.writeVarLong(message.getRetryCount() == null ? 0 : message.getRetryCount() + 1L);
+        if (uuid != null) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else if (message.getMessageId() != null) {
+            out.writeString(message.getMessageId());
+        }
+        if (message.getCreateTime() != null) {
+            out.writeLong(message.getCreateTime().getTime());
+        }
+        if (inline) {
+            out.writeNullableString(mapperClassName);
+            out.writeNullableString(methodName);
+        } else {
+            out.writeLong(statementHash);
+        }
+
+        String[] parameterTypes = message.getParameterTypes();
+        out.writeVarLong(parameterTypes == null ? 0 : parameterTypes.length + 1L);
+        if (parameterTypes != null) {
+            for (String parameterType : parameterTypes) {
+                names.write(out, parameterType);
+            }
+        }
+
+        Object[] args = message.getArgs();
+        out.writeVarLong(args == null ? 0 : args.length + 1L);
+        if (args != null) {
+            for (Object arg : args) {
+                writeValue(out, arg, names);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public DBOperationMessage decode(byte[] data) {
+        if (data == null) {
+            throw new MessageCodecException("消息数据为空");
+        }
+        try {
+            return read(data);
+        } catch (MessageCodecException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new MessageCodecException("消息数据格式错误: " + e, e);
+        }
+    }
+
+    private DBOperationMessage read(byte[] data) {
+        Input in = new Input(data);
+        ClassNames names = new ClassNames();
+
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new MessageCodecException("不支持的消息编码版本: " + version);
+        }
+        int flags = in.readByte() & 0xFF;
+        int operationType = in.readByte();
+        if (operationType >= OPERATION_TYPES.length || operationType < -1) {
+            throw new MessageCodecException("无法识别的操作类型: " + operationType);
+        }
+        long retryCount = in.readVarLong();
+        if (retryCount < 0 || retryCount - 1 > Integer.MAX_VALUE) {
+            throw new MessageCodecException("重试次数超出范围: " + retryCount);
+        }
+
+        DBOperationMessage message = new DBOperationMessage();
+        message.setOperationType(operationType < 0 ? null : OPERATION_TYPES[operationType]);
+        message.setRetryCount(retryCount == 0 ? null : (int) (retryCount - 1));
+        if ((flags & FLAG_SUCCESS_PRESENT) != 0) {
+            message.setSuccess((flags & FLAG_SUCCESS) != 0);
+        }
+        if ((flags & FLAG_SECOND_MASTER_PRESENT) != 0) {
+            message.setUseSecondMaster((flags & FLAG_SECOND_MASTER) != 0);
+        }
+        if ((flags & FLAG_MESSAGE_ID_PRESENT) != 0) {
+            if ((flags & FLAG_MESSAGE_ID_UUID) != 0) {
+                message.setMessageId(new UUID(in.readLong(), in.readLong()).toString());
+            } else {
+                message.setMessageId(in.readString());
+            }
+        }
+        if ((flags & FLAG_CREATE_TIME_PRESENT) != 0) {
+            message.setCreateTime(new Date(in.readLong()));
+        }
+        if ((flags & FLAG_STATEMENT_INLINE) != 0) {
+            message.setMapperClassName(in.readNullableString());
+            message.setMethodName(in.readNullableString());
+        } else {
+            long statementHash = in.readLong();
+            MappedStatementRoute route = lookup(statementHash);
+            if (route == null) {
+                throw new MessageCodecException("无法识别的语句字典编码: " + Long.toHexString(statementHash));
+            }
+            message.setMapperClassName(route.getMapperClassName());
+            message.setMethodName(route.getMethodName());
+        }
+
+        int parameterTypeCount = in.readCount();
+        if (parameterTypeCount > 0) {
+            String[] parameterTypes = new String[parameterTypeCount - 1];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypes[i] = names.read(in);
+            }
+            message.setParameterTypes(parameterTypes);
+        }
+
+        int argCount = in.readCount();
+        if (argCount > 0) {
+            Object[] args = new Object[argCount - 1];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = readValue(in, names, 0);
+            }
+            message.setArgs(args);
+        }
+        return message;
+    }
+
+    /**
+     * 编码参数值
+     */
+    private void writeValue(Output out, Object value, ClassNames names) {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+            return;
+        }
+
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.writeByte(TAG_STRING);
+            out.writeString((String) value);
+        } else if (type == Integer.class) {
+            out.writeByte(TAG_INT);
+            out.writeZigZag((Integer) value);
+        } else if (type == Long.class) {
+            out.writeByte(TAG_LONG);
+            out.writeZigZag((Long) value);
+        } else if (type == Boolean.class) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (type == Double.class) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (type == Float.class) {
+            out.writeByte(TAG_FLOAT);
+            out.writeZigZag(Float.floatToRawIntBits((Float) value));
+        } else if (type == Short.class) {
+            out.writeByte(TAG_SHORT);
+            out.writeZigZag((Short) value);
+        } else if (type == Byte.class) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            out.writeByte(TAG_CHAR);
+            out.writeVarLong((Character) value);
+        } else if (type == BigDecimal.class) {
+            BigDecimal decimal = (BigDecimal) value;
+            out.writeByte(TAG_BIG_DECIMAL);
+            out.writeZigZag(decimal.scale());
+            out.writeBytes(decimal.unscaledValue().toByteArray());
+        } else if (type == BigInteger.class) {
+            out.writeByte(TAG_BIG_INTEGER);
+            out.writeBytes(((BigInteger) value).toByteArray());
+        } else if (type == Date.class) {
+            out.writeByte(TAG_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (type == Timestamp.class) {
+            Timestamp timestamp = (Timestamp) value;
+            out.writeByte(TAG_TIMESTAMP);
+            out.writeLong(timestamp.getTime());
+            out.writeVarLong(timestamp.getNanos());
+        } else if (type == LocalDateTime.class) {
+            LocalDateTime dateTime = (LocalDateTime) value;
+            out.writeByte(TAG_LOCAL_DATE_TIME);
+            out.writeZigZag(dateTime.toLocalDate().toEpochDay());
+            out.writeVarLong(dateTime.toLocalTime().toNanoOfDay());
+        } else if (type == LocalDate.class) {
+            out.writeByte(TAG_LOCAL_DATE);
+            out.writeZigZag(((LocalDate) value).toEpochDay());
+        } else if (type == LocalTime.class) {
+            out.writeByte(TAG_LOCAL_TIME);
+            out.writeVarLong(((LocalTime) value).toNanoOfDay());
+        } else if (type == Instant.class) {
+            Instant instant = (Instant) value;
+            out.writeByte(TAG_INSTANT);
+            out.writeZigZag(instant.getEpochSecond());
+            out.writeVarLong(instant.getNano());
+        } else if (type == byte[].class) {
+            out.writeByte(TAG_BYTES);
+            out.writeBytes((byte[]) value);
+        } else if (value instanceof Enum) {
+            out.writeByte(TAG_ENUM);
+            names.write(out, ((Enum<?>) value).getDeclaringClass().getName());
+            out.writeString(((Enum<?>) value).name());
+        } else if (type == MapperMethod.ParamMap.class) {
+            out.writeByte(TAG_PARAM_MAP);
+            writeEntries(out, (Map<?, ?>) value, names);
+        } else if (value instanceof Map) {
+            out.writeByte(TAG_MAP);
+            writeEntries(out, (Map<?, ?>) value, names);
+        } else if (value instanceof List) {
+            out.writeByte(TAG_LIST);
+            writeElements(out, (Collection<?>) value, names);
+        } else if (value instanceof Set) {
+            out.writeByte(TAG_SET);
+            writeElements(out, (Collection<?>) value, names);
+        } else if (type == Object[].class) {
+            out.writeByte(TAG_ARRAY);
+            writeElements(out, Arrays.asList((Object[]) value), names);
+        } else {
+            PojoSchema schema = schemas.computeIfAbsent(type, PojoSchema::of);
+            if (schema.isSupported()) {
+                out.writeByte(TAG_POJO);
+                names.write(out, type.getName());
+                out.writeInt(schema.getFingerprint());
+                for (Field field : schema.getFields()) {
+                    writeValue(out, schema.get(field, value), names);
+                }
+            } else if (value instanceof Serializable) {
+                out.writeByte(TAG_SERIALIZED);
+                out.writeBytes(serialize(value));
+            } else {
+                throw new MessageCodecException("不支持编码的参数类型: " + type.getName());
+            }
+        }
+    }
+
+    /**
+     * 解码参数值
+     */
+    private Object readValue(Input in, ClassNames names, int depth) {
+        if (depth > MAX_NESTING_DEPTH) {
+            throw new MessageCodecException("参数嵌套深度超过" + MAX_NESTING_DEPTH);
+        }
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return in.readString();
+            case TAG_INT:
+                return (int) in.readZigZag();
+            case TAG_LONG:
+                return in.readZigZag();
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case TAG_FLOAT:
+                return Float.intBitsToFloat((int) in.readZigZag());
+            case TAG_SHORT:
+                return (short) in.readZigZag();
+            case TAG_BYTE:
+                return in.readByte();
+            case TAG_CHAR:
+                return (char) in.readVarLong();
+            case TAG_BIG_DECIMAL:
+                int scale = (int) in.readZigZag();
+                return new BigDecimal(new BigInteger(in.readBytes()), scale);
+            case TAG_BIG_INTEGER:
+                return new BigInteger(in.readBytes());
+            case TAG_DATE:
+                return new Date(in.readLong());
+            case TAG_TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos((int) in.readVarLong());
+                return timestamp;
+            case TAG_LOCAL_DATE_TIME:
+                LocalDate date = LocalDate.ofEpochDay(in.readZigZag());
+                return LocalDateTime.of(date, LocalTime.ofNanoOfDay(in.readVarLong()));
+            case TAG_LOCAL_DATE:
+                return LocalDate.ofEpochDay(in.readZigZag());
+            case TAG_LOCAL_TIME:
+                return LocalTime.ofNanoOfDay(in.readVarLong());
+            case TAG_INSTANT:
+                return Instant.ofEpochSecond(in.readZigZag(), in.readVarLong());
+            case TAG_BYTES:
+                return in.readBytes();
+            case TAG_ENUM:
+                return readEnum(names.read(in), in.readString());
+            case TAG_PARAM_MAP:
+                return readEntries(in, new MapperMethod.ParamMap<>(), names, depth + 1);
+            case TAG_MAP:
+                return readEntries(in, new LinkedHashMap<>(), names, depth + 1);
+            case TAG_LIST:
+                return readElements(in, new ArrayList<>(), names, depth + 1);
+            case TAG_SET:
+                return readElements(in, new LinkedHashSet<>(), names, depth + 1);
+            case TAG_ARRAY:
+                return readElements(in, new ArrayList<>(), names, depth + 1).toArray();
+            case TAG_POJO:
+                return readPojo(in, names, depth + 1);
+            case TAG_SERIALIZED:
+                return deserialize(in.readBytes());
+            default:
+                throw new MessageCodecException("无法识别的参数类型标签: " + tag);
+        }
+    }
+
+    private void writeEntries(Output out, Map<?, ?> map, ClassNames names) {
+        out.writeVarLong(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey(), names);
+            writeValue(out, entry.getValue(), names);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> readEntries(Input in, Map<?, ?> target, ClassNames names, int depth) {
+        Map<Object, Object> map = (Map<Object, Object>) target;
+        int size = in.readCount();
+        for (int i = 0; i < size; i++) {
+            Object key = readValue(in, names, depth);
+            map.put(key, readValue(in, names, depth));
+        }
+        return map;
+    }
+
+    private void writeElements(Output out, Collection<?> elements, ClassNames names) {
+        out.writeVarLong(elements.size());
+        for (Object element : elements) {
+            writeValue(out, element, names);
+        }
+    }
+
+    private <C extends Collection<Object>> C readElements(Input in, C target, ClassNames names, int depth) {
+        int size = in.readCount();
+        for (int i = 0; i < size; i++) {
+            target.add(readValue(in, names, depth));
+        }
+        return target;
+    }
+
+    private Object readPojo(Input in, ClassNames names, int depth) {
+        String className = names.read(in);
+        int fingerprint = in.readInt();
+        typeFilter.check(className);
+        PojoSchema schema = schemasByName.computeIfAbsent(className, name -> schemas.computeIfAbsent(loadClass(name), PojoSchema::of));
+        if (!schema.isSupported() || schema.getFingerprint() != fingerprint) {
+            throw new MessageCodecException("参数类型结构与发送端不一致: " + className);
+        }
+        Object instance = schema.newInstance();
+        for (Field field : schema.getFields()) {
+            schema.set(field, instance, readValue(in, names, depth));
+        }
+        return instance;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readEnum(String className, String name) {
+        if (!className.startsWith("java.")) {
+            typeFilter.check(className);
+        }
+        Class<?> type = loadClass(className);
+        if (!type.isEnum()) {
+            throw new MessageCodecException("参数类型不是枚举: " + className);
+        }
+        try {
+            return Enum.valueOf((Class) type, name);
+        } catch (IllegalArgumentException e) {
+            throw new MessageCodecException("无法识别的枚举值: " + className + "." + name, e);
+        }
+    }
+
+    private Class<?> loadClass(String className) {
+        try {
+            return Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new MessageCodecException("找不到参数类型: " + className, e);
+        }
+    }
+
+    private byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        } catch (IOException e) {
+            throw new MessageCodecException("序列化参数失败: " + value.getClass().getName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Object deserialize(byte[] data) {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            input.setObjectInputFilter(typeFilter);
+            return input.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new MessageCodecException("反序列化参数失败", e);
+        }
+    }
+
+    /**
+     * 按语句哈希查找路由，字典中不存在时按路由表重建字典
+     */
+    private MappedStatementRoute lookup(long statementHash) {
+        MappedStatementRoute route = dictionary.get(statementHash);
+        if (route != null) {
+            return route;
+        }
+        Collection<MappedStatementRoute> routes = routeRegistry.getRoutes();
+        if (routes.size() == dictionary.size()) {
+            return null;
+        }
+        Map<Long, MappedStatementRoute> rebuilt = new HashMap<>(routes.size() * 2);
+        for (MappedStatementRoute candidate : routes) {
+            rebuilt.put(statementHash(candidate.getMapperClassName(), candidate.getMethodName()), candidate);
+        }
+        dictionary = rebuilt;
+        return rebuilt.get(statementHash);
+    }
+
+    /**
+     * 语句ID的64位FNV-1a哈希，不拼接字符串
+     */
+    private static long statementHash(String mapperClassName, String methodName) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, mapperClassName);
+        hash = (hash ^ '.') * 0x100000001b3L;
+        return fnv(hash, methodName);
+    }
+
+    private static long fnv(long hash, String value) {
+        if (value == null) {
+            return hash;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 仅识别标准格式的UUID，保证解码后字符串与原值一致
+     */
+    private static UUID parseUuid(String messageId) {
+        if (messageId == null || messageId.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(messageId);
+            return uuid.toString().equals(messageId) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * POJO编码结构：类层次中所有非静态、非transient字段，按声明类层次和字段名排序
+     */
+    private static final class PojoSchema {
+
+        private static final PojoSchema UNSUPPORTED = new PojoSchema(null, new Field[0], 0);
+
+        private final Constructor<?> constructor;
+
+        private final Field[] fields;
+
+        private final int fingerprint;
+
+        private PojoSchema(Constructor<?> constructor, Field[] fields, int fingerprint) {
+            this.constructor = constructor;
+            this.fields = fields;
+            this.fingerprint = fingerprint;
+        }
+
+        static PojoSchema of(Class<?> type) {
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isArray()
+                    || type.getName().startsWith("java.") || type.getName().startsWith("javax.")) {
+                return UNSUPPORTED;
+            }
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+
+                List<Field> fields = new ArrayList<>();
+                List<Class<?>> hierarchy = new ArrayList<>();
+                for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                    hierarchy.add(0, current);
+                }
+                for (Class<?> current : hierarchy) {
+                    List<Field> declared = new ArrayList<>();
+                    for (Field field : current.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                            field.setAccessible(true);
+                            declared.add(field);
+                        }
+                    }
+                    declared.sort(Comparator.comparing(Field::getName));
+                    fields.addAll(declared);
+                }
+
+                int fingerprint = 1;
+                for (Field field : fields) {
+                    fingerprint = 31 * fingerprint + field.getName().hashCode();
+                    fingerprint = 31 * fingerprint + field.getType().getName().hashCode();
+                }
+                return new PojoSchema(constructor, fields.toArray(new Field[0]), fingerprint);
+            } catch (NoSuchMethodException | RuntimeException e) {
+                log.debug("类型 {} 不支持按字段编码: {}", type.getName(), e.getMessage());
+                return UNSUPPORTED;
+            }
+        }
+
+        boolean isSupported() {
+            return constructor != null;
+        }
+
+        Field[] getFields() {
+            return fields;
+        }
+
+        int getFingerprint() {
+            return fingerprint;
+        }
+
+        Object newInstance() {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new MessageCodecException("创建参数实例失败: " + constructor.getDeclaringClass().getName(), e);
+            }
+        }
+
+        Object get(Field field, Object target) {
+            try {
+                return field.get(target);
+            } catch (IllegalAccessException e) {
+                throw new MessageCodecException("读取字段失败: " + field, e);
+            }
+        }
+
+        void set(Field field, Object target, Object value) {
+            if (value == null && field.getType().isPrimitive()) {
+                return;
+            }
+            try {
+                field.set(target, value);
+            } catch (IllegalAccessException | IllegalArgumentException e) {
+                // 如解码得到的List、Set不能赋值给声明为具体集合类型的字段
+                throw new MessageCodecException("写入字段失败: " + field, e);
+            }
+        }
+    }
+
+    /**
+     * 单条消息内的类名表，重复出现的类名只写入引用序号
+     */
+    private static final class ClassNames {
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        private final List<String> names = new ArrayList<>();
+
+        void write(Output out, String name) {
+            Integer index = indexes.get(name);
+            if (index != null) {
+                out.writeVarLong(index + 1L);
+                return;
+            }
+            out.writeVarLong(0);
+            out.writeNullableString(name);
+            indexes.put(name, names.size());
+            names.add(name);
+        }
+
+        String read(Input in) {
+            long reference = in.readVarLong();
+            if (reference < 0 || reference > names.size()) {
+                throw new MessageCodecException("无效的类名引用: " + reference);
+            }
+            if (reference > 0) {
+                return names.get((int) reference - 1);
+            }
+            String name = in.readNullableString();
+            names.add(name);
+            return name;
+        }
+    }
+
+    /**
+     * 可扩容的字节输出缓冲区
+     */
+    private static final class Output {
+
+        private byte[] buffer;
+
+        private int position;
+
+        Output(int initialCapacity) {
+            this.buffer = new byte[initialCapacity];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeString(String value) {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeNullableString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+    }
+
+    /**
+     * 字节输入缓冲区
+     */
+    private static final class Input {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            checkRemaining(1);
+            return buffer[position++];
+        }
+
+        int readInt() {
+            checkRemaining(4);
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readLong() {
+            checkRemaining(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new MessageCodecException("变长整数格式错误");
+        }
+
+        long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        byte[] readBytes() {
+            return readRaw(readCount());
+        }
+
+        String readString() {
+            return new String(readBytes(), StandardCharsets.UTF_8);
+        }
+
+        String readNullableString() {
+            int length = readCount();
+            if (length == 0) {
+                return null;
+            }
+            return new String(readRaw(length - 1), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 读取数量或长度，每个元素至少占一个字节，超过剩余字节数时数据必然不完整
+         */
+        int readCount() {
+            long count = readVarLong();
+            if (count < 0 || count > buffer.length - position + 1L) {
+                throw new MessageCodecException("消息数据长度错误: " + count);
+            }
+            return (int) count;
+        }
+
+        private byte[] readRaw(int length) {
+            checkRemaining(length);
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        private void checkRemaining(int length) {
+            if (length < 0 || position + length > buffer.length) {
+                throw new MessageCodecException("消息数据不完整");
+            }
+        }
+    }
+}
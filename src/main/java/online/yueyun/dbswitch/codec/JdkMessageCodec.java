@@ -0,0 +1,50 @@
+package online.yueyun.dbswitch.codec;
+
+import online.yueyun.dbswitch.message.DBOperationMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * JDK序列化编解码器
+ * 消息参数需实现Serializable，反序列化时按参数类型白名单过滤
+ */
+public class JdkMessageCodec implements MessageCodec {
+
+    public static final String NAME = "jdk";
+
+    private final ParameterTypeFilter typeFilter;
+
+    public JdkMessageCodec(ParameterTypeFilter typeFilter) {
+        this.typeFilter = typeFilter;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(DBOperationMessage message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(message);
+        } catch (IOException e) {
+            throw new MessageCodecException("序列化消息失败: " + message.getMessageId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public DBOperationMessage decode(byte[] data) {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            input.setObjectInputFilter(typeFilter);
+            return (DBOperationMessage) input.readObject();
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            throw new MessageCodecException("反序列化消息失败", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package online.yueyun.dbswitch.codec;
+
+import online.yueyun.dbswitch.message.DBOperationMessage;
+
+/**
+ * 消息编解码器接口
+ */
+public interface MessageCodec {
+
+    /**
+     * 消息头中标识编解码器的键
+     */
+    String CODEC_HEADER = "dbswitch-codec";
+
+    /**
+     * 编解码器名称，写入消息头，消费端据此选择解码方式
+     *
+     * @return 名称
+     */
+    String getName();
+
+    /**
+     * 编码消息
+     *
+     * @param message 数据库操作消息
+     * @return 字节数组
+     * @throws MessageCodecException 编码异常
+     */
+    byte[] encode(DBOperationMessage message);
+
+    /**
+     * 解码消息
+     *
+     * @param data 字节数组
+     * @return 数据库操作消息
+     * @throws MessageCodecException 解码异常
+     */
+    DBOperationMessage decode(byte[] data);
+}
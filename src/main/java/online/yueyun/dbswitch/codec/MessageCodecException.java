@@ -0,0 +1,17 @@
+package online.yueyun.dbswitch.codec;
+
+/**
+ * 消息编解码异常
+ */
+public class MessageCodecException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MessageCodecException(String message) {
+        super(message);
+    }
+
+    public MessageCodecException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,173 @@
+package online.yueyun.dbswitch.codec;
+
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.enums.OperationType;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.io.ObjectInputFilter;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 消息参数类型白名单
+ * 白名单由MyBatis中登记的Mapper接口方法的参数类型构成，并递归包含其泛型参数和字段类型，另可配置额外的类名或包前缀；
+ * 解码时只允许实例化白名单中的类型，JDK反序列化另外只允许java.lang、java.util、java.math、java.time和java.sql中的类型
+ */
+@Slf4j
+public class ParameterTypeFilter implements ObjectInputFilter {
+
+    private static final Set<String> JDK_PACKAGES = Set.of("java.lang", "java.util", "java.math", "java.time", "java.sql");
+
+    private static final long MAX_DEPTH = 32;
+
+    private static final long MAX_REFERENCES = 100_000;
+
+    private static final long MAX_ARRAY_LENGTH = 1_000_000;
+
+    private final ObjectProvider<SqlSessionFactory> sqlSessionFactories;
+
+    /**
+     * 额外允许的类名，以.结尾时为包前缀
+     */
+    private final List<String> extraAllowed;
+
+    private volatile Set<String> allowed;
+
+    private volatile int mapperCount = -1;
+
+    /**
+     * @param sqlSessionFactories MyBatis会话工厂，用于读取已登记的Mapper接口
+     * @param extraAllowed 额外允许的类名或包前缀（以.结尾）
+     */
+    public ParameterTypeFilter(ObjectProvider<SqlSessionFactory> sqlSessionFactories, List<String> extraAllowed) {
+        this.sqlSessionFactories = sqlSessionFactories;
+        this.extraAllowed = extraAllowed;
+    }
+
+    /**
+     * 类型是否允许由消息内容实例化
+     *
+     * @param className 类名
+     * @return 是否允许
+     */
+    public boolean isAllowed(String className) {
+        for (String prefix : extraAllowed) {
+            if (prefix.endsWith(".") ? className.startsWith(prefix) : className.equals(prefix)) {
+                return true;
+            }
+        }
+        Set<String> current = allowed;
+        if (current == null || !current.contains(className) && mapperCount != countMappers()) {
+            current = rebuild();
+        }
+        return current.contains(className);
+    }
+
+    /**
+     * 检查类名，不允许时抛出编解码异常
+     *
+     * @param className 类名
+     */
+    public void check(String className) {
+        if (!isAllowed(className)) {
+            throw new MessageCodecException("参数类型不在白名单中: " + className);
+        }
+    }
+
+    @Override
+    public Status checkInput(FilterInfo info) {
+        if (info.depth() > MAX_DEPTH || info.references() > MAX_REFERENCES
+                || info.arrayLength() > MAX_ARRAY_LENGTH) {
+            return Status.REJECTED;
+        }
+        Class<?> type = info.serialClass();
+        if (type == null) {
+            return Status.UNDECIDED;
+        }
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive() || JDK_PACKAGES.contains(type.getPackageName())
+                || type == DBOperationMessage.class || type == OperationType.class
+                || type == MapperMethod.ParamMap.class || isAllowed(type.getName())) {
+            return Status.ALLOWED;
+        }
+        log.warn("拒绝反序列化不在白名单中的类型: {}", type.getName());
+        return Status.REJECTED;
+    }
+
+    private synchronized Set<String> rebuild() {
+        int count = countMappers();
+        if (allowed != null && count == mapperCount) {
+            return allowed;
+        }
+        Set<String> names = new HashSet<>();
+        sqlSessionFactories.orderedStream().forEach(factory -> {
+            for (Class<?> mapper : factory.getConfiguration().getMapperRegistry().getMappers()) {
+                for (Method method : mapper.getMethods()) {
+                    for (Type type : method.getGenericParameterTypes()) {
+                        collect(type, names);
+                    }
+                }
+            }
+        });
+        allowed = Collections.unmodifiableSet(names);
+        mapperCount = count;
+        log.info("消息参数类型白名单已更新，共 {} 个类型", names.size());
+        return allowed;
+    }
+
+    private int countMappers() {
+        return sqlSessionFactories.orderedStream()
+                .map(factory -> factory.getConfiguration().getMapperRegistry().getMappers())
+                .mapToInt(Collection::size)
+                .sum();
+    }
+
+    /**
+     * 收集类型及其泛型参数、数组元素和字段类型，JDK类型本身不加入但会展开其泛型参数
+     */
+    private void collect(Type type, Set<String> names) {
+        if (type instanceof ParameterizedType) {
+            collect(((ParameterizedType) type).getRawType(), names);
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                collect(argument, names);
+            }
+        } else if (type instanceof GenericArrayType) {
+            collect(((GenericArrayType) type).getGenericComponentType(), names);
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                collect(bound, names);
+            }
+        } else if (type instanceof Class) {
+            Class<?> clazz = (Class<?>) type;
+            while (clazz.isArray()) {
+                clazz = clazz.getComponentType();
+            }
+            if (clazz.isPrimitive() || clazz.getName().startsWith("java.") || clazz.getName().startsWith("javax.")
+                    || !names.add(clazz.getName())) {
+                return;
+            }
+            for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        collect(field.getGenericType(), names);
+                    }
+                }
+            }
+        }
+    }
+}
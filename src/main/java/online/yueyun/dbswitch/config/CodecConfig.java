@@ -0,0 +1,73 @@
+package online.yueyun.dbswitch.config;
+
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.aop.MappedStatementRouteRegistry;
+import online.yueyun.dbswitch.codec.BinaryMessageCodec;
+import online.yueyun.dbswitch.codec.JdkMessageCodec;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.codec.ParameterTypeFilter;
+import online.yueyun.dbswitch.enums.CodecType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * 消息编解码配置
+ * 两种编解码器都会注册，消费端按消息头选择解码方式；当前使用的编解码器由dbswitch.codec.type决定
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "dbswitch.enabled", havingValue = "true", matchIfMissing = true)
+public class CodecConfig {
+
+    @Value("${dbswitch.codec.type:DEFAULT}")
+    private CodecType codecType;
+
+    @Value("${dbswitch.codec.allowed-types:}")
+    private String[] allowedTypes;
+
+    /**
+     * 消息参数类型白名单
+     */
+    @Bean
+    public ParameterTypeFilter parameterTypeFilter(ObjectProvider<SqlSessionFactory> sqlSessionFactories) {
+        return new ParameterTypeFilter(sqlSessionFactories, Arrays.stream(allowedTypes)
+                .map(String::trim)
+                .filter(type -> !type.isEmpty())
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * JDK序列化编解码器
+     */
+    @Bean
+    public JdkMessageCodec jdkMessageCodec(ParameterTypeFilter parameterTypeFilter) {
+        return new JdkMessageCodec(parameterTypeFilter);
+    }
+
+    /**
+     * 紧凑二进制编解码器
+     */
+    @Bean
+    public BinaryMessageCodec binaryMessageCodec(MappedStatementRouteRegistry routeRegistry,
+                                                 ParameterTypeFilter parameterTypeFilter) {
+        return new BinaryMessageCodec(routeRegistry, parameterTypeFilter);
+    }
+
+    /**
+     * 当前使用的编解码器，用于消息队列、本地日志和发件箱
+     */
+    @Bean
+    @Primary
+    public MessageCodec messageCodec(JdkMessageCodec jdkMessageCodec, BinaryMessageCodec binaryMessageCodec) {
+        log.info("消息编码方式: {}", codecType);
+        return codecType == CodecType.BINARY ? binaryMessageCodec : jdkMessageCodec;
+    }
+}
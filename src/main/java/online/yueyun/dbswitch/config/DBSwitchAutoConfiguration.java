@@ -19,7 +19,7 @@ import org.springframework.context.annotation.Import;
 @Configuration
 @ConditionalOnProperty(name = "dbswitch.enabled", havingValue = "true", matchIfMissing = true)
 @AutoConfigureAfter(MybatisAutoConfiguration.class)
-@Import({DynamicDataSourceConfig.class, MQConfig.class, LoggingAutoConfiguration.class})
+@Import({DynamicDataSourceConfig.class, MQConfig.class, CodecConfig.class, MetricsConfig.class, LoggingAutoConfiguration.class})
 @ComponentScan(basePackages = "online.yueyun.dbswitch")
 public class DBSwitchAutoConfiguration {
 
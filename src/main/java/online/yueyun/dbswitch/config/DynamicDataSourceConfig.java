@@ -1,19 +1,37 @@
 package online.yueyun.dbswitch.config;
 
 import lombok.extern.slf4j.Slf4j;
+import com.zaxxer.hikari.HikariDataSource;
 import online.yueyun.dbswitch.datasource.DynamicDataSource;
 import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+import online.yueyun.dbswitch.datasource.LeastLatencyLoadBalancer;
+import online.yueyun.dbswitch.datasource.ReplicaDataSource;
+import online.yueyun.dbswitch.datasource.ReplicaGroup;
+import online.yueyun.dbswitch.datasource.ReplicaHealthChecker;
+import online.yueyun.dbswitch.datasource.ReplicaLoadBalancer;
+import online.yueyun.dbswitch.datasource.WeightedRoundRobinLoadBalancer;
+import online.yueyun.dbswitch.enums.BalancerType;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 动态数据源配置
@@ -23,6 +41,23 @@ import java.util.Map;
 @ConditionalOnProperty(name = "dbswitch.enabled", havingValue = "true", matchIfMissing = true)
 public class DynamicDataSourceConfig {
 
+    /**
+     * 只读副本配置前缀，其下按角色（master、slave）和副本名称配置连接池
+     */
+    private static final String REPLICAS_PREFIX = "spring.datasource.replicas";
+
+    @Value("${dbswitch.replica.balancer:ROUND_ROBIN}")
+    private BalancerType balancerType;
+
+    @Value("${dbswitch.replica.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${dbswitch.replica.health-check-interval-ms:5000}")
+    private long healthCheckIntervalMs;
+
+    @Value("${dbswitch.replica.validation-timeout-seconds:2}")
+    private int validationTimeoutSeconds;
+
     /**
      * 主数据源
      */
@@ -50,7 +85,9 @@ public class DynamicDataSourceConfig {
     @Primary
     public DataSource dynamicDataSource(
             @Qualifier("masterDataSource") DataSource masterDataSource,
-            @Qualifier("slaveDataSource") DataSource slaveDataSource) {
+            @Qualifier("slaveDataSource") DataSource slaveDataSource,
+            Environment environment,
+            ObjectProvider<ReplicaLoadBalancer> loadBalancer) {
         log.info("初始化动态数据源");
         
         DynamicDataSource dynamicDataSource = new DynamicDataSource();
@@ -63,7 +100,69 @@ public class DynamicDataSourceConfig {
         // 设置默认数据源和所有数据源
         dynamicDataSource.setDefaultTargetDataSource(masterDataSource);
         dynamicDataSource.setTargetDataSources(dataSourceMap);
+
+        // 配置各角色的只读副本
+        Map<DataSourceType, ReplicaGroup> replicaGroups = new EnumMap<>(DataSourceType.class);
+        ReplicaLoadBalancer balancer = loadBalancer.getIfAvailable(this::createLoadBalancer);
+        Binder binder = Binder.get(environment);
+        for (DataSourceType type : DataSourceType.values()) {
+            List<ReplicaDataSource> replicas = createReplicas(binder, type);
+            if (!replicas.isEmpty()) {
+                replicaGroups.put(type, new ReplicaGroup(replicas, balancer));
+                log.info("初始化{}只读副本，数量: {}, 负载均衡器: {}", type, replicas.size(), balancer.getClass().getSimpleName());
+            }
+        }
+        dynamicDataSource.setReplicaGroups(replicaGroups);
         
         return dynamicDataSource;
     }
+
+    /**
+     * 只读副本健康检查，未配置副本时不启用
+     */
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public ReplicaHealthChecker replicaHealthChecker(@Qualifier("dynamicDataSource") DataSource dynamicDataSource) {
+        Map<DataSourceType, ReplicaGroup> replicaGroups = ((DynamicDataSource) dynamicDataSource).getReplicaGroups();
+        if (replicaGroups.isEmpty()) {
+            return null;
+        }
+        return new ReplicaHealthChecker(replicaGroups.values(), healthCheckIntervalMs, validationTimeoutSeconds);
+    }
+
+    /**
+     * 按配置创建内置负载均衡器
+     */
+    private ReplicaLoadBalancer createLoadBalancer() {
+        return balancerType == BalancerType.LEAST_LATENCY
+                ? new LeastLatencyLoadBalancer()
+                : new WeightedRoundRobinLoadBalancer();
+    }
+
+    /**
+     * 创建一个角色下的全部只读副本，副本的连接池属性与主从数据源相同，另可配置weight权重
+     */
+    private List<ReplicaDataSource> createReplicas(Binder binder, DataSourceType type) {
+        String rolePrefix = REPLICAS_PREFIX + "." + type.name().toLowerCase();
+        Map<String, String> properties = binder.bind(rolePrefix, Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of());
+        Set<String> names = new LinkedHashSet<>();
+        for (String key : properties.keySet()) {
+            int separator = key.indexOf('.');
+            if (separator > 0) {
+                names.add(key.substring(0, separator));
+            }
+        }
+
+        List<ReplicaDataSource> replicas = new ArrayList<>(names.size());
+        for (String name : names) {
+            String prefix = rolePrefix + "." + name;
+            HikariDataSource pool = binder.bind(prefix, Bindable.ofInstance(new HikariDataSource())).get();
+            if (pool.getPoolName() == null) {
+                pool.setPoolName("dbswitch-" + type.name().toLowerCase() + "-" + name);
+            }
+            int weight = binder.bind(prefix + ".weight", Integer.class).orElse(1);
+            replicas.add(new ReplicaDataSource(name, pool, weight, failureThreshold));
+        }
+        return replicas;
+    }
 } 
\ No newline at end of file
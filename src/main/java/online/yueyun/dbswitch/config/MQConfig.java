@@ -1,21 +1,37 @@
 package online.yueyun.dbswitch.config;
 
 import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
 import online.yueyun.dbswitch.enums.MQType;
+import online.yueyun.dbswitch.enums.OverflowPolicy;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
+import online.yueyun.dbswitch.mq.consumer.RoutingKeyExtractor;
+import online.yueyun.dbswitch.mq.producer.MQProducer;
+import online.yueyun.dbswitch.mq.producer.MQProducerSelector;
+import online.yueyun.dbswitch.mq.producer.impl.AsyncBatchingMQProducer;
+import online.yueyun.dbswitch.mq.producer.impl.CoalescingMQProducer;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.CustomExchange;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 消息队列配置
@@ -46,6 +62,36 @@ public class MQConfig {
     @Value("${dbswitch.rabbitmq.delayRoutingKey:dbswitch-delay-routingkey}")
     private String delayRoutingKey;
 
+    @Value("${dbswitch.producer.async.capacity:65536}")
+    private int asyncCapacity;
+
+    @Value("${dbswitch.producer.async.batch-size:128}")
+    private int asyncBatchSize;
+
+    @Value("${dbswitch.producer.async.linger-ms:5}")
+    private long asyncLingerMs;
+
+    @Value("${dbswitch.producer.async.overflow-policy:CALLER_RUNS}")
+    private OverflowPolicy asyncOverflowPolicy;
+
+    @Value("${dbswitch.producer.async.flusher-threads:1}")
+    private int asyncFlusherThreads;
+
+    @Value("${dbswitch.coalesce.window-ms:50}")
+    private long coalesceWindowMs;
+
+    @Value("${dbswitch.coalesce.full-row-updates:}")
+    private String[] coalesceFullRowUpdates;
+
+    @Value("${dbswitch.coalesce.inserts:}")
+    private String[] coalesceInserts;
+
+    @Value("${dbswitch.consumer.batch.size:64}")
+    private int consumerBatchSize;
+
+    @Value("${dbswitch.consumer.batch.receive-timeout-ms:100}")
+    private long consumerBatchReceiveTimeout;
+
     /**
      * 获取当前消息队列类型
      * 优先级：配置属性 > RocketMQ类存在 > RabbitMQ类存在
@@ -103,6 +149,51 @@ public class MQConfig {
         return null;
     }
 
+    /**
+     * 异步批量发送生产者
+     * 开启后双写消息先写入本地环形缓冲区，由后台线程批量发送
+     */
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "dbswitch.producer.async.enabled", havingValue = "true")
+    public AsyncBatchingMQProducer asyncMQProducer(MQProducerSelector mqProducerSelector, MessageCodec messageCodec,
+                                                   DBSwitchMetrics metrics) {
+        MQProducer delegate = mqProducerSelector.getDualWriteProducer();
+        if (delegate == null) {
+            log.warn("未找到消息队列生产者，异步批量发送不可用");
+            return null;
+        }
+        AsyncBatchingMQProducer producer = new AsyncBatchingMQProducer(delegate, messageCodec, asyncCapacity,
+                asyncBatchSize, asyncLingerMs, asyncOverflowPolicy, asyncFlusherThreads);
+        metrics.bindAsyncProducer(producer);
+        return producer;
+    }
+
+    /**
+     * 热点行写入合并生产者
+     * 开启后配置的语句在发送前按行合并，合并后的消息交给异步批量发送生产者或双写生产者
+     */
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "dbswitch.coalesce.enabled", havingValue = "true")
+    public CoalescingMQProducer coalescingMQProducer(MQProducerSelector mqProducerSelector,
+                                                     Optional<AsyncBatchingMQProducer> asyncMQProducer,
+                                                     MessageCodec messageCodec,
+                                                     RoutingKeyExtractor routingKeyExtractor) {
+        MQProducer delegate = asyncMQProducer.isPresent() ? asyncMQProducer.get() : mqProducerSelector.getDualWriteProducer();
+        if (delegate == null) {
+            log.warn("未找到消息队列生产者，热点行写入合并不可用");
+            return null;
+        }
+        return new CoalescingMQProducer(delegate, messageCodec, routingKeyExtractor,
+                toSet(coalesceFullRowUpdates), toSet(coalesceInserts), coalesceWindowMs);
+    }
+
+    private Set<String> toSet(String[] values) {
+        return Arrays.stream(values)
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
     /**
      * RabbitMQ交换机
      */
@@ -130,6 +221,30 @@ public class MQConfig {
         return BindingBuilder.bind(queue()).to(directExchange()).with(routingKey);
     }
 
+    /**
+     * RabbitMQ批量消费监听容器工厂
+     * 在Spring Boot默认配置的基础上开启批量消费，凑满一批或等待超时后交给监听方法
+     */
+    @Bean
+    @ConditionalOnClass(name = "org.springframework.amqp.rabbit.core.RabbitTemplate")
+    public SimpleRabbitListenerContainerFactory dbswitchBatchContainerFactory(
+            ConnectionFactory connectionFactory,
+            ObjectProvider<SimpleRabbitListenerContainerFactoryConfigurer> configurer) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        SimpleRabbitListenerContainerFactoryConfigurer factoryConfigurer = configurer.getIfAvailable();
+        if (factoryConfigurer != null) {
+            factoryConfigurer.configure(factory, connectionFactory);
+        } else {
+            factory.setConnectionFactory(connectionFactory);
+        }
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(consumerBatchSize);
+        factory.setPrefetchCount(Math.max(consumerBatchSize, 250));
+        factory.setReceiveTimeout(consumerBatchReceiveTimeout);
+        return factory;
+    }
+
     /**
      * RabbitMQ延迟交换机
      */
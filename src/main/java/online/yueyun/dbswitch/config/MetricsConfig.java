@@ -0,0 +1,54 @@
+package online.yueyun.dbswitch.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
+import online.yueyun.dbswitch.metrics.MicrometerDBSwitchMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 指标配置
+ * 引入Micrometer且存在MeterRegistry时记录双写链路指标，否则使用空实现
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "dbswitch.enabled", havingValue = "true", matchIfMissing = true)
+public class MetricsConfig {
+
+    /**
+     * 未启用Micrometer指标时的空实现
+     */
+    @Bean
+    @ConditionalOnMissingBean(DBSwitchMetrics.class)
+    public DBSwitchMetrics dbSwitchMetrics() {
+        return DBSwitchMetrics.NOOP;
+    }
+
+    /**
+     * Micrometer指标配置
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnProperty(name = "dbswitch.metrics.enabled", havingValue = "true", matchIfMissing = true)
+    static class MicrometerMetricsConfig {
+
+        @Value("${dbswitch.metrics.max-statements:500}")
+        private int maxStatements;
+
+        @Bean
+        public DBSwitchMetrics micrometerDBSwitchMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            if (registry == null) {
+                return DBSwitchMetrics.NOOP;
+            }
+            log.info("双写链路指标已启用，单独记录的最大语句数: {}", maxStatements);
+            return new MicrometerDBSwitchMetrics(registry, maxStatements);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package online.yueyun.dbswitch.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+import online.yueyun.dbswitch.enums.WriteMode;
+import online.yueyun.dbswitch.service.WriteModeListener;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 连接池预热
+ * 启动完成前（应用就绪之前）把主从数据源及其只读副本的连接池填充到最小空闲连接数，
+ * 在每个连接上执行校验并预编译配置的高频语句；写入模式切换到新的目标库之前，先重新预热该库。
+ * 切换时的预热在单独的线程中执行，最多等待switch-timeout-ms，超时后切换继续、预热在后台完成，
+ * 不会长时间阻塞写入模式通知和校对线程
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class DataSourceWarmer implements SmartInitializingSingleton, WriteModeListener {
+
+    @Autowired
+    @Qualifier("dynamicDataSource")
+    private DataSource dynamicDataSource;
+
+    @Autowired
+    private ObjectProvider<SqlSessionFactory> sqlSessionFactories;
+
+    /**
+     * 校验语句，为空时使用JDBC驱动的isValid校验
+     */
+    @Value("${dbswitch.warmup.validation-query:}")
+    private String validationQuery;
+
+    @Value("${dbswitch.warmup.validation-timeout-seconds:2}")
+    private int validationTimeoutSeconds;
+
+    /**
+     * 需要预编译的语句ID（Mapper全类名.方法名），只支持不依赖参数的静态SQL
+     */
+    @Value("${dbswitch.warmup.statements:}")
+    private String[] statementIds;
+
+    /**
+     * 预热失败时是否中止启动
+     */
+    @Value("${dbswitch.warmup.fail-on-error:false}")
+    private boolean failOnError;
+
+    /**
+     * 写入模式切换时等待预热的最长时间
+     */
+    @Value("${dbswitch.warmup.switch-timeout-ms:2000}")
+    private long switchTimeoutMs;
+
+    private List<String> statements = List.of();
+
+    private final ExecutorService switchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "dbswitch-warmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        statements = resolveStatements();
+        long start = System.currentTimeMillis();
+        for (DataSourceType type : DataSourceType.values()) {
+            if (!warm(type) && failOnError) {
+                throw new IllegalStateException("数据源预热失败: " + type);
+            }
+        }
+        log.info("连接池预热完成，耗时: {}ms, 预编译语句数: {}", System.currentTimeMillis() - start, statements.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        switchExecutor.shutdownNow();
+    }
+
+    /**
+     * 写入模式切换到新的目标库之前重新预热该库，最多等待switch-timeout-ms，预热失败或超时不阻止切换
+     */
+    @Override
+    public void beforeWriteModeChange(WriteMode previous, WriteMode current) {
+        Set<DataSourceType> targets = targetsOf(current);
+        if (previous != null) {
+            targets.removeAll(targetsOf(previous));
+        }
+        if (targets.isEmpty()) {
+            return;
+        }
+        log.info("写入模式由 {} 切换为 {}，预热目标库: {}", previous, current, targets);
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> targets.forEach(this::warm), switchExecutor);
+        try {
+            future.get(switchTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("目标库预热超过 {}ms，写入模式继续切换，预热在后台完成: {}", switchTimeoutMs, targets);
+        } catch (ExecutionException e) {
+            log.warn("目标库预热失败: {}", targets, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 预热一个角色的数据源及其只读副本
+     *
+     * @param type 数据源类型
+     * @return 是否全部成功
+     */
+    public boolean warm(DataSourceType type) {
+        if (!(dynamicDataSource instanceof DynamicDataSource)) {
+            return true;
+        }
+        DynamicDataSource routing = (DynamicDataSource) dynamicDataSource;
+        boolean success = true;
+        Object target = routing.getResolvedDataSources().get(type);
+        if (target instanceof DataSource) {
+            success = warmPool(type.name(), (DataSource) target);
+        }
+        ReplicaGroup replicaGroup = routing.getReplicaGroups().get(type);
+        if (replicaGroup != null) {
+            for (ReplicaDataSource replica : replicaGroup.getReplicas()) {
+                success &= warmPool(type + "/" + replica.getName(), replica.getTargetDataSource());
+            }
+        }
+        return success;
+    }
+
+    /**
+     * 同时借出最小空闲数个连接使连接池建立足够的连接，逐个校验并预编译语句后归还
+     * 未配置最小空闲数时Hikari在连接池启动时才按最大连接数确定，因此先借出一个连接再读取
+     */
+    private boolean warmPool(String name, DataSource dataSource) {
+        List<Connection> connections = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        int count = 1;
+        try {
+            for (int i = 0; i < count; i++) {
+                Connection connection = dataSource.getConnection();
+                connections.add(connection);
+                if (i == 0 && dataSource instanceof HikariDataSource hikariDataSource) {
+                    count = Math.max(1, hikariDataSource.getMinimumIdle());
+                }
+                validate(connection);
+                prepare(connection);
+            }
+            log.info("数据源 {} 预热完成，连接数: {}, 耗时: {}ms", name, count, System.currentTimeMillis() - start);
+            return true;
+        } catch (SQLException e) {
+            log.warn("数据源 {} 预热失败，已预热连接数: {}", name, connections.size(), e);
+            return false;
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.debug("归还预热连接失败", e);
+                }
+            }
+        }
+    }
+
+    private void validate(Connection connection) throws SQLException {
+        if (validationQuery == null || validationQuery.isEmpty()) {
+            if (!connection.isValid(validationTimeoutSeconds)) {
+                throw new SQLException("连接校验失败");
+            }
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(validationTimeoutSeconds);
+            statement.execute(validationQuery);
+        }
+    }
+
+    /**
+     * 预编译语句，开启了预编译缓存的驱动（如MySQL的cachePrepStmts）会在连接上缓存编译结果
+     */
+    private void prepare(Connection connection) {
+        for (String sql : statements) {
+            try {
+                connection.prepareStatement(sql).close();
+                log.trace("预编译语句: {}", sql);
+            } catch (SQLException e) {
+                log.debug("预编译语句失败: {}", sql, e);
+            }
+        }
+    }
+
+    /**
+     * 解析需要预编译的语句，动态SQL无法在没有参数时生成，跳过
+     */
+    private List<String> resolveStatements() {
+        if (statementIds == null || statementIds.length == 0) {
+            return List.of();
+        }
+        Set<String> sqls = new LinkedHashSet<>();
+        for (String statementId : statementIds) {
+            String id = statementId.trim();
+            if (id.isEmpty()) {
+                continue;
+            }
+            String sql = null;
+            for (SqlSessionFactory factory : sqlSessionFactories) {
+                Configuration configuration = factory.getConfiguration();
+                if (configuration.hasStatement(id)) {
+                    try {
+                        sql = configuration.getMappedStatement(id).getBoundSql(null).getSql();
+                    } catch (RuntimeException e) {
+                        log.warn("语句 {} 不是静态SQL，跳过预编译", id);
+                    }
+                    break;
+                }
+            }
+            if (sql != null) {
+                sqls.add(sql);
+            } else {
+                log.debug("未找到可预编译的语句: {}", id);
+            }
+        }
+        return new ArrayList<>(sqls);
+    }
+
+    /**
+     * 写入模式下承载流量的库
+     */
+    private static Set<DataSourceType> targetsOf(WriteMode writeMode) {
+        switch (writeMode) {
+            case MASTER_ONLY:
+                return EnumSet.of(DataSourceType.MASTER);
+            case SLAVE_ONLY:
+                return EnumSet.of(DataSourceType.SLAVE);
+            default:
+                return EnumSet.allOf(DataSourceType.class);
+        }
+    }
+}
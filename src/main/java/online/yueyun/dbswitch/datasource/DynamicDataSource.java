@@ -1,19 +1,37 @@
 package online.yueyun.dbswitch.datasource;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * 动态数据源
+ * 只读操作在所选角色配置了只读副本时由负载均衡器选择副本，副本获取连接失败时回退到该角色的数据源
  */
 @Slf4j
-public class DynamicDataSource extends AbstractRoutingDataSource {
+public class DynamicDataSource extends AbstractRoutingDataSource implements DisposableBean {
 
     /**
      * 数据源类型线程本地变量
      */
     private static final ThreadLocal<DataSourceType> DATA_SOURCE_TYPE = new ThreadLocal<>();
 
+    /**
+     * 当前操作是否只读线程本地变量
+     */
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+
+    /**
+     * 各角色的只读副本组
+     */
+    private Map<DataSourceType, ReplicaGroup> replicaGroups = Collections.emptyMap();
+
     /**
      * 数据源类型枚举
      */
@@ -39,6 +57,19 @@ public class DynamicDataSource extends AbstractRoutingDataSource {
         DATA_SOURCE_TYPE.set(dataSourceType);
     }
 
+    /**
+     * 设置数据源，并标记当前操作是否只读
+     *
+     * @param dataSourceType 数据源类型
+     * @param readOnly 是否只读，只读操作可路由到只读副本
+     */
+    public static void setDataSource(DataSourceType dataSourceType, boolean readOnly) {
+        setDataSource(dataSourceType);
+        if (readOnly) {
+            READ_ONLY.set(Boolean.TRUE);
+        }
+    }
+
     /**
      * 获取当前数据源
      * 
@@ -48,11 +79,86 @@ public class DynamicDataSource extends AbstractRoutingDataSource {
         return DATA_SOURCE_TYPE.get() == null ? DataSourceType.MASTER : DATA_SOURCE_TYPE.get();
     }
 
+    /**
+     * 当前线程是否已指定数据源
+     *
+     * @return 是否已指定
+     */
+    public static boolean isDataSourceSet() {
+        return DATA_SOURCE_TYPE.get() != null;
+    }
+
     /**
      * 清除数据源
      */
     public static void clearDataSource() {
         DATA_SOURCE_TYPE.remove();
+        READ_ONLY.remove();
+    }
+
+    /**
+     * 设置各角色的只读副本组
+     *
+     * @param replicaGroups 只读副本组
+     */
+    public void setReplicaGroups(Map<DataSourceType, ReplicaGroup> replicaGroups) {
+        this.replicaGroups = replicaGroups;
+    }
+
+    /**
+     * 各角色的只读副本组
+     */
+    public Map<DataSourceType, ReplicaGroup> getReplicaGroups() {
+        return replicaGroups;
+    }
+
+    /**
+     * 关闭只读副本的连接池
+     */
+    @Override
+    public void destroy() {
+        for (ReplicaGroup group : replicaGroups.values()) {
+            for (ReplicaDataSource replica : group.getReplicas()) {
+                if (replica.getTargetDataSource() instanceof AutoCloseable closeable) {
+                    try {
+                        closeable.close();
+                    } catch (Exception e) {
+                        log.warn("关闭只读副本连接池失败: {}", replica.getName(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        ReplicaDataSource replica = chooseReplica();
+        if (replica != null) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                log.warn("只读副本获取连接失败，回退到{}: {}", getDataSource(), replica.getName(), e);
+            }
+        }
+        return determineTargetDataSource().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        ReplicaDataSource replica = chooseReplica();
+        DataSource target = replica != null ? replica : determineTargetDataSource();
+        return target.getConnection(username, password);
+    }
+
+    /**
+     * 只读操作且当前角色配置了副本时选择一个健康副本
+     */
+    private ReplicaDataSource chooseReplica() {
+        if (READ_ONLY.get() == null || replicaGroups.isEmpty()) {
+            return null;
+        }
+        ReplicaGroup group = replicaGroups.get(getDataSource());
+        return group == null ? null : group.choose();
     }
 
     @Override
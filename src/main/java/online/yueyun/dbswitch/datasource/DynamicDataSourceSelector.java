@@ -5,8 +5,12 @@ import online.yueyun.dbswitch.enums.OperationType;
 import online.yueyun.dbswitch.enums.WriteMode;
 import online.yueyun.dbswitch.service.WriteModeService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * 动态数据源选择器
  */
@@ -17,6 +21,19 @@ public class DynamicDataSourceSelector {
     @Autowired
     private WriteModeService writeModeService;
 
+    @Value("${dbswitch.read.secondary:false}")
+    private boolean readSecondary;
+
+    /**
+     * 获取当前写入模式快照
+     * 同一次拦截调用内应只获取一次，并将快照传入其余选择方法，避免一条语句看到两种不同的模式
+     *
+     * @return 当前写入模式
+     */
+    public WriteMode currentWriteMode() {
+        return writeModeService.getCurrentWriteMode();
+    }
+
     /**
      * 为各类操作选择数据源
      *
@@ -24,8 +41,17 @@ public class DynamicDataSourceSelector {
      * @return 是否使用主数据源
      */
     public boolean useMasterDataSource(OperationType operationType) {
-        // 获取当前写入模式
-        WriteMode currentMode = writeModeService.getCurrentWriteMode();
+        return useMasterDataSource(currentWriteMode(), operationType);
+    }
+
+    /**
+     * 按给定的写入模式快照为各类操作选择数据源
+     *
+     * @param currentMode 写入模式快照
+     * @param operationType 操作类型
+     * @return 是否使用主数据源
+     */
+    public boolean useMasterDataSource(WriteMode currentMode, OperationType operationType) {
         log.debug("当前写入模式: {}, 操作类型: {}", currentMode, operationType);
 
         // 根据当前模式选择数据源
@@ -48,6 +74,71 @@ public class DynamicDataSourceSelector {
         }
     }
     
+    /**
+     * 按给定的写入模式快照为查询选择数据源
+     * 双写模式下开启从第二个库读取时，查询使用异步写入的第二个库，否则与写操作使用同一个库
+     *
+     * @param currentMode 写入模式快照
+     * @return 是否使用主数据源
+     */
+    public boolean useMasterForRead(WriteMode currentMode) {
+        if (readSecondary && isDualWriteMode(currentMode)) {
+            return secondWriteInMaster(currentMode);
+        }
+        return useMasterDataSource(currentMode, OperationType.SELECT);
+    }
+
+    /**
+     * 按给定的写入模式快照为指定语句的查询选择数据源
+     * 双写模式下两个库都在写入，设置了读权重时按百分比随机把查询分配到迁移目标库（异步写入的第二个库），
+     * 用于切换前逐步把读流量移到新库预热；
+     * 权重依次按语句ID、Mapper命名空间、全局查找，都未设置时与{@link #useMasterForRead(WriteMode)}相同
+     *
+     * @param currentMode 写入模式快照
+     * @param statementId MappedStatement的ID
+     * @return 是否使用主数据源
+     */
+    public boolean useMasterForRead(WriteMode currentMode, String statementId) {
+        if (isDualWriteMode(currentMode)) {
+            Integer targetPercent = findReadWeight(writeModeService.getReadWeights(), statementId);
+            if (targetPercent != null) {
+                boolean useTarget = targetPercent >= 100
+                        || targetPercent > 0 && ThreadLocalRandom.current().nextInt(100) < targetPercent;
+                return useTarget == secondWriteInMaster(currentMode);
+            }
+        }
+        return useMasterForRead(currentMode);
+    }
+
+    /**
+     * 查找语句适用的读权重
+     *
+     * @return 路由到迁移目标库的百分比，未设置时为null
+     */
+    private Integer findReadWeight(Map<String, Integer> readWeights, String statementId) {
+        if (readWeights.isEmpty()) {
+            return null;
+        }
+        Integer targetPercent = readWeights.get(statementId);
+        if (targetPercent == null) {
+            int index = statementId.lastIndexOf('.');
+            if (index > 0) {
+                targetPercent = readWeights.get(statementId.substring(0, index));
+            }
+        }
+        return targetPercent != null ? targetPercent : readWeights.get(WriteModeService.GLOBAL_READ_WEIGHT);
+    }
+
+    /**
+     * 写入模式是否为双写模式
+     *
+     * @param currentMode 写入模式快照
+     * @return 是否双写
+     */
+    public boolean isDualWriteMode(WriteMode currentMode) {
+        return currentMode == WriteMode.MASTER_SLAVE || currentMode == WriteMode.SLAVE_MASTER;
+    }
+
     /**
      * 判断是否需要双写
      *
@@ -55,14 +146,24 @@ public class DynamicDataSourceSelector {
      * @return 是否需要双写
      */
     public boolean needDualWrite(OperationType operationType) {
+        return needDualWrite(currentWriteMode(), operationType);
+    }
+
+    /**
+     * 按给定的写入模式快照判断是否需要双写
+     *
+     * @param currentMode 写入模式快照
+     * @param operationType 操作类型
+     * @return 是否需要双写
+     */
+    public boolean needDualWrite(WriteMode currentMode, OperationType operationType) {
         // 只有写操作才可能需要双写
         if (operationType == OperationType.SELECT) {
             return false;
         }
 
         // 根据当前写入模式决定是否需要双写
-        WriteMode currentMode = writeModeService.getCurrentWriteMode();
-        return currentMode == WriteMode.MASTER_SLAVE || currentMode == WriteMode.SLAVE_MASTER;
+        return isDualWriteMode(currentMode);
     }
 
     /**
@@ -71,8 +172,16 @@ public class DynamicDataSourceSelector {
      * @return 是否使用主数据源作为第二个数据源
      */
     public boolean secondWriteInMaster() {
-        WriteMode currentMode = writeModeService.getCurrentWriteMode();
-        
+        return secondWriteInMaster(currentWriteMode());
+    }
+
+    /**
+     * 按给定的写入模式快照获取第二个数据源（用于双写）
+     *
+     * @param currentMode 写入模式快照
+     * @return 是否使用主数据源作为第二个数据源
+     */
+    public boolean secondWriteInMaster(WriteMode currentMode) {
         // 在双写场景中判断第二个数据源
         switch (currentMode) {
             case MASTER_SLAVE:
@@ -83,7 +192,7 @@ public class DynamicDataSourceSelector {
                 return true;
             default:
                 log.warn("非双写模式下调用secondWriteInMaster(): {}", currentMode);
-                return !useMasterDataSource(null); // 返回与第一个数据源相反的选择
+                return !useMasterDataSource(currentMode, null); // 返回与第一个数据源相反的选择
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,33 @@
+package online.yueyun.dbswitch.datasource;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 最小延迟负载均衡器
+ * 随机取两个副本，选择（未完成请求数 + 1）× EWMA延迟 / 权重 较小的一个，避免所有请求同时涌向当前最快的副本
+ */
+public class LeastLatencyLoadBalancer implements ReplicaLoadBalancer {
+
+    @Override
+    public ReplicaDataSource choose(List<ReplicaDataSource> replicas) {
+        int size = replicas.size();
+        if (size == 1) {
+            return replicas.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        ReplicaDataSource a = replicas.get(first);
+        ReplicaDataSource b = replicas.get(second);
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    private double cost(ReplicaDataSource replica) {
+        // 尚无延迟样本的副本按1纳秒计算，使其优先获得流量
+        return (replica.getOutstanding() + 1) * Math.max(1, replica.getEwmaNanos()) / replica.getWeight();
+    }
+}
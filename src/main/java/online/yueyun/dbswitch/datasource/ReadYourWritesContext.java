@@ -0,0 +1,97 @@
+package online.yueyun.dbswitch.datasource;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 读己之写上下文
+ * 记录当前请求或会话写过的表及最后写入时间（即双写消息的创建时间）；查询涉及的表在第二个库的已执行水位越过写入时间之前，
+ * 查询固定到先写的库。上下文由过滤器或调用方显式开启，未开启时不做任何记录
+ */
+public final class ReadYourWritesContext {
+
+    private static final ThreadLocal<Map<String, Long>> WRITES = new ThreadLocal<>();
+
+    private ReadYourWritesContext() {
+    }
+
+    /**
+     * 开启空的上下文
+     */
+    public static void begin() {
+        WRITES.set(new HashMap<>(4));
+    }
+
+    /**
+     * 以会话中保存的写入记录开启上下文
+     *
+     * @param writes 表名 -> 最后写入时间
+     */
+    public static void begin(Map<String, Long> writes) {
+        WRITES.set(writes == null ? new HashMap<>(4) : new HashMap<>(writes));
+    }
+
+    /**
+     * 结束上下文
+     *
+     * @return 上下文中的写入记录，用于保存到会话
+     */
+    public static Map<String, Long> end() {
+        Map<String, Long> writes = WRITES.get();
+        WRITES.remove();
+        return writes;
+    }
+
+    /**
+     * 当前线程是否已开启上下文
+     */
+    public static boolean isActive() {
+        return WRITES.get() != null;
+    }
+
+    /**
+     * 记录写入的表
+     *
+     * @param tables 表名
+     * @param writeTime 写入时间（毫秒）
+     */
+    public static void recordWrite(Set<String> tables, long writeTime) {
+        Map<String, Long> writes = WRITES.get();
+        if (writes == null) {
+            return;
+        }
+        for (String table : tables) {
+            writes.merge(table, writeTime, Math::max);
+        }
+    }
+
+    /**
+     * 查询是否必须读先写的库，顺带移除已被水位越过的写入记录
+     *
+     * @param tables 查询涉及的表
+     * @param watermark 第二个库的已执行水位
+     * @param minPinMillis 写入后至少固定的时间，覆盖消息在消息队列中传输的时间
+     * @return 是否必须读先写的库
+     */
+    public static boolean mustReadFirst(Set<String> tables, long watermark, long minPinMillis) {
+        Map<String, Long> writes = WRITES.get();
+        if (writes == null || writes.isEmpty()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        boolean pinned = false;
+        Iterator<Map.Entry<String, Long>> iterator = writes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            long writeTime = entry.getValue();
+            if (writeTime < watermark && now - writeTime >= minPinMillis) {
+                iterator.remove();
+            } else if (!pinned && tables.contains(entry.getKey())) {
+                pinned = true;
+            }
+        }
+        return pinned;
+    }
+}
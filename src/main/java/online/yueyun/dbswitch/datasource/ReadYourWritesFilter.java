@@ -0,0 +1,66 @@
+package online.yueyun.dbswitch.datasource;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import online.yueyun.dbswitch.enums.ConsistencyScope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 读己之写过滤器
+ * 每个请求开启读己之写上下文；会话范围时从会话中恢复上次请求的写入记录，请求结束后写回仍未过期的记录
+ */
+@Component
+@ConditionalOnClass(name = "jakarta.servlet.Filter")
+@ConditionalOnProperty(name = "dbswitch.read-your-writes.enabled", havingValue = "true")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    /**
+     * 会话中保存写入记录的属性名
+     */
+    private static final String SESSION_ATTRIBUTE = ReadYourWritesFilter.class.getName() + ".WRITES";
+
+    @Value("${dbswitch.read-your-writes.scope:REQUEST}")
+    private ConsistencyScope scope;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        HttpSession session = scope == ConsistencyScope.SESSION ? request.getSession(false) : null;
+        ReadYourWritesContext.begin(session == null ? null : (Map<String, Long>) session.getAttribute(SESSION_ATTRIBUTE));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Map<String, Long> writes = ReadYourWritesContext.end();
+            if (scope == ConsistencyScope.SESSION) {
+                saveToSession(request, writes);
+            }
+        }
+    }
+
+    private void saveToSession(HttpServletRequest request, Map<String, Long> writes) {
+        if (writes == null || writes.isEmpty()) {
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                session.removeAttribute(SESSION_ATTRIBUTE);
+            }
+            return;
+        }
+        try {
+            request.getSession(true).setAttribute(SESSION_ATTRIBUTE, new HashMap<>(writes));
+        } catch (IllegalStateException e) {
+            // 响应已提交时无法创建会话，仅在本次请求内生效
+        }
+    }
+}
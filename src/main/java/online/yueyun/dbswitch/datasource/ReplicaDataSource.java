@@ -0,0 +1,153 @@
+package online.yueyun.dbswitch.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 只读副本数据源
+ * 统计借出未归还的连接数，并按连接从借出到归还的耗时维护EWMA延迟；连续获取连接失败达到阈值时标记为不健康
+ */
+@Slf4j
+public class ReplicaDataSource extends DelegatingDataSource {
+
+    /**
+     * EWMA平滑系数
+     */
+    private static final double EWMA_ALPHA = 0.3;
+
+    private final String name;
+
+    private final int weight;
+
+    private final int failureThreshold;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile double ewmaNanos;
+
+    private volatile boolean healthy = true;
+
+    /**
+     * 平滑加权轮询的当前权重，由负载均衡器加锁访问
+     */
+    int currentWeight;
+
+    private Runnable healthListener = () -> { };
+
+    /**
+     * @param name 副本名称
+     * @param dataSource 副本连接池
+     * @param weight 权重
+     * @param failureThreshold 连续失败多少次后摘除
+     */
+    public ReplicaDataSource(String name, DataSource dataSource, int weight, int failureThreshold) {
+        super(dataSource);
+        this.name = name;
+        this.weight = Math.max(1, weight);
+        this.failureThreshold = Math.max(1, failureThreshold);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = super.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            outstanding.decrementAndGet();
+            markFailure();
+            throw e;
+        }
+        markSuccess();
+        return wrap(connection, start);
+    }
+
+    /**
+     * 包装连接，连接关闭时归还计数并更新延迟
+     */
+    private Connection wrap(Connection connection, long start) {
+        boolean[] closed = new boolean[1];
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && !closed[0]) {
+                        closed[0] = true;
+                        outstanding.decrementAndGet();
+                        double sample = System.nanoTime() - start;
+                        double ewma = ewmaNanos;
+                        ewmaNanos = ewma == 0 ? sample : ewma + EWMA_ALPHA * (sample - ewma);
+                    } else if ("unwrap".equals(method.getName()) && ((Class<?>) args[0]).isInstance(connection)) {
+                        return connection;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    /**
+     * 记录一次失败，连续失败达到阈值时摘除
+     */
+    public void markFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold && healthy) {
+            healthy = false;
+            log.warn("只读副本连续{}次失败，已摘除: {}", failureThreshold, name);
+            healthListener.run();
+        }
+    }
+
+    /**
+     * 记录一次成功，已摘除的副本恢复
+     */
+    public void markSuccess() {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (!healthy) {
+            healthy = true;
+            log.info("只读副本已恢复: {}", name);
+            healthListener.run();
+        }
+    }
+
+    void setHealthListener(Runnable healthListener) {
+        this.healthListener = healthListener;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * 借出未归还的连接数
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * 连接从借出到归还耗时的EWMA（纳秒）
+     */
+    public double getEwmaNanos() {
+        return ewmaNanos;
+    }
+}
@@ -0,0 +1,56 @@
+package online.yueyun.dbswitch.datasource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 同一角色（主库或从库）下的只读副本组
+ * 健康副本列表在副本状态变化时重建，选择时不复制列表
+ */
+public class ReplicaGroup {
+
+    private final List<ReplicaDataSource> replicas;
+
+    private final ReplicaLoadBalancer loadBalancer;
+
+    private volatile List<ReplicaDataSource> healthyReplicas;
+
+    /**
+     * @param replicas 副本
+     * @param loadBalancer 负载均衡器
+     */
+    public ReplicaGroup(List<ReplicaDataSource> replicas, ReplicaLoadBalancer loadBalancer) {
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.loadBalancer = loadBalancer;
+        for (ReplicaDataSource replica : replicas) {
+            replica.setHealthListener(this::refresh);
+        }
+        refresh();
+    }
+
+    /**
+     * 选择一个健康的副本，没有健康副本时返回null
+     */
+    public ReplicaDataSource choose() {
+        List<ReplicaDataSource> healthy = healthyReplicas;
+        return healthy.isEmpty() ? null : loadBalancer.choose(healthy);
+    }
+
+    /**
+     * 全部副本
+     */
+    public List<ReplicaDataSource> getReplicas() {
+        return replicas;
+    }
+
+    private synchronized void refresh() {
+        List<ReplicaDataSource> healthy = new ArrayList<>(replicas.size());
+        for (ReplicaDataSource replica : replicas) {
+            if (replica.isHealthy()) {
+                healthy.add(replica);
+            }
+        }
+        healthyReplicas = Collections.unmodifiableList(healthy);
+    }
+}
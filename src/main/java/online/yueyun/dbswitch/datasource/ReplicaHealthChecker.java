@@ -0,0 +1,77 @@
+package online.yueyun.dbswitch.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只读副本健康检查
+ * 定时校验全部副本（包括已摘除的副本）的连接，失败计入连续失败次数，成功则恢复副本
+ */
+@Slf4j
+public class ReplicaHealthChecker {
+
+    private final Collection<ReplicaGroup> groups;
+
+    private final long intervalMs;
+
+    private final int validationTimeoutSeconds;
+
+    private ScheduledExecutorService checkExecutor;
+
+    /**
+     * @param groups 副本组
+     * @param intervalMs 检查间隔
+     * @param validationTimeoutSeconds 连接校验超时
+     */
+    public ReplicaHealthChecker(Collection<ReplicaGroup> groups, long intervalMs, int validationTimeoutSeconds) {
+        this.groups = groups;
+        this.intervalMs = intervalMs;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * 启动定时检查
+     */
+    public void start() {
+        checkExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dbswitch-replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkExecutor.scheduleWithFixedDelay(this::checkAll, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定时检查
+     */
+    public void shutdown() {
+        if (checkExecutor != null) {
+            checkExecutor.shutdownNow();
+        }
+    }
+
+    private void checkAll() {
+        for (ReplicaGroup group : groups) {
+            for (ReplicaDataSource replica : group.getReplicas()) {
+                check(replica);
+            }
+        }
+    }
+
+    private void check(ReplicaDataSource replica) {
+        try (Connection connection = replica.getTargetDataSource().getConnection()) {
+            if (connection.isValid(validationTimeoutSeconds)) {
+                replica.markSuccess();
+                return;
+            }
+        } catch (Exception e) {
+            log.debug("只读副本健康检查失败: {}", replica.getName(), e);
+        }
+        replica.markFailure();
+    }
+}
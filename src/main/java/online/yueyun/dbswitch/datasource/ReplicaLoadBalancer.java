@@ -0,0 +1,18 @@
+package online.yueyun.dbswitch.datasource;
+
+import java.util.List;
+
+/**
+ * 只读副本负载均衡器
+ * 可注册自定义实现的Bean替换内置策略
+ */
+public interface ReplicaLoadBalancer {
+
+    /**
+     * 从健康的副本中选择一个
+     *
+     * @param replicas 健康的副本，不为空
+     * @return 选中的副本
+     */
+    ReplicaDataSource choose(List<ReplicaDataSource> replicas);
+}
@@ -0,0 +1,30 @@
+package online.yueyun.dbswitch.datasource;
+
+import java.util.List;
+
+/**
+ * 平滑加权轮询负载均衡器
+ * 每次选择时所有副本的当前权重加上自身权重，选中当前权重最大的副本并减去总权重，权重高的副本不会连续集中被选中
+ */
+public class WeightedRoundRobinLoadBalancer implements ReplicaLoadBalancer {
+
+    @Override
+    public ReplicaDataSource choose(List<ReplicaDataSource> replicas) {
+        if (replicas.size() == 1) {
+            return replicas.get(0);
+        }
+        synchronized (this) {
+            ReplicaDataSource selected = null;
+            int totalWeight = 0;
+            for (ReplicaDataSource replica : replicas) {
+                replica.currentWeight += replica.getWeight();
+                totalWeight += replica.getWeight();
+                if (selected == null || replica.currentWeight > selected.currentWeight) {
+                    selected = replica;
+                }
+            }
+            selected.currentWeight -= totalWeight;
+            return selected;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package online.yueyun.dbswitch.enums;
+
+/**
+ * 历史数据回填写入方式枚举
+ */
+public enum BackfillWriteMode {
+    /**
+     * INSERT IGNORE，目标库已存在的行（由双写写入，不会比源库旧）保持不变
+     */
+    INSERT_IGNORE,
+
+    /**
+     * INSERT ... ON DUPLICATE KEY UPDATE，只在源行的版本列更新时覆盖目标行，需要配置版本列
+     */
+    UPSERT
+}
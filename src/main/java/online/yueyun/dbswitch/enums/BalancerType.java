@@ -0,0 +1,16 @@
+package online.yueyun.dbswitch.enums;
+
+/**
+ * 只读副本负载均衡策略枚举
+ */
+public enum BalancerType {
+    /**
+     * 平滑加权轮询
+     */
+    ROUND_ROBIN,
+
+    /**
+     * 按未完成请求数和EWMA延迟选择开销最小的副本
+     */
+    LEAST_LATENCY
+}
@@ -0,0 +1,21 @@
+package online.yueyun.dbswitch.enums;
+
+/**
+ * 消息认领结果枚举
+ */
+public enum ClaimStatus {
+    /**
+     * 认领成功，由当前消费者处理
+     */
+    CLAIMED,
+
+    /**
+     * 其他消费者正在处理
+     */
+    IN_PROGRESS,
+
+    /**
+     * 已处理完成
+     */
+    DONE
+}
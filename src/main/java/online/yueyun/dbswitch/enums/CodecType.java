@@ -0,0 +1,16 @@
+package online.yueyun.dbswitch.enums;
+
+/**
+ * 消息编码方式枚举
+ */
+public enum CodecType {
+    /**
+     * 使用消息队列默认的消息转换器，本地日志和发件箱使用JDK序列化
+     */
+    DEFAULT,
+
+    /**
+     * 紧凑二进制编码
+     */
+    BINARY
+}
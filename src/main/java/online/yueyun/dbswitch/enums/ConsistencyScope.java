@@ -0,0 +1,16 @@
+package online.yueyun.dbswitch.enums;
+
+/**
+ * 读己之写的作用范围枚举
+ */
+public enum ConsistencyScope {
+    /**
+     * 单个请求内
+     */
+    REQUEST,
+
+    /**
+     * 同一HTTP会话的多个请求之间
+     */
+    SESSION
+}
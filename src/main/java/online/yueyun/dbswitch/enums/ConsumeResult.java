@@ -0,0 +1,21 @@
+package online.yueyun.dbswitch.enums;
+
+/**
+ * 单条消息的消费结果枚举
+ */
+public enum ConsumeResult {
+    /**
+     * 已执行成功或此前已处理完成
+     */
+    SUCCESS,
+
+    /**
+     * 执行失败，按重试次数进入重试
+     */
+    FAILED,
+
+    /**
+     * 其他消费者正在处理，延迟后重新投递，不计入重试次数
+     */
+    IN_PROGRESS
+}
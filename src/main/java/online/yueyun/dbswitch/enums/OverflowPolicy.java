@@ -0,0 +1,21 @@
+package online.yueyun.dbswitch.enums;
+
+/**
+ * 异步发送缓冲区溢出策略枚举
+ */
+public enum OverflowPolicy {
+    /**
+     * 阻塞调用线程直到缓冲区有空位
+     */
+    BLOCK,
+
+    /**
+     * 丢弃消息
+     */
+    DROP,
+
+    /**
+     * 由调用线程同步发送
+     */
+    CALLER_RUNS
+}
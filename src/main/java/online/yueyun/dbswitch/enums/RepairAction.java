@@ -0,0 +1,21 @@
+package online.yueyun.dbswitch.enums;
+
+/**
+ * 一致性校验修复动作枚举，以源库为准描述目标库需要执行的操作
+ */
+public enum RepairAction {
+    /**
+     * 目标库缺少该行
+     */
+    INSERT,
+
+    /**
+     * 两个库的行内容不同
+     */
+    UPDATE,
+
+    /**
+     * 目标库多出该行
+     */
+    DELETE
+}
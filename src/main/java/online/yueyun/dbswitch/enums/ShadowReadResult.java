@@ -0,0 +1,26 @@
+package online.yueyun.dbswitch.enums;
+
+/**
+ * 影子读校验结果枚举
+ */
+public enum ShadowReadResult {
+    /**
+     * 两个库结果一致
+     */
+    MATCHED,
+
+    /**
+     * 两个库结果不一致
+     */
+    MISMATCHED,
+
+    /**
+     * 执行失败或结果超过最大行数，未比较
+     */
+    SKIPPED,
+
+    /**
+     * 线程池全忙，样本被丢弃
+     */
+    DROPPED
+}
@@ -0,0 +1,30 @@
+package online.yueyun.dbswitch.journal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+
+import java.util.List;
+
+/**
+ * 本地日志读取结果
+ */
+@Getter
+@AllArgsConstructor
+public class JournalBatch {
+
+    /**
+     * 读取到的消息，不包含校验失败的记录
+     */
+    private final List<DBOperationMessage> messages;
+
+    /**
+     * 读取结束位置所在分段
+     */
+    private final long segment;
+
+    /**
+     * 读取结束位置在分段内的偏移
+     */
+    private final int offset;
+}
@@ -0,0 +1,84 @@
+package online.yueyun.dbswitch.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.mq.producer.MQProducer;
+import online.yueyun.dbswitch.mq.producer.MQProducerSelector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地日志补发任务
+ * 定时把本地日志中积压的双写消息补发到消息队列，消息队列确认后移动确认位置并清理分段
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.journal.enabled", havingValue = "true")
+public class JournalRelay {
+
+    @Autowired
+    private MessageJournal messageJournal;
+
+    @Autowired
+    private MQProducerSelector mqProducerSelector;
+
+    @Value("${dbswitch.journal.relay-interval-ms:1000}")
+    private long relayIntervalMs;
+
+    @Value("${dbswitch.journal.relay-batch-size:256}")
+    private int relayBatchSize;
+
+    private ScheduledExecutorService relayExecutor;
+
+    @PostConstruct
+    public void start() {
+        relayExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dbswitch-journal-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        relayExecutor.scheduleWithFixedDelay(this::relay, relayIntervalMs, relayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (relayExecutor != null) {
+            relayExecutor.shutdownNow();
+        }
+        messageJournal.force();
+    }
+
+    /**
+     * 补发积压的消息，消息队列仍不可用时等待下一轮
+     */
+    private void relay() {
+        try {
+            messageJournal.force();
+            while (messageJournal.hasBacklog()) {
+                JournalBatch batch = messageJournal.read(relayBatchSize);
+                if (!batch.getMessages().isEmpty()) {
+                    MQProducer producer = mqProducerSelector.getProducer();
+                    if (producer == null) {
+                        log.warn("无法找到消息队列生产者，暂停补发本地日志");
+                        return;
+                    }
+                    if (!producer.sendBatch(batch.getMessages())) {
+                        log.warn("消息队列仍不可用，{}ms后重试补发本地日志", relayIntervalMs);
+                        return;
+                    }
+                    log.info("已从本地日志补发双写消息，数量: {}", batch.getMessages().size());
+                }
+                messageJournal.acknowledge(batch);
+            }
+        } catch (Exception e) {
+            log.error("补发本地日志失败", e);
+        }
+    }
+}
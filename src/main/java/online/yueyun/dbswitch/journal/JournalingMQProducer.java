@@ -0,0 +1,101 @@
+package online.yueyun.dbswitch.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.mq.producer.MQProducer;
+
+import java.util.List;
+
+/**
+ * 带本地日志兜底的消息队列生产者
+ * 发送失败的双写消息写入本地日志；日志中有积压时，新消息直接写入日志，由JournalRelay按顺序补发
+ */
+@Slf4j
+public class JournalingMQProducer implements MQProducer {
+
+    private final MQProducer delegate;
+
+    private final MessageJournal messageJournal;
+
+    public JournalingMQProducer(MQProducer delegate, MessageJournal messageJournal) {
+        this.delegate = delegate;
+        this.messageJournal = messageJournal;
+    }
+
+    @Override
+    public boolean sendMessage(DBOperationMessage message) {
+        if (messageJournal.hasBacklog()) {
+            return messageJournal.append(message);
+        }
+
+        boolean sent;
+        try {
+            sent = delegate.sendMessage(message);
+        } catch (Exception e) {
+            log.error("发送双写消息异常: {}", message.getMessageId(), e);
+            sent = false;
+        }
+        if (sent) {
+            return true;
+        }
+
+        log.warn("发送双写消息失败，写入本地日志: {}", message.getMessageId());
+        return messageJournal.append(message);
+    }
+
+    @Override
+    public boolean sendDelayMessage(DBOperationMessage message, int delayLevel) {
+        return delegate.sendDelayMessage(message, delayLevel);
+    }
+
+    @Override
+    public boolean sendBatch(List<DBOperationMessage> messages) {
+        if (!messageJournal.hasBacklog()) {
+            boolean sent;
+            try {
+                sent = delegate.sendBatch(messages);
+            } catch (Exception e) {
+                log.error("批量发送双写消息异常，数量: {}", messages.size(), e);
+                sent = false;
+            }
+            if (sent) {
+                return true;
+            }
+            log.warn("批量发送双写消息失败，写入本地日志，数量: {}", messages.size());
+        }
+
+        boolean success = true;
+        for (DBOperationMessage message : messages) {
+            success &= messageJournal.append(message);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean supportsEncoded() {
+        return delegate.supportsEncoded();
+    }
+
+    @Override
+    public boolean sendEncodedBatch(List<byte[]> messages) {
+        if (!messageJournal.hasBacklog()) {
+            boolean sent;
+            try {
+                sent = delegate.sendEncodedBatch(messages);
+            } catch (Exception e) {
+                log.error("批量发送双写消息异常，数量: {}", messages.size(), e);
+                sent = false;
+            }
+            if (sent) {
+                return true;
+            }
+            log.warn("批量发送双写消息失败，写入本地日志，数量: {}", messages.size());
+        }
+
+        boolean success = true;
+        for (byte[] payload : messages) {
+            success &= messageJournal.appendEncoded(payload);
+        }
+        return success;
+    }
+}
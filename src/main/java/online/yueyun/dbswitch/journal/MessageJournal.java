@@ -0,0 +1,351 @@
+package online.yueyun.dbswitch.journal;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.codec.MessageCodecException;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 双写消息本地日志
+ * 消息队列不可用时，双写消息追加写入本地内存映射文件，按固定大小分段滚动；
+ * 每条记录格式为：长度(4字节) + CRC32C(4字节) + 消息内容，长度为0表示分段结束
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.journal.enabled", havingValue = "true")
+public class MessageJournal {
+
+    /**
+     * 记录头长度：长度 + CRC
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    /**
+     * 单个分段的最大大小，内存映射缓冲区和偏移量都以int表示
+     */
+    private static final int MAX_SEGMENT_SIZE_MB = 1024;
+
+    @Autowired
+    private MessageCodec messageCodec;
+
+    /**
+     * 日志目录，必须显式配置在持久化存储上
+     */
+    @Value("${dbswitch.journal.dir:}")
+    private String directory;
+
+    @Value("${dbswitch.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    private Path journalDir;
+
+    private int segmentSize;
+
+    /**
+     * 分段编号到映射缓冲区
+     */
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    private long writeSegment;
+
+    private int writeOffset;
+
+    /**
+     * 已确认（已成功投递）的位置
+     */
+    private long ackSegment;
+
+    private int ackOffset;
+
+    private volatile boolean backlog;
+
+    private FileChannel checkpointChannel;
+
+    /**
+     * 打开日志目录，恢复写入位置和确认位置
+     */
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        if (directory == null || directory.isBlank()) {
+            throw new IllegalStateException("开启本地日志时必须配置持久化目录dbswitch.journal.dir");
+        }
+        if (segmentSizeMb <= 0 || segmentSizeMb > MAX_SEGMENT_SIZE_MB) {
+            throw new IllegalStateException("dbswitch.journal.segment-size-mb必须在1-" + MAX_SEGMENT_SIZE_MB
+                    + "之间: " + segmentSizeMb);
+        }
+        journalDir = Paths.get(directory).toAbsolutePath();
+        if (journalDir.startsWith(Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath())) {
+            log.warn("本地日志目录位于系统临时目录下，重启或清理后未投递的消息会丢失: {}", journalDir);
+        }
+        Files.createDirectories(journalDir);
+        segmentSize = (int) ((long) segmentSizeMb * 1024 * 1024);
+
+        try (Stream<Path> files = Files.list(journalDir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> {
+                        long number = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                        segments.put(number, null);
+                    });
+        }
+        for (Long number : new ArrayList<>(segments.keySet())) {
+            segments.put(number, mapSegment(number));
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, mapSegment(0L));
+        }
+
+        writeSegment = segments.lastKey();
+        writeOffset = recoverWriteOffset(segments.get(writeSegment));
+
+        checkpointChannel = FileChannel.open(journalDir.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer checkpoint = ByteBuffer.allocate(12);
+        if (checkpointChannel.read(checkpoint, 0) == 12) {
+            checkpoint.flip();
+            ackSegment = checkpoint.getLong();
+            ackOffset = checkpoint.getInt();
+        }
+        if (ackSegment < segments.firstKey()) {
+            ackSegment = segments.firstKey();
+            ackOffset = 0;
+        }
+        updateBacklog();
+        log.info("双写消息本地日志已打开: {}, 分段数: {}, 待投递: {}", journalDir, segments.size(), backlog);
+    }
+
+    /**
+     * 是否有尚未投递的消息
+     * 有积压时新消息也应写入日志，以保持消息顺序
+     */
+    public boolean hasBacklog() {
+        return backlog;
+    }
+
+    /**
+     * 追加消息
+     *
+     * @param message 数据库操作消息
+     * @return 是否写入成功
+     */
+    public boolean append(DBOperationMessage message) {
+        byte[] payload;
+        try {
+            payload = messageCodec.encode(message);
+        } catch (MessageCodecException e) {
+            log.error("序列化双写消息失败，无法写入本地日志: {}", message.getMessageId(), e);
+            return false;
+        }
+        return appendEncoded(payload);
+    }
+
+    /**
+     * 追加已用同一编解码器编码的消息
+     *
+     * @param payload 编码后的消息
+     * @return 是否写入成功
+     */
+    public boolean appendEncoded(byte[] payload) {
+        // 预留分段结束标记的空间
+        if (payload.length + HEADER_SIZE + 4 > segmentSize) {
+            log.error("双写消息过大，无法写入本地日志，大小: {}", payload.length);
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        int checksum = (int) crc.getValue();
+
+        synchronized (this) {
+            try {
+                if (writeOffset + HEADER_SIZE + payload.length + 4 > segmentSize) {
+                    rollSegment();
+                }
+                MappedByteBuffer buffer = segments.get(writeSegment);
+                buffer.putInt(writeOffset + 4, checksum);
+                buffer.put(writeOffset + HEADER_SIZE, payload);
+                // 最后写入长度，长度非0即表示记录完整
+                buffer.putInt(writeOffset, payload.length);
+                writeOffset += HEADER_SIZE + payload.length;
+                backlog = true;
+                return true;
+            } catch (IOException e) {
+                log.error("写入本地日志失败", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 从确认位置开始读取消息，不移动确认位置
+     *
+     * @param maxMessages 最多读取数量
+     * @return 读取结果
+     */
+    public synchronized JournalBatch read(int maxMessages) {
+        List<DBOperationMessage> messages = new ArrayList<>();
+        long segment = ackSegment;
+        int offset = ackOffset;
+
+        while (messages.size() < maxMessages) {
+            if (segment == writeSegment && offset >= writeOffset) {
+                break;
+            }
+            MappedByteBuffer buffer = segments.get(segment);
+            int length = buffer == null || offset + HEADER_SIZE > segmentSize ? 0 : buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > segmentSize) {
+                // 当前分段已读完，进入下一个分段
+                if (segment >= writeSegment) {
+                    break;
+                }
+                segment++;
+                offset = 0;
+                continue;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_SIZE, payload);
+            int checksum = buffer.getInt(offset + 4);
+            offset += HEADER_SIZE + length;
+
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                log.error("本地日志记录校验失败，已跳过，分段: {}, 位置: {}", segment, offset - HEADER_SIZE - length);
+                continue;
+            }
+            try {
+                messages.add(messageCodec.decode(payload));
+            } catch (MessageCodecException e) {
+                log.error("本地日志记录反序列化失败，已跳过，分段: {}", segment, e);
+            }
+        }
+        return new JournalBatch(messages, segment, offset);
+    }
+
+    /**
+     * 确认一批消息已被消息队列接收，移动确认位置并删除已投递完的分段
+     *
+     * @param batch 已投递的读取结果
+     */
+    public synchronized void acknowledge(JournalBatch batch) {
+        ackSegment = batch.getSegment();
+        ackOffset = batch.getOffset();
+        try {
+            ByteBuffer checkpoint = ByteBuffer.allocate(12);
+            checkpoint.putLong(ackSegment).putInt(ackOffset).flip();
+            checkpointChannel.write(checkpoint, 0);
+        } catch (IOException e) {
+            log.error("写入本地日志检查点失败", e);
+        }
+
+        // 删除文件前先从分段表中移除映射缓冲区，不再持有其引用。映射要等缓冲区被GC回收才解除：
+        // Linux上删除仍被映射的文件只移除目录项，空间在解除映射后释放；Windows上删除会失败，
+        // 未删除的分段在重启后低于确认位置，下一次确认时再删除
+        NavigableMap<Long, MappedByteBuffer> delivered = segments.headMap(ackSegment, false);
+        List<Long> numbers = new ArrayList<>(delivered.keySet());
+        delivered.clear();
+        for (Long number : numbers) {
+            try {
+                Files.deleteIfExists(segmentPath(number));
+                log.info("本地日志分段已投递完成并删除: {}", number);
+            } catch (IOException e) {
+                log.warn("删除本地日志分段失败: {}", number, e);
+            }
+        }
+        updateBacklog();
+    }
+
+    /**
+     * 将当前分段刷到磁盘
+     */
+    public synchronized void force() {
+        MappedByteBuffer buffer = segments.get(writeSegment);
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * 滚动到新的分段
+     */
+    private void rollSegment() throws IOException {
+        segments.get(writeSegment).force();
+        long next = writeSegment + 1;
+        segments.put(next, mapSegment(next));
+        writeSegment = next;
+        writeOffset = 0;
+        log.info("本地日志滚动到新分段: {}", next);
+    }
+
+    /**
+     * 映射分段文件
+     */
+    private MappedByteBuffer mapSegment(long number) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath(number).toFile(), "rw")) {
+            if (file.length() < segmentSize) {
+                file.setLength(segmentSize);
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    /**
+     * 扫描分段，找到最后一条完整记录之后的位置
+     */
+    private int recoverWriteOffset(MappedByteBuffer buffer) {
+        int offset = 0;
+        while (offset + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_SIZE, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                log.warn("本地日志尾部存在不完整记录，从位置 {} 继续写入", offset);
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        // 清除可能残留的不完整记录头
+        if (offset + HEADER_SIZE <= segmentSize) {
+            buffer.putInt(offset, 0);
+        }
+        return offset;
+    }
+
+    private Path segmentPath(long number) {
+        return journalDir.resolve(String.format("%020d%s", number, SEGMENT_SUFFIX));
+    }
+
+    private void updateBacklog() {
+        backlog = ackSegment < writeSegment || ackOffset < writeOffset;
+    }
+}
@@ -0,0 +1,131 @@
+package online.yueyun.dbswitch.metrics;
+
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+import online.yueyun.dbswitch.enums.ClaimStatus;
+import online.yueyun.dbswitch.enums.MQType;
+import online.yueyun.dbswitch.enums.ShadowReadResult;
+import online.yueyun.dbswitch.mq.producer.impl.AsyncBatchingMQProducer;
+import online.yueyun.dbswitch.service.ReplicationLagService;
+import online.yueyun.dbswitch.service.impl.LocalCachingIdempotentService;
+
+/**
+ * 双写链路指标
+ * 拦截器、生产者和消费者通过该接口记录指标，未引入Micrometer时使用空实现；
+ * 实现类需保证记录方法在热点路径上不分配对象，标签取值数量有上限
+ */
+public interface DBSwitchMetrics {
+
+    /**
+     * 不记录任何指标的空实现
+     */
+    DBSwitchMetrics NOOP = new DBSwitchMetrics() {
+    };
+
+    /**
+     * 记录一次Mapper语句在指定数据源上的执行耗时
+     *
+     * @param statementId MappedStatement ID
+     * @param dataSourceType 数据源类型
+     * @param nanos 耗时（纳秒）
+     */
+    default void recordStatement(String statementId, DataSourceType dataSourceType, long nanos) {
+    }
+
+    /**
+     * 记录拦截器自身增加的耗时，即拦截总耗时减去语句执行耗时
+     *
+     * @param nanos 耗时（纳秒）
+     */
+    default void recordInterceptorOverhead(long nanos) {
+    }
+
+    /**
+     * 记录一次消息发送
+     *
+     * @param mqType 消息队列类型
+     * @param nanos 耗时（纳秒）
+     * @param success 是否成功
+     */
+    default void recordSend(MQType mqType, long nanos, boolean success) {
+    }
+
+    /**
+     * 记录一次并行同步双写的第二个库写操作
+     *
+     * @param nanos 耗时（纳秒）
+     * @param success 是否同步完成，false表示回退到消息队列
+     */
+    default void recordSyncDualWrite(long nanos, boolean success) {
+    }
+
+    /**
+     * 记录一次影子读校验
+     *
+     * @param result 校验结果
+     */
+    default void recordShadowRead(ShadowReadResult result) {
+    }
+
+    /**
+     * 记录一次消费端数据库操作执行，批量执行时每批记录一次
+     *
+     * @param nanos 耗时（纳秒）
+     * @param success 是否成功
+     */
+    default void recordApply(long nanos, boolean success) {
+    }
+
+    /**
+     * 记录一次消息重试
+     *
+     * @param delayLevel 延迟级别
+     */
+    default void recordRetry(int delayLevel) {
+    }
+
+    /**
+     * 记录一次幂等命中（已处理或处理中）
+     *
+     * @param status 认领结果
+     */
+    default void recordIdempotentHit(ClaimStatus status) {
+    }
+
+    /**
+     * 记录一条超过最大重试次数被放弃的消息
+     */
+    default void recordDropped() {
+    }
+
+    /**
+     * 记录一条消息从创建到在目标库执行完成的复制延迟
+     *
+     * @param lagMillis 复制延迟（毫秒）
+     */
+    default void recordReplicationLag(long lagMillis) {
+    }
+
+    /**
+     * 注册复制水位指标，由复制延迟服务启动时调用一次
+     *
+     * @param replicationLagService 复制延迟服务
+     */
+    default void bindReplicationLag(ReplicationLagService replicationLagService) {
+    }
+
+    /**
+     * 注册异步批量发送的缓冲区和发送指标，由生产者创建时调用一次
+     *
+     * @param producer 异步批量发送生产者
+     */
+    default void bindAsyncProducer(AsyncBatchingMQProducer producer) {
+    }
+
+    /**
+     * 注册幂等性本地缓存的命中和Redis查询指标，由本地缓存初始化时调用一次
+     *
+     * @param idempotentService 带本地前置缓存的幂等性服务
+     */
+    default void bindIdempotentCache(LocalCachingIdempotentService idempotentService) {
+    }
+}
@@ -0,0 +1,283 @@
+package online.yueyun.dbswitch.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+import online.yueyun.dbswitch.enums.ClaimStatus;
+import online.yueyun.dbswitch.enums.MQType;
+import online.yueyun.dbswitch.enums.ShadowReadResult;
+import online.yueyun.dbswitch.mq.producer.impl.AsyncBatchingMQProducer;
+import online.yueyun.dbswitch.service.ReplicationLagService;
+import online.yueyun.dbswitch.service.impl.LocalCachingIdempotentService;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Micrometer的双写链路指标
+ * 除语句计时器外的所有指标在创建时预先注册并保存在数组中；语句计时器按语句ID首次出现时注册，
+ * 超过上限的语句统一记入statement=other，之后的记录只做一次Map查找，不分配对象
+ */
+@Slf4j
+public class MicrometerDBSwitchMetrics implements DBSwitchMetrics {
+
+    private static final String OTHER = "other";
+
+    /**
+     * 单独记录的最大延迟级别，更大的级别记入level=other
+     */
+    private static final int MAX_DELAY_LEVEL = 18;
+
+    private final MeterRegistry registry;
+
+    private final int maxStatements;
+
+    private final ConcurrentMap<String, Timer[]> statementTimers = new ConcurrentHashMap<>();
+
+    private final Timer[] otherStatementTimers;
+
+    private volatile boolean overflowLogged;
+
+    private final Timer overheadTimer;
+
+    private final Timer[] sendTimers;
+
+    private final Counter[] sendFailures;
+
+    private final Timer syncDualWriteTimer;
+
+    private final Counter syncDualWriteFallbacks;
+
+    private final Counter[] shadowReads;
+
+    private final Timer applySuccessTimer;
+
+    private final Timer applyFailureTimer;
+
+    private final Counter[] retryCounters;
+
+    private final Counter[] idempotentHits;
+
+    private final Counter droppedCounter;
+
+    private final Timer replicationLagTimer;
+
+    /**
+     * @param registry 指标注册表
+     * @param maxStatements 单独记录的最大语句数
+     */
+    public MicrometerDBSwitchMetrics(MeterRegistry registry, int maxStatements) {
+        this.registry = registry;
+        this.maxStatements = maxStatements;
+        this.otherStatementTimers = registerStatementTimers(OTHER);
+        this.overheadTimer = Timer.builder("dbswitch.interceptor.overhead")
+                .description("拦截器自身增加的耗时")
+                .register(registry);
+
+        MQType[] mqTypes = MQType.values();
+        this.sendTimers = new Timer[mqTypes.length];
+        this.sendFailures = new Counter[mqTypes.length];
+        for (MQType mqType : mqTypes) {
+            String tag = mqType.name().toLowerCase();
+            sendTimers[mqType.ordinal()] = Timer.builder("dbswitch.mq.send")
+                    .description("双写消息发送耗时")
+                    .tag("mq", tag)
+                    .register(registry);
+            sendFailures[mqType.ordinal()] = Counter.builder("dbswitch.mq.send.failures")
+                    .description("双写消息发送失败次数")
+                    .tag("mq", tag)
+                    .register(registry);
+        }
+
+        this.syncDualWriteTimer = Timer.builder("dbswitch.dualwrite.sync")
+                .description("并行同步双写第二个库的写操作耗时")
+                .register(registry);
+        this.syncDualWriteFallbacks = Counter.builder("dbswitch.dualwrite.sync.fallbacks")
+                .description("并行同步双写回退到消息队列的次数")
+                .register(registry);
+
+        ShadowReadResult[] shadowReadResults = ShadowReadResult.values();
+        this.shadowReads = new Counter[shadowReadResults.length];
+        for (ShadowReadResult result : shadowReadResults) {
+            shadowReads[result.ordinal()] = Counter.builder("dbswitch.shadow.reads")
+                    .description("影子读校验次数")
+                    .tag("result", result.name().toLowerCase())
+                    .register(registry);
+        }
+
+        this.applySuccessTimer = applyTimer("success");
+        this.applyFailureTimer = applyTimer("failure");
+
+        this.retryCounters = new Counter[MAX_DELAY_LEVEL + 1];
+        for (int level = 0; level <= MAX_DELAY_LEVEL; level++) {
+            retryCounters[level] = Counter.builder("dbswitch.consumer.retries")
+                    .description("消息重试次数")
+                    .tag("level", level == MAX_DELAY_LEVEL ? OTHER : String.valueOf(level + 1))
+                    .register(registry);
+        }
+
+        ClaimStatus[] statuses = ClaimStatus.values();
+        this.idempotentHits = new Counter[statuses.length];
+        for (ClaimStatus status : statuses) {
+            idempotentHits[status.ordinal()] = Counter.builder("dbswitch.consumer.idempotent.hits")
+                    .description("幂等命中次数")
+                    .tag("status", status.name().toLowerCase())
+                    .register(registry);
+        }
+
+        this.droppedCounter = Counter.builder("dbswitch.consumer.dropped")
+                .description("超过最大重试次数被放弃的消息数")
+                .register(registry);
+
+        this.replicationLagTimer = Timer.builder("dbswitch.replication.lag")
+                .description("消息从创建到在目标库执行完成的复制延迟")
+                .register(registry);
+    }
+
+    @Override
+    public void recordStatement(String statementId, DataSourceType dataSourceType, long nanos) {
+        Timer[] timers = statementTimers.get(statementId);
+        if (timers == null) {
+            if (statementTimers.size() < maxStatements) {
+                timers = statementTimers.computeIfAbsent(statementId, this::registerStatementTimers);
+            } else {
+                if (!overflowLogged) {
+                    overflowLogged = true;
+                    log.warn("语句指标数量达到上限{}，之后的语句记入statement=other", maxStatements);
+                }
+                timers = otherStatementTimers;
+            }
+        }
+        timers[dataSourceType.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordInterceptorOverhead(long nanos) {
+        overheadTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordSend(MQType mqType, long nanos, boolean success) {
+        sendTimers[mqType.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        if (!success) {
+            sendFailures[mqType.ordinal()].increment();
+        }
+    }
+
+    @Override
+    public void recordSyncDualWrite(long nanos, boolean success) {
+        if (success) {
+            syncDualWriteTimer.record(nanos, TimeUnit.NANOSECONDS);
+        } else {
+            syncDualWriteFallbacks.increment();
+        }
+    }
+
+    @Override
+    public void recordShadowRead(ShadowReadResult result) {
+        shadowReads[result.ordinal()].increment();
+    }
+
+    @Override
+    public void recordApply(long nanos, boolean success) {
+        (success ? applySuccessTimer : applyFailureTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordRetry(int delayLevel) {
+        retryCounters[Math.max(0, Math.min(delayLevel, MAX_DELAY_LEVEL + 1) - 1)].increment();
+    }
+
+    @Override
+    public void recordIdempotentHit(ClaimStatus status) {
+        idempotentHits[status.ordinal()].increment();
+    }
+
+    @Override
+    public void recordDropped() {
+        droppedCounter.increment();
+    }
+
+    @Override
+    public void recordReplicationLag(long lagMillis) {
+        replicationLagTimer.record(Math.max(0, lagMillis), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void bindReplicationLag(ReplicationLagService replicationLagService) {
+        Gauge.builder("dbswitch.replication.watermark.lag", replicationLagService,
+                        service -> System.currentTimeMillis() - service.getLocalWatermark())
+                .description("当前时间与已执行水位之差（毫秒）")
+                .tag("scope", "local")
+                .register(registry);
+        Gauge.builder("dbswitch.replication.watermark.lag", replicationLagService,
+                        ReplicationLagService::getCurrentLagMillis)
+                .description("当前时间与已执行水位之差（毫秒）")
+                .tag("scope", "global")
+                .register(registry);
+    }
+
+    @Override
+    public void bindAsyncProducer(AsyncBatchingMQProducer producer) {
+        Gauge.builder("dbswitch.producer.async.queue.depth", producer, AsyncBatchingMQProducer::getQueueDepth)
+                .description("异步发送缓冲区中待发送的消息数")
+                .register(registry);
+        Gauge.builder("dbswitch.producer.async.queue.capacity", producer, AsyncBatchingMQProducer::getQueueCapacity)
+                .description("异步发送缓冲区容量")
+                .register(registry);
+        Gauge.builder("dbswitch.producer.async.flush.latency", producer,
+                        p -> p.getLastFlushLatencyNanos() / 1_000_000.0)
+                .description("最近一次批量发送耗时（毫秒）")
+                .baseUnit("milliseconds")
+                .register(registry);
+        FunctionCounter.builder("dbswitch.producer.async.flushed", producer, AsyncBatchingMQProducer::getFlushedCount)
+                .description("异步批量发送成功的消息数")
+                .register(registry);
+        FunctionCounter.builder("dbswitch.producer.async.retries", producer, AsyncBatchingMQProducer::getRetryCount)
+                .description("异步批量发送失败后重试的消息数")
+                .register(registry);
+        FunctionCounter.builder("dbswitch.producer.async.dropped", producer, AsyncBatchingMQProducer::getDroppedCount)
+                .description("异步批量发送丢弃的消息数")
+                .register(registry);
+    }
+
+    @Override
+    public void bindIdempotentCache(LocalCachingIdempotentService idempotentService) {
+        FunctionCounter.builder("dbswitch.idempotent.local.hits", idempotentService,
+                        LocalCachingIdempotentService::getLruHits)
+                .description("幂等性本地缓存命中、未查询Redis的消息数")
+                .register(registry);
+        FunctionCounter.builder("dbswitch.idempotent.local.misses", idempotentService,
+                        LocalCachingIdempotentService::getRedisLookups)
+                .description("幂等性本地缓存未命中、查询Redis的消息数")
+                .register(registry);
+    }
+
+    /**
+     * 注册一条语句在各数据源上的计时器，按数据源类型序号保存
+     */
+    private Timer[] registerStatementTimers(String statementId) {
+        DataSourceType[] types = DataSourceType.values();
+        Timer[] timers = new Timer[types.length];
+        for (DataSourceType type : types) {
+            timers[type.ordinal()] = Timer.builder("dbswitch.statement")
+                    .description("Mapper语句执行耗时")
+                    .tag("statement", statementId)
+                    .tag("datasource", type.name().toLowerCase())
+                    .register(registry);
+        }
+        return timers;
+    }
+
+    private Timer applyTimer(String result) {
+        return Timer.builder("dbswitch.consumer.apply")
+                .description("消费端数据库操作执行耗时")
+                .tag("result", result)
+                .register(registry);
+    }
+}
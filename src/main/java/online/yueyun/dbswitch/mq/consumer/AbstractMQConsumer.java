@@ -1,11 +1,24 @@
 package online.yueyun.dbswitch.mq.consumer;
 
 import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.codec.MessageCodecException;
+import online.yueyun.dbswitch.enums.ClaimStatus;
+import online.yueyun.dbswitch.enums.ConsumeResult;
 import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
 import online.yueyun.dbswitch.mq.producer.MQProducer;
+import online.yueyun.dbswitch.service.BatchApplyService;
 import online.yueyun.dbswitch.service.IdempotentService;
 import online.yueyun.dbswitch.service.MapperInvokeService;
+import online.yueyun.dbswitch.service.ReplicationLagService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * MQ消费者抽象基类
@@ -19,32 +32,231 @@ public abstract class AbstractMQConsumer implements MQConsumer {
     @Autowired
     protected MapperInvokeService mapperInvokeService;
 
+    @Autowired
+    protected BatchApplyService batchApplyService;
+
+    @Autowired
+    private List<MessageCodec> messageCodecs;
+
+    @Autowired
+    protected DBSwitchMetrics metrics;
+
+    @Autowired
+    protected ReplicationLagService replicationLagService;
+
     /**
-     * 处理消息的共用方法
+     * 开启分片分发时一批消息按路由键分片并行处理，只用于批量消费
+     */
+    @Autowired(required = false)
+    protected StripedMessageDispatcher stripedDispatcher;
+
+    /**
+     * 开启虚拟线程时一批消息中的每条消息在独立的虚拟线程中处理，只用于批量消费
+     */
+    @Autowired(required = false)
+    protected VirtualThreadMessageExecutor virtualThreadExecutor;
+
+    /**
+     * 其他消费者处理中的消息重新投递的延迟级别，重新投递不计入重试次数，直到认领超时后由本消费者认领
+     */
+    @Value("${dbswitch.consumer.in-progress-delay-level:2}")
+    private int inProgressDelayLevel;
+
+    /**
+     * 按消息头中的编解码器名称解码消息体
+     *
+     * @param codecName 编解码器名称
+     * @param body 消息体
+     * @return 数据库操作消息
+     */
+    protected DBOperationMessage decode(String codecName, byte[] body) {
+        for (MessageCodec codec : messageCodecs) {
+            if (codec.getName().equals(codecName)) {
+                return codec.decode(body);
+            }
+        }
+        throw new MessageCodecException("不支持的消息编解码器: " + codecName);
+    }
+
+    /**
+     * 处理消息的共用方法，在监听线程中执行，返回时消息已在目标库执行或进入重试
+     * 逐条消费的并发度和顺序由监听容器决定；分片分发和虚拟线程只用于批量消费，逐条消费时启动即报错
      * 
      * @param message 接收到的消息
      */
     protected void processMessage(DBOperationMessage message) {
+        replicationLagService.onReceived(message);
+        ConsumeResult result = ConsumeResult.FAILED;
         try {
             log.info("接收到MQ消息: {}", message);
-            boolean success = consumeMessage(message);
-            if (!success) {
-                handleRetry(message);
-            }
+            result = consume(message);
         } catch (Exception e) {
             log.error("处理MQ消息失败: {}", message, e);
+        }
+        handleResult(message, result);
+    }
+
+    /**
+     * 按消费结果重试：失败的消息计入重试次数，其他消费者处理中的消息延迟后重新投递；
+     * 等待重试的消息继续占用复制水位，执行成功或被放弃时才离开
+     */
+    private void handleResult(DBOperationMessage message, ConsumeResult result) {
+        if (result == ConsumeResult.SUCCESS) {
+            replicationLagService.onCompleted(message, true);
+        } else if (result == ConsumeResult.FAILED) {
             handleRetry(message);
+        } else if (result == ConsumeResult.IN_PROGRESS) {
+            sendRetry(message, inProgressDelayLevel);
+            log.info("消息正在由其他消费者处理，延迟后重新投递: {}", message.getMessageId());
+        }
+    }
+
+    /**
+     * 批量处理消息的共用方法，执行失败的消息逐条进入重试，全部消息处理完成后才返回并确认整批消息
+     * <ul>
+     *     <li>开启分片分发时一批消息按分片拆分后并行处理，同一路由键的消息只在本批之内按批内顺序执行，
+     *     不同批次（不同监听线程）之间不保证顺序，需要跨批次保序时监听容器应使用顺序消费或单个消费线程</li>
+     *     <li>开启虚拟线程时一批消息逐条在各自的虚拟线程中并发执行，不保证批内顺序，并发数由目标库的许可数限制</li>
+     * </ul>
+     *
+     * @param messages 接收到的消息
+     */
+    protected void processBatch(List<DBOperationMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        log.info("接收到MQ批量消息，数量: {}", messages.size());
+        for (DBOperationMessage message : messages) {
+            replicationLagService.onReceived(message);
+        }
+        ConsumeResult[] results;
+        try {
+            if (stripedDispatcher != null) {
+                results = stripedDispatcher.dispatchBatch(messages, this::consumeAll);
+            } else if (virtualThreadExecutor != null && virtualThreadExecutor.isAvailable()) {
+                results = virtualThreadExecutor.executeBatch(messages, this::consume);
+            } else {
+                results = consumeAll(messages);
+            }
+        } catch (Exception e) {
+            log.error("批量处理MQ消息失败，数量: {}", messages.size(), e);
+            results = new ConsumeResult[messages.size()];
+            Arrays.fill(results, ConsumeResult.FAILED);
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            handleResult(messages.get(i), results[i]);
         }
     }
 
+    @Override
+    public boolean[] consumeBatch(List<DBOperationMessage> messages) {
+        ConsumeResult[] results = consumeAll(messages);
+        boolean[] success = new boolean[results.length];
+        for (int i = 0; i < results.length; i++) {
+            success[i] = results[i] == ConsumeResult.SUCCESS;
+        }
+        return success;
+    }
+
+    /**
+     * 批量认领并执行消息
+     *
+     * @param messages 数据库操作消息
+     * @return 每条消息的消费结果，与消息顺序一致
+     */
+    protected ConsumeResult[] consumeAll(List<DBOperationMessage> messages) {
+        ConsumeResult[] results = new ConsumeResult[messages.size()];
+        Arrays.fill(results, ConsumeResult.FAILED);
+
+        // 批量认领消息，已处理的直接忽略，其他消费者处理中的延迟重新投递
+        List<String> messageIds = new ArrayList<>(messages.size());
+        for (DBOperationMessage message : messages) {
+            messageIds.add(message.getMessageId());
+        }
+        List<ClaimStatus> statuses = idempotentService.claimBatch(messageIds);
+
+        List<DBOperationMessage> pending = new ArrayList<>(messages.size());
+        List<Integer> pendingIndexes = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            DBOperationMessage message = messages.get(i);
+            ClaimStatus status = statuses.get(i);
+            if (status == ClaimStatus.DONE) {
+                log.info("消息已处理，忽略: {}", message.getMessageId());
+                metrics.recordIdempotentHit(status);
+                results[i] = ConsumeResult.SUCCESS;
+            } else if (status == ClaimStatus.IN_PROGRESS) {
+                log.info("消息正在由其他消费者处理: {}", message.getMessageId());
+                metrics.recordIdempotentHit(status);
+                results[i] = ConsumeResult.IN_PROGRESS;
+            } else {
+                pending.add(message);
+                pendingIndexes.add(i);
+            }
+        }
+        if (pending.isEmpty()) {
+            return results;
+        }
+
+        // 批量执行数据库操作
+        boolean[] applied;
+        long start = System.nanoTime();
+        try {
+            applied = batchApplyService.apply(pending);
+        } catch (Exception e) {
+            log.error("批量执行数据库操作失败，数量: {}", pending.size(), e);
+            applied = new boolean[pending.size()];
+        }
+        metrics.recordApply(System.nanoTime() - start, allApplied(applied));
+
+        // 成功的消息确认完成，失败的消息释放认领
+        List<String> confirmed = new ArrayList<>(pending.size());
+        List<String> released = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            DBOperationMessage message = pending.get(i);
+            message.setSuccess(applied[i]);
+            if (applied[i]) {
+                confirmed.add(message.getMessageId());
+                results[pendingIndexes.get(i)] = ConsumeResult.SUCCESS;
+            } else {
+                released.add(message.getMessageId());
+            }
+        }
+        if (!confirmed.isEmpty()) {
+            idempotentService.confirm(confirmed);
+        }
+        if (!released.isEmpty()) {
+            idempotentService.release(released);
+        }
+        log.info("批量执行数据库操作完成，数量: {}, 成功: {}", pending.size(), confirmed.size());
+        return results;
+    }
+
     @Override
     public boolean consumeMessage(DBOperationMessage message) {
-        // 幂等性检查
-        if (idempotentService.isProcessed(message.getMessageId())) {
+        return consume(message) == ConsumeResult.SUCCESS;
+    }
+
+    /**
+     * 认领并执行单条消息
+     *
+     * @param message 数据库操作消息
+     * @return 消费结果
+     */
+    protected ConsumeResult consume(DBOperationMessage message) {
+        // 原子认领消息，避免重复投递的消息被并发执行
+        ClaimStatus status = idempotentService.claim(message.getMessageId());
+        if (status == ClaimStatus.DONE) {
             log.info("消息已处理，忽略: {}", message);
-            return true;
+            metrics.recordIdempotentHit(status);
+            return ConsumeResult.SUCCESS;
+        }
+        if (status == ClaimStatus.IN_PROGRESS) {
+            log.info("消息正在由其他消费者处理，稍后重新投递: {}", message.getMessageId());
+            metrics.recordIdempotentHit(status);
+            return ConsumeResult.IN_PROGRESS;
         }
 
+        long start = System.nanoTime();
         try {
             // 执行数据库操作
             Object result = mapperInvokeService.invoke(
@@ -54,18 +266,33 @@ public abstract class AbstractMQConsumer implements MQConsumer {
                     message.getArgs(),
                     message.getUseSecondMaster()  // 使用消息中指定的数据源
             );
+            metrics.recordApply(System.nanoTime() - start, true);
 
-            // 标记消息已处理
-            idempotentService.markAsProcessed(message.getMessageId());
+            // 确认消息已处理
+            idempotentService.confirm(Collections.singletonList(message.getMessageId()));
             
             log.info("数据库操作执行成功: {}, 结果: {}", message, result);
             message.setSuccess(true);
-            return true;
+            return ConsumeResult.SUCCESS;
         } catch (Exception e) {
             log.error("数据库操作执行失败: {}", message, e);
+            metrics.recordApply(System.nanoTime() - start, false);
             message.setSuccess(false);
-            return false;
+            idempotentService.release(Collections.singletonList(message.getMessageId()));
+            return ConsumeResult.FAILED;
+        }
+    }
+
+    /**
+     * 一批消息是否全部执行成功
+     */
+    private boolean allApplied(boolean[] applied) {
+        for (boolean success : applied) {
+            if (!success) {
+                return false;
+            }
         }
+        return true;
     }
 
     /**
@@ -89,15 +316,28 @@ public abstract class AbstractMQConsumer implements MQConsumer {
             int delayLevel = message.getRetryCount();
             
             // 发送延迟消息进行重试
-            getMQProducer().sendDelayMessage(message, delayLevel);
+            sendRetry(message, delayLevel);
+            metrics.recordRetry(delayLevel);
             log.info("消息进入重试队列，当前重试次数: {}", message.getRetryCount());
         } else {
             log.error("消息重试次数已达上限，放弃处理: {}", message);
+            replicationLagService.onCompleted(message, false);
+            metrics.recordDropped();
             // 可以考虑将消息保存到数据库或发送到死信队列
             handleMaxRetriesExceeded(message);
         }
     }
     
+    /**
+     * 发送重试消息，发送失败时抛出异常，使当前消息不被确认而由MQ重新投递
+     */
+    private void sendRetry(DBOperationMessage message, int delayLevel) {
+        replicationLagService.onRetry(message);
+        if (!getMQProducer().sendDelayMessage(message, delayLevel)) {
+            throw new IllegalStateException("重试消息发送失败: " + message.getMessageId());
+        }
+    }
+
     /**
      * 获取最大重试次数
      * 
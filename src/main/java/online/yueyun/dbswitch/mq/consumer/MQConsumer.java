@@ -2,6 +2,8 @@ package online.yueyun.dbswitch.mq.consumer;
 
 import online.yueyun.dbswitch.message.DBOperationMessage;
 
+import java.util.List;
+
 /**
  * 消息队列消费者接口
  */
@@ -14,4 +16,12 @@ public interface MQConsumer {
      * @return 是否消费成功
      */
     boolean consumeMessage(DBOperationMessage message);
-} 
\ No newline at end of file
+
+    /**
+     * 批量消费消息
+     *
+     * @param messages 数据库操作消息
+     * @return 每条消息是否消费成功，与消息顺序一致
+     */
+    boolean[] consumeBatch(List<DBOperationMessage> messages);
+}
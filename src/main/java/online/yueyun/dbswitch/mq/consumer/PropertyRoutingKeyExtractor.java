@@ -0,0 +1,81 @@
+package online.yueyun.dbswitch.mq.consumer;
+
+import online.yueyun.dbswitch.aop.MappedStatementRouteRegistry;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 按写入的表和Mapper参数属性提取路由键
+ * 路由键为语句写入的表名加主键值，不同Mapper写同一行的消息得到相同的路由键；写入的表无法解析时以Mapper类名代替表名。
+ * 主键依次按配置的属性名从参数对象、ParamMap及其中的参数对象上查找，参数本身为字符串或数字时直接作为主键；
+ * 找不到主键时只按表名路由
+ */
+@Component
+public class PropertyRoutingKeyExtractor implements RoutingKeyExtractor {
+
+    @Autowired
+    private MappedStatementRouteRegistry routeRegistry;
+
+    @Value("${dbswitch.consumer.stripe.key-properties:id}")
+    private String[] keyProperties;
+
+    @Override
+    public String extract(DBOperationMessage message) {
+        Object[] args = message.getArgs();
+        Object parameter = args != null && args.length > 0 ? args[0] : null;
+        Object key = findKey(parameter);
+        if (key == null && parameter instanceof Map) {
+            for (Object value : ((Map<?, ?>) parameter).values()) {
+                key = findKey(value);
+                if (key != null) {
+                    break;
+                }
+            }
+        }
+        String table = tableOf(message, parameter);
+        return key == null ? table : table + ":" + key;
+    }
+
+    /**
+     * 语句写入的表，多张表时按名称排序后拼接
+     */
+    private String tableOf(DBOperationMessage message, Object parameter) {
+        Set<String> tables = routeRegistry.getWriteTables(
+                message.getMapperClassName() + "." + message.getMethodName(), parameter);
+        if (tables.isEmpty()) {
+            return message.getMapperClassName();
+        }
+        return tables.size() == 1 ? tables.iterator().next() : String.join(",", new TreeSet<>(tables));
+    }
+
+    private Object findKey(Object parameter) {
+        if (parameter == null) {
+            return null;
+        }
+        if (parameter instanceof CharSequence || parameter instanceof Number) {
+            return parameter;
+        }
+        if (parameter instanceof Collection || parameter.getClass().isArray()) {
+            return null;
+        }
+        MetaObject metaObject = SystemMetaObject.forObject(parameter);
+        for (String property : keyProperties) {
+            if (parameter instanceof Map ? ((Map<?, ?>) parameter).containsKey(property) : metaObject.hasGetter(property)) {
+                Object value = metaObject.getValue(property);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+}
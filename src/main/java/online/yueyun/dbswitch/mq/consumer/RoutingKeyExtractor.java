@@ -0,0 +1,18 @@
+package online.yueyun.dbswitch.mq.consumer;
+
+import online.yueyun.dbswitch.message.DBOperationMessage;
+
+/**
+ * 消息路由键提取器
+ * 路由键相同的消息在同一个分片上按顺序执行
+ */
+public interface RoutingKeyExtractor {
+
+    /**
+     * 提取路由键
+     *
+     * @param message 数据库操作消息
+     * @return 路由键，通常为表和主键的组合
+     */
+    String extract(DBOperationMessage message);
+}
@@ -0,0 +1,237 @@
+package online.yueyun.dbswitch.mq.consumer;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.enums.ConsumeResult;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 按路由键分片的消息分发器，只用于批量消费
+ * 每个分片是一个单线程和一个有界队列，一批消息按路由键拆分到各分片，路由键相同的消息在本批之内按批内顺序执行，
+ * 不同路由键的消息在多个分片上并行执行；分片队列满时阻塞分发线程。多个监听线程同时分发时，
+ * 不同批次的任务在分片上的先后取决于入队时机而不是消息队列中的顺序，跨批次保序需要监听容器顺序消费或使用单个消费线程。
+ * 监听线程等待本批全部分片执行完成后才确认消息；停止时未执行的任务以异常结束，消息由MQ重新投递
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.consumer.stripe.enabled", havingValue = "true")
+public class StripedMessageDispatcher {
+
+    @Autowired
+    private RoutingKeyExtractor routingKeyExtractor;
+
+    @Value("${dbswitch.consumer.stripe.count:0}")
+    private int stripeCount;
+
+    @Value("${dbswitch.consumer.stripe.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${dbswitch.consumer.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    private Stripe[] stripes;
+
+    /**
+     * 启动分片线程，分片数未配置时使用CPU核数
+     */
+    @PostConstruct
+    public void start() {
+        if (!batchEnabled) {
+            throw new IllegalStateException("消息分片分发只用于批量消费，请开启dbswitch.consumer.batch.enabled");
+        }
+        int count = stripeCount > 0 ? stripeCount : Runtime.getRuntime().availableProcessors();
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(i, queueCapacity);
+        }
+        log.info("消息分片分发已启用，分片数: {}, 队列容量: {}", count, queueCapacity);
+    }
+
+    /**
+     * 停止分片线程，停止前执行完队列中剩余的任务
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (Stripe stripe : stripes) {
+            stripe.stop();
+        }
+    }
+
+    /**
+     * 按分片拆分一批消息并行处理，每个分片内保持消息原有顺序，等待全部分片处理完成
+     *
+     * @param messages 数据库操作消息
+     * @param handler 处理一组消息并返回每条消息的消费结果
+     * @return 每条消息的消费结果，与消息顺序一致，分片处理异常的消息为失败
+     */
+    public ConsumeResult[] dispatchBatch(List<DBOperationMessage> messages,
+                                         Function<List<DBOperationMessage>, ConsumeResult[]> handler) {
+        List<List<Integer>> partitions = new ArrayList<>(stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            partitions.get(stripeOf(messages.get(i))).add(i);
+        }
+
+        ConsumeResult[] results = new ConsumeResult[messages.size()];
+        Arrays.fill(results, ConsumeResult.FAILED);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            List<Integer> indexes = partitions.get(stripe);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            futures.add(stripes[stripe].put(() -> {
+                List<DBOperationMessage> partition = new ArrayList<>(indexes.size());
+                for (Integer index : indexes) {
+                    partition.add(messages.get(index));
+                }
+                ConsumeResult[] partitionResults = handler.apply(partition);
+                for (int i = 0; i < indexes.size(); i++) {
+                    results[indexes.get(i)] = partitionResults[i];
+                }
+            }));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (Exception e) {
+                log.error("分片处理消息失败", e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 消息所在的分片
+     */
+    public int stripeOf(DBOperationMessage message) {
+        String key = routingKeyExtractor.extract(message);
+        int hash = key == null ? 0 : key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+    }
+
+    /**
+     * 分片数
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * 各分片队列中等待执行的任务数
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            depths[i] = stripes[i].queue.size();
+        }
+        return depths;
+    }
+
+    /**
+     * 分片任务及其完成信号
+     */
+    private static final class StripeTask {
+
+        private final Runnable body;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        StripeTask(Runnable body) {
+            this.body = body;
+        }
+
+        void run() {
+            try {
+                body.run();
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        void cancel() {
+            future.completeExceptionally(new IllegalStateException("消息分片已停止，任务未执行"));
+        }
+    }
+
+    /**
+     * 单个分片：单线程按顺序执行有界队列中的任务
+     */
+    private static final class Stripe implements Runnable {
+
+        private final BlockingQueue<StripeTask> queue;
+
+        private final Thread worker;
+
+        private volatile boolean running = true;
+
+        Stripe(int index, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.worker = new Thread(this, "dbswitch-consumer-stripe-" + index);
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        CompletableFuture<Void> put(Runnable body) {
+            if (!running) {
+                throw new IllegalStateException("消息分片已停止");
+            }
+            StripeTask task = new StripeTask(body);
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("分发消息被中断", e);
+            }
+            return task.future;
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                try {
+                    StripeTask task = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (task != null) {
+                        task.run();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 停止分片，超时后仍未执行的任务以异常结束，等待这些任务的监听线程不会确认消息
+         */
+        void stop() {
+            running = false;
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StripeTask task;
+            while ((task = queue.poll()) != null) {
+                task.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package online.yueyun.dbswitch.mq.consumer;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.datasource.DynamicDataSource;
+import online.yueyun.dbswitch.enums.ConsumeResult;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 虚拟线程消息执行器
+ * 运行在Java 21及以上版本时，监听线程收到的一批消息逐条提交到各自的虚拟线程并发处理，全部完成后才确认整批消息，
+ * 同时处理的消息数不再受监听线程数限制；数据源路由使用的ThreadLocal属于各自的虚拟线程，任务结束时清除，不会在消息之间泄漏。
+ * 同时执行的消息数按目标库分别由信号量限制，默认等于对应库的连接池大小，信号量在监听线程中获取，满载时对消息队列形成背压。
+ * 只用于批量消费，且不与分片分发同时开启
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.consumer.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadMessageExecutor {
+
+    @Autowired
+    @Qualifier("masterDataSource")
+    private DataSource masterDataSource;
+
+    @Autowired
+    @Qualifier("slaveDataSource")
+    private DataSource slaveDataSource;
+
+    @Value("${dbswitch.consumer.virtual-threads.max-concurrency:0}")
+    private int maxConcurrency;
+
+    @Value("${dbswitch.consumer.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${dbswitch.consumer.stripe.enabled:false}")
+    private boolean stripeEnabled;
+
+    private ExecutorService executor;
+
+    /**
+     * 写主库（useSecondMaster）的消息的并发许可
+     */
+    private Semaphore masterPermits;
+
+    /**
+     * 写从库的消息的并发许可
+     */
+    private Semaphore slavePermits;
+
+    private int masterPermitCount;
+
+    private int slavePermitCount;
+
+    /**
+     * 创建虚拟线程执行器，运行时不支持虚拟线程时不启用，消息在监听线程中处理
+     */
+    @PostConstruct
+    public void start() {
+        if (!batchEnabled) {
+            throw new IllegalStateException("虚拟线程消息处理只用于批量消费，请开启dbswitch.consumer.batch.enabled");
+        }
+        if (stripeEnabled) {
+            throw new IllegalStateException("虚拟线程消息处理不能与分片分发同时开启");
+        }
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("当前运行时不支持虚拟线程（需要Java 21及以上），消息在监听线程中处理，当前版本: {}",
+                    Runtime.version());
+            return;
+        }
+        masterPermitCount = maxConcurrency > 0 ? maxConcurrency : poolSize(masterDataSource);
+        slavePermitCount = maxConcurrency > 0 ? maxConcurrency : poolSize(slaveDataSource);
+        masterPermits = new Semaphore(masterPermitCount);
+        slavePermits = new Semaphore(slavePermitCount);
+        log.info("虚拟线程消息处理已启用，主库最大并发数: {}, 从库最大并发数: {}", masterPermitCount, slavePermitCount);
+    }
+
+    /**
+     * 停止接收任务并等待执行中的消息处理完成
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("虚拟线程消息执行器关闭超时，未完成的消息数: {}", getInFlightCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 是否已启用虚拟线程
+     */
+    public boolean isAvailable() {
+        return executor != null;
+    }
+
+    /**
+     * 一批消息逐条在虚拟线程中并发处理，等待全部完成后返回；消息目标库的并发数已满时阻塞调用线程
+     *
+     * @param messages 数据库操作消息
+     * @param handler 处理单条消息并返回消费结果
+     * @return 每条消息的消费结果，与消息顺序一致，处理异常的消息为失败
+     */
+    public ConsumeResult[] executeBatch(List<DBOperationMessage> messages,
+                                        Function<DBOperationMessage, ConsumeResult> handler) {
+        List<CompletableFuture<ConsumeResult>> futures = new ArrayList<>(messages.size());
+        for (DBOperationMessage message : messages) {
+            try {
+                futures.add(execute(message, handler));
+            } catch (RuntimeException e) {
+                log.error("提交消息处理任务失败: {}", message.getMessageId(), e);
+                futures.add(CompletableFuture.completedFuture(ConsumeResult.FAILED));
+            }
+        }
+        ConsumeResult[] results = new ConsumeResult[messages.size()];
+        for (int i = 0; i < results.length; i++) {
+            try {
+                results[i] = futures.get(i).join();
+            } catch (Exception e) {
+                log.error("虚拟线程处理消息失败: {}", messages.get(i).getMessageId(), e);
+                results[i] = ConsumeResult.FAILED;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 在虚拟线程中执行单条消息的处理任务，未启用虚拟线程时在调用线程中执行
+     */
+    private CompletableFuture<ConsumeResult> execute(DBOperationMessage message,
+                                                     Function<DBOperationMessage, ConsumeResult> handler) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(handler.apply(message));
+        }
+        CompletableFuture<ConsumeResult> future = new CompletableFuture<>();
+        Semaphore permits = Boolean.TRUE.equals(message.getUseSecondMaster()) ? masterPermits : slavePermits;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待消息处理并发许可被中断", e);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(handler.apply(message));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    DynamicDataSource.clearDataSource();
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * 执行中的消息数
+     */
+    public int getInFlightCount() {
+        if (executor == null) {
+            return 0;
+        }
+        return masterPermitCount - masterPermits.availablePermits()
+                + slavePermitCount - slavePermits.availablePermits();
+    }
+
+    /**
+     * 连接池大小，非Hikari连接池时使用Hikari默认值
+     */
+    private int poolSize(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource hikariDataSource) {
+            return hikariDataSource.getMaximumPoolSize();
+        }
+        return 10;
+    }
+}
@@ -1,9 +1,13 @@
 package online.yueyun.dbswitch.mq.consumer.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.codec.MessageCodecException;
 import online.yueyun.dbswitch.message.DBOperationMessage;
 import online.yueyun.dbswitch.mq.consumer.AbstractMQConsumer;
 import online.yueyun.dbswitch.mq.producer.MQProducer;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +16,9 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * RabbitMQ消费者实现
  */
@@ -25,14 +32,57 @@ public class RabbitMQConsumer extends AbstractMQConsumer {
     @Qualifier("rabbitMQProducer")
     private MQProducer mqProducer;
 
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
     /**
      * RabbitMQ消息监听处理
+     * 消息头中带有编解码器标识时按对应编解码器解码，否则使用默认的消息转换器；
+     * 无法解码的消息拒绝且不重新入队（队列配置了死信交换机时进入死信队列），避免反复投递
      */
-    @RabbitListener(queues = "${dbswitch.rabbitmq.queue:dbswitch-queue}")
-    public void onMessage(DBOperationMessage message) {
+    @RabbitListener(queues = "${dbswitch.rabbitmq.queue:dbswitch-queue}",
+            autoStartup = "#{!${dbswitch.consumer.batch.enabled:false}}")
+    public void onMessage(Message amqpMessage) {
+        DBOperationMessage message;
+        try {
+            message = toMessage(amqpMessage);
+        } catch (MessageCodecException e) {
+            metrics.recordDropped();
+            throw new AmqpRejectAndDontRequeueException("消息解码失败", e);
+        }
         processMessage(message);
     }
 
+    /**
+     * RabbitMQ批量消息监听处理，仅在开启批量消费时启动，无法解码的消息记录日志后丢弃，不影响同批的其他消息
+     */
+    @RabbitListener(queues = "${dbswitch.rabbitmq.queue:dbswitch-queue}",
+            containerFactory = "dbswitchBatchContainerFactory",
+            autoStartup = "${dbswitch.consumer.batch.enabled:false}")
+    public void onMessages(List<Message> amqpMessages) {
+        List<DBOperationMessage> messages = new ArrayList<>(amqpMessages.size());
+        for (Message amqpMessage : amqpMessages) {
+            try {
+                messages.add(toMessage(amqpMessage));
+            } catch (MessageCodecException e) {
+                log.error("消息解码失败，已丢弃: {}", amqpMessage.getMessageProperties(), e);
+                metrics.recordDropped();
+            }
+        }
+        processBatch(messages);
+    }
+
+    /**
+     * 解码消息
+     */
+    private DBOperationMessage toMessage(Message amqpMessage) {
+        Object codecName = amqpMessage.getMessageProperties().getHeader(MessageCodec.CODEC_HEADER);
+        if (codecName != null) {
+            return decode(codecName.toString(), amqpMessage.getBody());
+        }
+        return (DBOperationMessage) rabbitTemplate.getMessageConverter().fromMessage(amqpMessage);
+    }
+
     /**
      * 获取RabbitMQ生产者
      */
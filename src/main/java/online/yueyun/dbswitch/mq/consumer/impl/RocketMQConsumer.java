@@ -1,18 +1,30 @@
 package online.yueyun.dbswitch.mq.consumer.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.codec.MessageCodecException;
 import online.yueyun.dbswitch.message.DBOperationMessage;
 import online.yueyun.dbswitch.mq.consumer.AbstractMQConsumer;
 import online.yueyun.dbswitch.mq.producer.MQProducer;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.apache.rocketmq.spring.core.RocketMQPushConsumerLifecycleListener;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * RocketMQ消费者实现
  */
@@ -24,18 +36,68 @@ import org.springframework.stereotype.Component;
         topic = "${dbswitch.rocketmq.topic:dbswitch-topic}",
         consumerGroup = "${dbswitch.rocketmq.consumer-group:dbswitch-consumer-group}"
 )
-public class RocketMQConsumer extends AbstractMQConsumer implements RocketMQListener<DBOperationMessage> {
+public class RocketMQConsumer extends AbstractMQConsumer implements RocketMQListener<MessageExt>,
+        RocketMQPushConsumerLifecycleListener {
 
     @Autowired
     @Qualifier("rocketMQProducer")
     private MQProducer mqProducer;
 
+    @Autowired
+    private RocketMQTemplate rocketMQTemplate;
+
+    @Value("${dbswitch.consumer.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${dbswitch.consumer.batch.size:64}")
+    private int batchSize;
+
+    /**
+     * 开启批量消费时替换容器注册的逐条监听器
+     */
+    @Override
+    public void prepareStart(DefaultMQPushConsumer consumer) {
+        if (!batchEnabled) {
+            return;
+        }
+        consumer.setConsumeMessageBatchMaxSize(batchSize);
+        consumer.setPullBatchSize(Math.max(consumer.getPullBatchSize(), batchSize));
+        consumer.registerMessageListener((MessageListenerConcurrently) (messageExts, context) -> {
+            List<DBOperationMessage> messages = new ArrayList<>(messageExts.size());
+            for (MessageExt messageExt : messageExts) {
+                try {
+                    messages.add(toMessage(messageExt));
+                } catch (MessageCodecException e) {
+                    // 无法解码的消息不影响同批的其他消息
+                    log.error("消息解码失败，已丢弃: {}", messageExt.getMsgId(), e);
+                    metrics.recordDropped();
+                }
+            }
+            processBatch(messages);
+            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+        });
+        log.info("RocketMQ批量消费已开启，批大小: {}", batchSize);
+    }
+
     /**
      * RocketMQ消息监听处理
+     * 消息属性中带有编解码器标识时按对应编解码器解码，否则使用默认的消息转换器
      */
     @Override
-    public void onMessage(DBOperationMessage message) {
-        processMessage(message);
+    public void onMessage(MessageExt messageExt) {
+        processMessage(toMessage(messageExt));
+    }
+
+    /**
+     * 解码消息
+     */
+    private DBOperationMessage toMessage(MessageExt messageExt) {
+        String codecName = messageExt.getUserProperty(MessageCodec.CODEC_HEADER);
+        if (codecName != null) {
+            return decode(codecName, messageExt.getBody());
+        }
+        return (DBOperationMessage) rocketMQTemplate.getMessageConverter()
+                .fromMessage(MessageBuilder.withPayload(messageExt.getBody()).build(), DBOperationMessage.class);
     }
 
     /**
@@ -1,7 +1,10 @@
 package online.yueyun.dbswitch.mq.producer;
 
+import online.yueyun.dbswitch.codec.MessageCodec;
 import online.yueyun.dbswitch.message.DBOperationMessage;
 
+import java.util.List;
+
 /**
  * 消息队列生产者接口
  */
@@ -23,4 +26,40 @@ public interface MQProducer {
      * @return 是否发送成功
      */
     boolean sendDelayMessage(DBOperationMessage message, int delayLevel);
-} 
\ No newline at end of file
+
+    /**
+     * 批量发送消息
+     * 默认逐条发送，具体实现可使用消息队列的批量发送能力
+     *
+     * @param messages 数据库操作消息列表
+     * @return 是否全部发送成功
+     */
+    default boolean sendBatch(List<DBOperationMessage> messages) {
+        boolean success = true;
+        for (DBOperationMessage message : messages) {
+            success &= sendMessage(message);
+        }
+        return success;
+    }
+
+    /**
+     * 是否支持直接发送{@link MessageCodec}编码后的消息
+     * 支持时调用方可以把已编码的消息交给{@link #sendEncodedBatch(List)}，避免解码后再次编码
+     *
+     * @return 是否支持
+     */
+    default boolean supportsEncoded() {
+        return false;
+    }
+
+    /**
+     * 批量发送{@link MessageCodec}编码后的消息，编码结果直接作为消息体
+     * 仅在{@link #supportsEncoded()}返回true时调用
+     *
+     * @param messages 编码后的消息列表
+     * @return 是否全部发送成功
+     */
+    default boolean sendEncodedBatch(List<byte[]> messages) {
+        throw new UnsupportedOperationException("不支持发送编码后的消息");
+    }
+}
@@ -0,0 +1,74 @@
+package online.yueyun.dbswitch.mq.producer;
+
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.enums.MQType;
+import online.yueyun.dbswitch.journal.JournalingMQProducer;
+import online.yueyun.dbswitch.journal.MessageJournal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * 消息队列生产者选择器
+ * 根据当前消息队列类型选择对应的生产者
+ */
+@Slf4j
+@Component
+public class MQProducerSelector {
+
+    @Autowired(required = false)
+    private MQType mqType;
+
+    @Autowired(required = false)
+    @Qualifier("rocketMQProducer")
+    private MQProducer rocketMQProducer;
+
+    @Autowired(required = false)
+    @Qualifier("rabbitMQProducer")
+    private MQProducer rabbitMQProducer;
+
+    @Autowired(required = false)
+    private MessageJournal messageJournal;
+
+    private volatile MQProducer dualWriteProducer;
+
+    /**
+     * 获取当前消息队列类型
+     *
+     * @return 消息队列类型，未配置时返回null
+     */
+    public MQType getMqType() {
+        return mqType;
+    }
+
+    /**
+     * 获取当前消息队列类型对应的生产者
+     *
+     * @return 消息队列生产者，找不到时返回null
+     */
+    public MQProducer getProducer() {
+        if (mqType == MQType.ROCKET_MQ) {
+            return rocketMQProducer;
+        } else if (mqType == MQType.RABBIT_MQ) {
+            return rabbitMQProducer;
+        }
+        return null;
+    }
+
+    /**
+     * 获取发送双写消息的生产者
+     * 开启本地日志时，返回发送失败后写入本地日志的生产者
+     *
+     * @return 消息队列生产者，找不到时返回null
+     */
+    public MQProducer getDualWriteProducer() {
+        MQProducer producer = getProducer();
+        if (producer == null || messageJournal == null) {
+            return producer;
+        }
+        if (dualWriteProducer == null) {
+            dualWriteProducer = new JournalingMQProducer(producer, messageJournal);
+        }
+        return dualWriteProducer;
+    }
+}
@@ -0,0 +1,378 @@
+package online.yueyun.dbswitch.mq.producer.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.codec.MessageCodecException;
+import online.yueyun.dbswitch.enums.OverflowPolicy;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.mq.producer.MQProducer;
+import online.yueyun.dbswitch.util.RingBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步批量发送的消息队列生产者
+ * 调用线程把消息编码后写入有界无锁环形缓冲区，由后台刷新线程批量发送到实际的生产者；
+ * 入队时即编码，调用方之后修改参数对象不影响已入队的消息；实际的生产者支持时直接发送编码结果，
+ * 否则发送前解码。发送失败的消息保留在批次中按退避重试，
+ * 后续消息排在其后；延迟消息（消费重试）和停止后的消息直接交给实际的生产者发送
+ */
+@Slf4j
+public class AsyncBatchingMQProducer implements MQProducer {
+
+    /**
+     * 空闲时刷新线程的最长休眠时间
+     */
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 发送失败后重试的初始和最大退避时间
+     */
+    private static final long MIN_RETRY_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long MAX_RETRY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final MQProducer delegate;
+
+    private final MessageCodec messageCodec;
+
+    /**
+     * 缓冲区保存入队时编码的消息
+     */
+    private final RingBuffer<byte[]> ringBuffer;
+
+    private final int batchSize;
+
+    private final long lingerNanos;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final Thread[] flushers;
+
+    private volatile boolean running;
+
+    /**
+     * 实际的生产者能否直接发送编码后的消息
+     */
+    private volatile boolean sendEncoded;
+
+    private final AtomicLong flushedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong retryCount = new AtomicLong();
+
+    private volatile long lastFlushLatencyNanos;
+
+    private volatile long maxFlushLatencyNanos;
+
+    /**
+     * @param delegate 实际发送消息的生产者
+     * @param messageCodec 入队时编码消息的编解码器
+     * @param capacity 缓冲区容量
+     * @param batchSize 单批最大消息数
+     * @param lingerMs 凑批最长等待时间
+     * @param overflowPolicy 缓冲区满时的处理策略
+     * @param flusherThreads 刷新线程数
+     */
+    public AsyncBatchingMQProducer(MQProducer delegate, MessageCodec messageCodec, int capacity, int batchSize,
+                                   long lingerMs, OverflowPolicy overflowPolicy, int flusherThreads) {
+        this.delegate = delegate;
+        this.messageCodec = messageCodec;
+        this.ringBuffer = new RingBuffer<>(capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMs));
+        this.overflowPolicy = overflowPolicy;
+        this.flushers = new Thread[Math.max(1, flusherThreads)];
+    }
+
+    /**
+     * 启动刷新线程
+     */
+    public void start() {
+        sendEncoded = delegate.supportsEncoded();
+        running = true;
+        for (int i = 0; i < flushers.length; i++) {
+            Thread flusher = new Thread(this::flushLoop, "dbswitch-mq-flusher-" + i);
+            flusher.setDaemon(true);
+            flusher.start();
+            flushers[i] = flusher;
+        }
+        log.info("异步批量发送已启动，缓冲区容量: {}, 批大小: {}, 等待时间: {}ms, 溢出策略: {}, 刷新线程: {}, 直接发送编码结果: {}",
+                ringBuffer.capacity(), batchSize, TimeUnit.NANOSECONDS.toMillis(lingerNanos),
+                overflowPolicy, flushers.length, sendEncoded);
+    }
+
+    /**
+     * 停止刷新线程，停止前发送完缓冲区中剩余的消息；刷新线程未能在时限内退出时由当前线程发送剩余消息
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread flusher : flushers) {
+            if (flusher == null) {
+                continue;
+            }
+            LockSupport.unpark(flusher);
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drainRemaining();
+    }
+
+    @Override
+    public boolean sendMessage(DBOperationMessage message) {
+        if (!running) {
+            return delegate.sendMessage(message);
+        }
+        if (message.getMessageId() == null) {
+            // 编码结果可能直接作为消息体发送，消息ID需在编码前生成
+            message.setMessageId(UUID.randomUUID().toString());
+        }
+        byte[] encoded;
+        try {
+            encoded = messageCodec.encode(message);
+        } catch (MessageCodecException e) {
+            log.error("编码双写消息失败: {}", message.getMessageId(), e);
+            return false;
+        }
+        if (ringBuffer.offer(encoded)) {
+            if (!running) {
+                // 入队与停止并发时，停止线程可能已经发送完剩余消息
+                drainRemaining();
+            }
+            return true;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                while (!ringBuffer.offer(encoded)) {
+                    if (!running) {
+                        return delegate.sendMessage(message);
+                    }
+                    LockSupport.parkNanos(MAX_IDLE_PARK_NANOS);
+                }
+                return true;
+            case CALLER_RUNS:
+                return delegate.sendMessage(message);
+            case DROP:
+            default:
+                droppedCount.incrementAndGet();
+                log.warn("异步发送缓冲区已满，丢弃消息: {}", message.getMessageId());
+                return false;
+        }
+    }
+
+    @Override
+    public boolean sendDelayMessage(DBOperationMessage message, int delayLevel) {
+        return delegate.sendDelayMessage(message, delayLevel);
+    }
+
+    @Override
+    public boolean sendBatch(List<DBOperationMessage> messages) {
+        boolean success = true;
+        for (DBOperationMessage message : messages) {
+            success &= sendMessage(message);
+        }
+        return success;
+    }
+
+    /**
+     * 刷新线程主循环：凑满一批或等待超时后发送
+     */
+    private void flushLoop() {
+        List<byte[]> batch = new ArrayList<>(batchSize);
+        long deadline = 0;
+        long retryBackoffNanos = 0;
+        while (running || !ringBuffer.isEmpty() || !batch.isEmpty()) {
+            if (batch.size() < batchSize) {
+                ringBuffer.drainTo(batch, batchSize - batch.size());
+            }
+            if (batch.isEmpty()) {
+                if (running) {
+                    LockSupport.parkNanos(Math.min(MAX_IDLE_PARK_NANOS, Math.max(lingerNanos, 1)));
+                }
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (deadline == 0) {
+                deadline = now + lingerNanos;
+            }
+            if (batch.size() < batchSize && now < deadline && running) {
+                LockSupport.parkNanos(Math.min(MAX_IDLE_PARK_NANOS, deadline - now));
+                continue;
+            }
+
+            List<byte[]> failed = flush(batch);
+            batch.clear();
+            deadline = 0;
+            if (failed.isEmpty()) {
+                retryBackoffNanos = 0;
+                continue;
+            }
+            if (!running) {
+                giveUp(failed);
+                continue;
+            }
+            // 失败的消息留在批次开头，退避后与新消息一起重试
+            batch.addAll(failed);
+            retryCount.addAndGet(failed.size());
+            retryBackoffNanos = retryBackoffNanos == 0
+                    ? MIN_RETRY_BACKOFF_NANOS : Math.min(retryBackoffNanos * 2, MAX_RETRY_BACKOFF_NANOS);
+            LockSupport.parkNanos(retryBackoffNanos);
+        }
+    }
+
+    /**
+     * 发送一批消息，批量发送失败时逐条重试
+     *
+     * @return 未发送成功的消息，第一条失败的消息及其后的消息都不再发送，以保持顺序
+     */
+    private List<byte[]> flush(List<byte[]> batch) {
+        long start = System.nanoTime();
+        int sent = 0;
+        try {
+            // 实际的生产者不能直接发送编码结果时解码后发送，解码失败的消息从批次中移除
+            List<DBOperationMessage> messages = sendEncoded ? null : decode(batch);
+            if (sendBatchQuietly(batch, messages)) {
+                sent = batch.size();
+                return Collections.emptyList();
+            }
+            log.warn("批量发送失败，逐条重试，数量: {}", batch.size());
+            while (sent < batch.size() && sendQuietly(batch, messages, sent)) {
+                sent++;
+            }
+            if (sent < batch.size()) {
+                log.error("发送双写消息失败，稍后重试，数量: {}", batch.size() - sent);
+            }
+            return new ArrayList<>(batch.subList(sent, batch.size()));
+        } finally {
+            long latency = System.nanoTime() - start;
+            lastFlushLatencyNanos = latency;
+            if (latency > maxFlushLatencyNanos) {
+                maxFlushLatencyNanos = latency;
+            }
+            flushedCount.addAndGet(sent);
+        }
+    }
+
+    private boolean sendBatchQuietly(List<byte[]> batch, List<DBOperationMessage> messages) {
+        try {
+            return messages == null ? delegate.sendEncodedBatch(batch) : delegate.sendBatch(messages);
+        } catch (Exception e) {
+            log.error("批量发送双写消息异常，数量: {}", batch.size(), e);
+            return false;
+        }
+    }
+
+    private boolean sendQuietly(List<byte[]> batch, List<DBOperationMessage> messages, int index) {
+        try {
+            return messages == null
+                    ? delegate.sendEncodedBatch(Collections.singletonList(batch.get(index)))
+                    : delegate.sendMessage(messages.get(index));
+        } catch (Exception e) {
+            log.error("发送双写消息异常", e);
+            return false;
+        }
+    }
+
+    /**
+     * 解码入队时编码的消息，解码失败的消息从批次中移除并记为丢弃
+     */
+    private List<DBOperationMessage> decode(List<byte[]> batch) {
+        List<DBOperationMessage> messages = new ArrayList<>(batch.size());
+        Iterator<byte[]> iterator = batch.iterator();
+        while (iterator.hasNext()) {
+            try {
+                messages.add(messageCodec.decode(iterator.next()));
+            } catch (MessageCodecException e) {
+                iterator.remove();
+                droppedCount.incrementAndGet();
+                log.error("解码已入队的双写消息失败，丢弃", e);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 停止后仍发送失败的消息记为丢弃
+     */
+    private void giveUp(List<byte[]> failed) {
+        droppedCount.addAndGet(failed.size());
+        log.error("异步批量发送已停止，放弃发送失败的双写消息，数量: {}", failed.size());
+    }
+
+    /**
+     * 停止后由当前线程同步发送缓冲区中剩余的消息
+     */
+    private synchronized void drainRemaining() {
+        List<byte[]> batch = new ArrayList<>(batchSize);
+        while (ringBuffer.drainTo(batch, batchSize) > 0) {
+            log.warn("异步批量发送已停止，同步发送剩余消息，数量: {}", batch.size());
+            List<byte[]> failed = flush(batch);
+            if (!failed.isEmpty()) {
+                giveUp(failed);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 缓冲区中待发送的消息数
+     */
+    public int getQueueDepth() {
+        return ringBuffer.size();
+    }
+
+    /**
+     * 缓冲区容量
+     */
+    public int getQueueCapacity() {
+        return ringBuffer.capacity();
+    }
+
+    /**
+     * 最近一次批量发送耗时（纳秒）
+     */
+    public long getLastFlushLatencyNanos() {
+        return lastFlushLatencyNanos;
+    }
+
+    /**
+     * 批量发送最大耗时（纳秒）
+     */
+    public long getMaxFlushLatencyNanos() {
+        return maxFlushLatencyNanos;
+    }
+
+    /**
+     * 已发送的消息数
+     */
+    public long getFlushedCount() {
+        return flushedCount.get();
+    }
+
+    /**
+     * 发送失败后重试的消息数
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * 因缓冲区满、解码失败或停止后仍发送失败被丢弃的消息数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
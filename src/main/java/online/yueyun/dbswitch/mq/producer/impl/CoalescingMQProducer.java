@@ -0,0 +1,344 @@
+package online.yueyun.dbswitch.mq.producer.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.codec.MessageCodecException;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.mq.consumer.RoutingKeyExtractor;
+import online.yueyun.dbswitch.mq.producer.MQProducer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点行写入合并的消息队列生产者
+ * 配置的语句按行键（表 + 主键）在时间窗口内暂存：窗口内同一行的整行更新只保留最后一条，
+ * 插入后的整行更新合并为一条使用最新参数的插入；同一行的其他消息发送前先发送暂存的消息，以保持行内顺序。
+ * 暂存状态只在行键锁内读写，发送在锁外进行：发送中的暂存消息留在暂存表中作为该行的顺序令牌，
+ * 同一行的后续消息等待其发送完成后再继续，到期发送与新消息发送不会越序。
+ * 不参与合并的语句在没有暂存消息时直接发送，不提取行键也不加锁。暂存的消息是入队时编码后的副本，
+ * 调用方之后修改参数对象不影响发送的内容。暂存成功即返回true，到期发送失败的消息继续暂存到下一个窗口重试
+ */
+@Slf4j
+public class CoalescingMQProducer implements MQProducer {
+
+    private static final int LOCK_STRIPES = 256;
+
+    private final MQProducer delegate;
+
+    private final MessageCodec messageCodec;
+
+    private final RoutingKeyExtractor routingKeyExtractor;
+
+    /**
+     * 可合并的整行更新语句
+     */
+    private final Set<String> fullRowUpdates;
+
+    /**
+     * 可与后续整行更新合并的插入语句
+     */
+    private final Set<String> inserts;
+
+    private final long windowNanos;
+
+    private final ConcurrentMap<String, Pending> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 行键锁，按行键哈希分段
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private ScheduledExecutorService flushExecutor;
+
+    /**
+     * @param delegate 实际发送消息的生产者
+     * @param messageCodec 暂存消息时用于复制消息的编解码器
+     * @param routingKeyExtractor 行键提取器
+     * @param fullRowUpdates 可合并的整行更新语句ID（Mapper类名.方法名）
+     * @param inserts 可与后续整行更新合并的插入语句ID
+     * @param windowMs 合并窗口
+     */
+    public CoalescingMQProducer(MQProducer delegate, MessageCodec messageCodec, RoutingKeyExtractor routingKeyExtractor,
+                                Set<String> fullRowUpdates, Set<String> inserts, long windowMs) {
+        this.delegate = delegate;
+        this.messageCodec = messageCodec;
+        this.routingKeyExtractor = routingKeyExtractor;
+        this.fullRowUpdates = fullRowUpdates;
+        this.inserts = inserts;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 启动窗口到期检查
+     */
+    public void start() {
+        long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(windowNanos) / 2);
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dbswitch-coalesce-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+        log.info("热点行写入合并已启用，窗口: {}ms, 整行更新语句: {}, 插入语句: {}",
+                TimeUnit.NANOSECONDS.toMillis(windowNanos), fullRowUpdates, inserts);
+    }
+
+    /**
+     * 停止检查并发送全部暂存的消息
+     */
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+        }
+        for (String key : new ArrayList<>(pending.keySet())) {
+            if (!flush(key, false)) {
+                log.error("停止时发送暂存的双写消息失败，消息丢失: {}", key);
+            }
+        }
+    }
+
+    @Override
+    public boolean sendMessage(DBOperationMessage message) {
+        String statementId = message.getMapperClassName() + "." + message.getMethodName();
+        boolean update = fullRowUpdates.contains(statementId);
+        boolean insert = inserts.contains(statementId);
+        if (!update && !insert && pending.isEmpty()) {
+            // 不参与合并的语句，没有暂存的消息时直接发送
+            return delegate.sendMessage(message);
+        }
+
+        String key = routingKeyExtractor.extract(message);
+        if (key == null || key.indexOf(':') <= 0) {
+            // 提取不到主键时行键不含主键值，不会暂存也不能合并
+            return delegate.sendMessage(message);
+        }
+        DBOperationMessage snapshot = update || insert ? snapshot(message) : null;
+        if (snapshot == null) {
+            // 不参与合并的消息，先发送同一行暂存的消息，暂存的消息发送失败时不发送当前消息，以免越过暂存的消息
+            return flush(key, false) && delegate.sendMessage(message);
+        }
+        return stash(key, snapshot, update);
+    }
+
+    @Override
+    public boolean sendDelayMessage(DBOperationMessage message, int delayLevel) {
+        return delegate.sendDelayMessage(message, delayLevel);
+    }
+
+    @Override
+    public boolean sendBatch(List<DBOperationMessage> messages) {
+        boolean success = true;
+        for (DBOperationMessage message : messages) {
+            success &= sendMessage(message);
+        }
+        return success;
+    }
+
+    /**
+     * 编码再解码得到消息副本，编码失败时返回null，消息不参与合并
+     */
+    private DBOperationMessage snapshot(DBOperationMessage message) {
+        try {
+            return messageCodec.decode(messageCodec.encode(message));
+        } catch (MessageCodecException e) {
+            log.warn("复制双写消息失败，不参与合并: {}", message.getMessageId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 同一数据源、参数类型相同的消息才能合并
+     */
+    private boolean canMerge(DBOperationMessage previous, DBOperationMessage next) {
+        if (!Objects.equals(previous.getUseSecondMaster(), next.getUseSecondMaster())) {
+            return false;
+        }
+        Object[] previousArgs = previous.getArgs();
+        Object[] nextArgs = next.getArgs();
+        if (previousArgs == null || nextArgs == null || previousArgs.length != 1 || nextArgs.length != 1
+                || previousArgs[0] == null || nextArgs[0] == null) {
+            return false;
+        }
+        return previousArgs[0].getClass() == nextArgs[0].getClass();
+    }
+
+    /**
+     * 暂存消息：可合并时合并到同一行暂存的消息，否则先发送同一行暂存的消息再暂存
+     */
+    private boolean stash(String key, DBOperationMessage snapshot, boolean update) {
+        while (true) {
+            synchronized (lockOf(key)) {
+                Pending current = pending.get(key);
+                if (current == null) {
+                    pending.put(key, new Pending(snapshot, update, System.nanoTime() + windowNanos));
+                    return true;
+                }
+                if (current.sending == null && update && canMerge(current.message, snapshot)) {
+                    coalescedCount.incrementAndGet();
+                    if (current.update) {
+                        // 整行更新只保留最后一条
+                        current.message = snapshot;
+                    } else {
+                        // 插入后的整行更新合并为使用最新参数的插入
+                        current.message.setArgs(snapshot.getArgs());
+                    }
+                    return true;
+                }
+            }
+            if (!flush(key, false)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 发送同一行暂存的消息，发送失败时消息继续暂存。
+     * 发送在行键锁外进行，发送中的消息留在暂存表中，同一行的其他调用等待它发送完成
+     *
+     * @param expiredOnly 只发送窗口已到期的消息，该行正在发送时直接返回
+     * @return 没有需要发送的消息或发送成功时返回true
+     */
+    private boolean flush(String key, boolean expiredOnly) {
+        // 该行没有暂存的消息时不加锁；发送中的消息发送完成后才移出暂存表
+        if (!pending.containsKey(key)) {
+            return true;
+        }
+        while (true) {
+            Pending entry;
+            CountDownLatch token;
+            DBOperationMessage message = null;
+            synchronized (lockOf(key)) {
+                entry = pending.get(key);
+                if (entry == null) {
+                    return true;
+                }
+                token = entry.sending;
+                if (token == null) {
+                    if (expiredOnly && System.nanoTime() - entry.deadline < 0) {
+                        return true;
+                    }
+                    token = new CountDownLatch(1);
+                    entry.sending = token;
+                    message = entry.message;
+                } else if (expiredOnly) {
+                    return true;
+                }
+            }
+
+            if (message == null) {
+                // 同一行的消息正在发送，等待后重新检查
+                try {
+                    token.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                continue;
+            }
+
+            boolean success = send(message);
+            synchronized (lockOf(key)) {
+                if (success) {
+                    pending.remove(key, entry);
+                } else {
+                    entry.deadline = System.nanoTime() + windowNanos;
+                }
+                entry.sending = null;
+            }
+            token.countDown();
+            return success;
+        }
+    }
+
+    /**
+     * 发送窗口已到期的暂存消息，发送失败的消息延后一个窗口重试
+     */
+    private void flushExpired() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+            if (now - entry.getValue().deadline >= 0) {
+                flush(entry.getKey(), true);
+            }
+        }
+    }
+
+    private boolean send(DBOperationMessage message) {
+        try {
+            if (delegate.sendMessage(message)) {
+                return true;
+            }
+            log.error("发送双写消息失败: {}", message.getMessageId());
+        } catch (Exception e) {
+            log.error("发送双写消息异常: {}", message.getMessageId(), e);
+        }
+        failedCount.incrementAndGet();
+        return false;
+    }
+
+    private Object lockOf(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * 窗口内被合并掉的消息数
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * 暂存的消息发送失败的次数
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * 暂存中的行数
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 暂存的消息
+     */
+    private static final class Pending {
+
+        private volatile DBOperationMessage message;
+
+        private final boolean update;
+
+        private volatile long deadline;
+
+        /**
+         * 发送中的顺序令牌，发送完成时释放；只在行键锁内读写
+         */
+        private CountDownLatch sending;
+
+        Pending(DBOperationMessage message, boolean update, long deadline) {
+            this.message = message;
+            this.update = update;
+            this.deadline = deadline;
+        }
+    }
+}
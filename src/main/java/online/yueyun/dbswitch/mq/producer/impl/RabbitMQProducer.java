@@ -1,15 +1,25 @@
 package online.yueyun.dbswitch.mq.producer.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.enums.CodecType;
+import online.yueyun.dbswitch.enums.MQType;
 import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
 import online.yueyun.dbswitch.mq.producer.MQProducer;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * RabbitMQ生产者实现
@@ -34,24 +44,107 @@ public class RabbitMQProducer implements MQProducer {
     @Value("${dbswitch.rabbitmq.delayRoutingKey:dbswitch-delay-routingkey}")
     private String delayRoutingKey;
 
+    @Value("${dbswitch.rabbitmq.confirm-timeout-ms:3000}")
+    private long confirmTimeout;
+
+    @Value("${dbswitch.codec.type:DEFAULT}")
+    private CodecType codecType;
+
+    @Autowired
+    private MessageCodec messageCodec;
+
+    @Autowired
+    private DBSwitchMetrics metrics;
+
     @Override
     public boolean sendMessage(DBOperationMessage message) {
+        long start = System.nanoTime();
         try {
             if (message.getMessageId() == null) {
                 message.setMessageId(UUID.randomUUID().toString());
             }
             
             log.info("发送RabbitMQ消息: {}", message);
-            rabbitTemplate.convertAndSend(exchange, routingKey, message);
-            return true;
+            if (codecType == CodecType.BINARY) {
+                rabbitTemplate.send(exchange, routingKey, encode(message));
+            } else {
+                rabbitTemplate.convertAndSend(exchange, routingKey, message);
+            }
+            return recordSend(start, true);
         } catch (Exception e) {
             log.error("发送RabbitMQ消息失败: {}", message, e);
-            return false;
+            return recordSend(start, false);
+        }
+    }
+
+    /**
+     * 在同一通道上批量发布消息
+     * 连接工厂开启了简单发布确认（publisher-confirm-type: simple）时，等待代理确认整批消息
+     */
+    @Override
+    public boolean sendBatch(List<DBOperationMessage> messages) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+        return publishBatch(messages.size(), operations -> {
+            for (DBOperationMessage message : messages) {
+                if (message.getMessageId() == null) {
+                    message.setMessageId(UUID.randomUUID().toString());
+                }
+                if (codecType == CodecType.BINARY) {
+                    operations.send(exchange, routingKey, encode(message));
+                } else {
+                    operations.convertAndSend(exchange, routingKey, message);
+                }
+            }
+        });
+    }
+
+    /**
+     * 使用二进制编码时，编码后的消息可直接作为消息体发送
+     */
+    @Override
+    public boolean supportsEncoded() {
+        return codecType == CodecType.BINARY;
+    }
+
+    @Override
+    public boolean sendEncodedBatch(List<byte[]> messages) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+        return publishBatch(messages.size(), operations -> {
+            for (byte[] payload : messages) {
+                operations.send(exchange, routingKey, encode(payload));
+            }
+        });
+    }
+
+    /**
+     * 在同一通道上发布一批消息，开启简单发布确认时等待代理确认
+     */
+    private boolean publishBatch(int size, Consumer<RabbitOperations> publisher) {
+        long start = System.nanoTime();
+        try {
+            boolean confirms = rabbitTemplate.getConnectionFactory().isSimplePublisherConfirms();
+            log.debug("批量发送RabbitMQ消息，数量: {}, 发布确认: {}", size, confirms);
+            Boolean success = rabbitTemplate.invoke(operations -> {
+                publisher.accept(operations);
+                if (confirms) {
+                    operations.waitForConfirmsOrDie(confirmTimeout);
+                }
+                return true;
+            });
+            return recordSend(start, Boolean.TRUE.equals(success));
+        } catch (Exception e) {
+            log.error("批量发送RabbitMQ消息失败，数量: {}", size, e);
+            return recordSend(start, false);
         }
     }
 
     @Override
     public boolean sendDelayMessage(DBOperationMessage message, int delayLevel) {
+        long start = System.nanoTime();
         try {
             if (message.getMessageId() == null) {
                 message.setMessageId(UUID.randomUUID().toString());
@@ -61,17 +154,40 @@ public class RabbitMQProducer implements MQProducer {
             int delayMillis = delayLevelToMillis(delayLevel);
             
             log.info("发送RabbitMQ延迟消息: {}, 延迟时间: {}ms", message, delayMillis);
-            rabbitTemplate.convertAndSend(delayExchange, delayRoutingKey, message, msg -> {
-                msg.getMessageProperties().setDelay(delayMillis);
-                return msg;
-            });
-            return true;
+            if (codecType == CodecType.BINARY) {
+                Message amqpMessage = encode(message);
+                amqpMessage.getMessageProperties().setDelay(delayMillis);
+                rabbitTemplate.send(delayExchange, delayRoutingKey, amqpMessage);
+            } else {
+                rabbitTemplate.convertAndSend(delayExchange, delayRoutingKey, message, msg -> {
+                    msg.getMessageProperties().setDelay(delayMillis);
+                    return msg;
+                });
+            }
+            return recordSend(start, true);
         } catch (Exception e) {
             log.error("发送RabbitMQ延迟消息失败: {}", message, e);
-            return false;
+            return recordSend(start, false);
         }
     }
     
+    /**
+     * 使用二进制编码构建消息，并在消息头中标识编解码器
+     */
+    private Message encode(DBOperationMessage message) {
+        return encode(messageCodec.encode(message));
+    }
+
+    /**
+     * 以编码后的字节数组为消息体构建消息
+     */
+    private Message encode(byte[] payload) {
+        return MessageBuilder.withBody(payload)
+                .setContentType(MessageProperties.CONTENT_TYPE_BYTES)
+                .setHeader(MessageCodec.CODEC_HEADER, messageCodec.getName())
+                .build();
+    }
+
     /**
      * 将延迟级别转换为毫秒
      * 参考RocketMQ的延迟级别：1s, 5s, 10s, 30s, 1m, 2m, 3m, 4m, 5m, 6m, 7m, 8m, 9m, 10m, 20m, 30m, 1h, 2h
@@ -92,4 +208,12 @@ public class RabbitMQProducer implements MQProducer {
         
         return delayMillis[delayLevel - 1];
     }
-} 
\ No newline at end of file
+
+    /**
+     * 记录发送耗时和结果
+     */
+    private boolean recordSend(long start, boolean success) {
+        metrics.recordSend(MQType.RABBIT_MQ, System.nanoTime() - start, success);
+        return success;
+    }
+}
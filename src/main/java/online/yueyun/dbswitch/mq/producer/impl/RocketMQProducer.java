@@ -1,15 +1,24 @@
 package online.yueyun.dbswitch.mq.producer.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.enums.CodecType;
+import online.yueyun.dbswitch.enums.MQType;
 import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
 import online.yueyun.dbswitch.mq.producer.MQProducer;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -26,24 +35,38 @@ public class RocketMQProducer implements MQProducer {
     @Value("${dbswitch.rocketmq.topic:dbswitch-topic}")
     private String topic;
 
+    @Value("${dbswitch.rocketmq.send-timeout-ms:3000}")
+    private long sendTimeout;
+
+    @Value("${dbswitch.codec.type:DEFAULT}")
+    private CodecType codecType;
+
+    @Autowired
+    private MessageCodec messageCodec;
+
+    @Autowired
+    private DBSwitchMetrics metrics;
+
     @Override
     public boolean sendMessage(DBOperationMessage message) {
+        long start = System.nanoTime();
         try {
             if (message.getMessageId() == null) {
                 message.setMessageId(UUID.randomUUID().toString());
             }
             
             log.info("发送RocketMQ消息: {}", message);
-            rocketMQTemplate.convertAndSend(topic, message);
-            return true;
+            rocketMQTemplate.send(topic, buildMessage(message));
+            return recordSend(start, true);
         } catch (Exception e) {
             log.error("发送RocketMQ消息失败: {}", message, e);
-            return false;
+            return recordSend(start, false);
         }
     }
 
     @Override
     public boolean sendDelayMessage(DBOperationMessage message, int delayLevel) {
+        long start = System.nanoTime();
         try {
             if (message.getMessageId() == null) {
                 message.setMessageId(UUID.randomUUID().toString());
@@ -51,13 +74,93 @@ public class RocketMQProducer implements MQProducer {
             
             log.info("发送RocketMQ延迟消息: {}, 延迟级别: {}", message, delayLevel);
             rocketMQTemplate.syncSend(topic, 
-                MessageBuilder.withPayload(message).build(), 
+                buildMessage(message), 
                 3000, 
                 delayLevel);
-            return true;
+            return recordSend(start, true);
         } catch (Exception e) {
             log.error("发送RocketMQ延迟消息失败: {}", message, e);
-            return false;
+            return recordSend(start, false);
+        }
+    }
+
+    @Override
+    public boolean sendBatch(List<DBOperationMessage> messages) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            List<Message<?>> batch = new ArrayList<>(messages.size());
+            for (DBOperationMessage message : messages) {
+                if (message.getMessageId() == null) {
+                    message.setMessageId(UUID.randomUUID().toString());
+                }
+                batch.add(buildMessage(message));
+            }
+            return syncSendBatch(batch, start);
+        } catch (Exception e) {
+            log.error("批量发送RocketMQ消息失败，数量: {}", messages.size(), e);
+            return recordSend(start, false);
+        }
+    }
+
+    /**
+     * 使用二进制编码时，编码后的消息可直接作为消息体发送
+     */
+    @Override
+    public boolean supportsEncoded() {
+        return codecType == CodecType.BINARY;
+    }
+
+    @Override
+    public boolean sendEncodedBatch(List<byte[]> messages) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            List<Message<?>> batch = new ArrayList<>(messages.size());
+            for (byte[] payload : messages) {
+                batch.add(buildMessage(payload));
+            }
+            return syncSendBatch(batch, start);
+        } catch (Exception e) {
+            log.error("批量发送RocketMQ消息失败，数量: {}", messages.size(), e);
+            return recordSend(start, false);
         }
     }
-} 
\ No newline at end of file
+
+    private boolean syncSendBatch(List<Message<?>> batch, long start) {
+        log.debug("批量发送RocketMQ消息，数量: {}", batch.size());
+        SendResult result = rocketMQTemplate.syncSend(topic, batch, sendTimeout);
+        return recordSend(start, result != null && result.getSendStatus() == SendStatus.SEND_OK);
+    }
+
+    /**
+     * 构建消息，使用二进制编码时消息体为编码后的字节数组，并在消息头中标识编解码器
+     */
+    private Message<?> buildMessage(DBOperationMessage message) {
+        if (codecType == CodecType.BINARY) {
+            return buildMessage(messageCodec.encode(message));
+        }
+        return MessageBuilder.withPayload(message).build();
+    }
+
+    /**
+     * 以编码后的字节数组为消息体构建消息
+     */
+    private Message<?> buildMessage(byte[] payload) {
+        return MessageBuilder.withPayload(payload)
+                .setHeader(MessageCodec.CODEC_HEADER, messageCodec.getName())
+                .build();
+    }
+
+    /**
+     * 记录发送耗时和结果
+     */
+    private boolean recordSend(long start, boolean success) {
+        metrics.recordSend(MQType.ROCKET_MQ, System.nanoTime() - start, success);
+        return success;
+    }
+}
@@ -0,0 +1,229 @@
+package online.yueyun.dbswitch.outbox;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.codec.MessageCodecException;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.mq.producer.MQProducer;
+import online.yueyun.dbswitch.mq.producer.MQProducerSelector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发件箱投递任务
+ * 定时按主键分页批量读取主库和从库发件箱中已提交的消息，按写入时的编解码器解码，批量发送到消息队列后批量删除；
+ * 无法解码的消息移入死信表，不删除。多个节点通过Redis锁保证同一时刻只有一个节点投递同一个数据源的发件箱，
+ * 锁在每批投递前续期，只由持有者释放
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.outbox.enabled", havingValue = "true")
+public class OutboxRelay {
+
+    /**
+     * 续期脚本：锁仍由当前节点持有时延长过期时间
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end "
+                    + "return 0", Long.class);
+
+    /**
+     * 释放脚本：锁仍由当前节点持有时删除
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('DEL', KEYS[1]) end "
+                    + "return 0", Long.class);
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private MQProducerSelector mqProducerSelector;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private MessageCodec messageCodec;
+
+    @Autowired
+    private List<MessageCodec> messageCodecs;
+
+    @Autowired
+    @Qualifier("masterDataSource")
+    private DataSource masterDataSource;
+
+    @Autowired
+    @Qualifier("slaveDataSource")
+    private DataSource slaveDataSource;
+
+    @Value("${dbswitch.outbox.relay-interval-ms:500}")
+    private long relayIntervalMs;
+
+    @Value("${dbswitch.outbox.relay-batch-size:500}")
+    private int relayBatchSize;
+
+    @Value("${dbswitch.outbox.lock-key-prefix:dbswitch:outbox:lock:}")
+    private String lockKeyPrefix;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<String, JdbcTemplate> jdbcTemplates = new LinkedHashMap<>();
+
+    private Map<String, MessageCodec> codecsByName;
+
+    private ScheduledExecutorService relayExecutor;
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplates.put("master", new JdbcTemplate(masterDataSource));
+        jdbcTemplates.put("slave", new JdbcTemplate(slaveDataSource));
+        codecsByName = messageCodecs.stream()
+                .collect(Collectors.toMap(MessageCodec::getName, Function.identity(), (first, second) -> first));
+
+        relayExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dbswitch-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        relayExecutor.scheduleWithFixedDelay(this::relayAll, relayIntervalMs, relayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (relayExecutor != null) {
+            relayExecutor.shutdownNow();
+        }
+    }
+
+    private void relayAll() {
+        jdbcTemplates.forEach((name, jdbcTemplate) -> {
+            try {
+                relay(name, jdbcTemplate);
+            } catch (Exception e) {
+                log.error("投递{}发件箱失败", name, e);
+            }
+        });
+    }
+
+    /**
+     * 投递单个数据源的发件箱
+     */
+    private void relay(String name, JdbcTemplate jdbcTemplate) {
+        String lockKey = lockKeyPrefix + name;
+        long lockTtlMs = relayIntervalMs * 10;
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, nodeId, lockTtlMs, TimeUnit.MILLISECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+
+        try {
+            String table = outboxService.getOutboxTable();
+            String selectSql = "SELECT id, codec, payload FROM " + table + " WHERE id > ? ORDER BY id LIMIT " + relayBatchSize;
+            long lastId = 0;
+            while (true) {
+                List<Long> ids = new ArrayList<>(relayBatchSize);
+                List<DBOperationMessage> messages = new ArrayList<>(relayBatchSize);
+                Map<Long, String> undecodable = new LinkedHashMap<>();
+                jdbcTemplate.query(selectSql, rs -> {
+                    long id = rs.getLong(1);
+                    ids.add(id);
+                    try {
+                        messages.add(decode(rs.getString(2), rs.getBytes(3)));
+                    } catch (MessageCodecException e) {
+                        log.error("发件箱消息解码失败，移入死信表，id: {}", id, e);
+                        undecodable.put(id, String.valueOf(e.getMessage()));
+                    }
+                }, lastId);
+                if (ids.isEmpty()) {
+                    return;
+                }
+
+                MQProducer producer = mqProducerSelector.getProducer();
+                if (producer == null) {
+                    log.warn("无法找到消息队列生产者，暂停投递发件箱");
+                    return;
+                }
+                if (!messages.isEmpty() && !producer.sendBatch(messages)) {
+                    log.warn("消息队列不可用，{}ms后重试投递{}发件箱", relayIntervalMs, name);
+                    return;
+                }
+
+                if (!undecodable.isEmpty()) {
+                    moveToDeadLetter(jdbcTemplate, table, undecodable);
+                }
+                delete(jdbcTemplate, table, ids);
+                log.debug("已投递{}发件箱消息，数量: {}", name, messages.size());
+                lastId = ids.get(ids.size() - 1);
+                if (ids.size() < relayBatchSize) {
+                    return;
+                }
+                Long renewed = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(lockKey),
+                        nodeId, String.valueOf(lockTtlMs));
+                if (renewed == null || renewed == 0) {
+                    log.warn("{}发件箱投递锁已失效，停止本轮投递", name);
+                    return;
+                }
+            }
+        } finally {
+            redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(lockKey), nodeId);
+        }
+    }
+
+    /**
+     * 按写入时的编解码器解码，未记录编解码器的消息使用当前编解码器
+     */
+    private DBOperationMessage decode(String codecName, byte[] payload) {
+        if (codecName == null) {
+            return messageCodec.decode(payload);
+        }
+        MessageCodec codec = codecsByName.get(codecName);
+        if (codec == null) {
+            throw new MessageCodecException("不支持的消息编解码器: " + codecName);
+        }
+        return codec.decode(payload);
+    }
+
+    /**
+     * 将无法解码的消息复制到死信表，之后随本批一起从发件箱删除；重复复制时忽略已存在的记录
+     */
+    private void moveToDeadLetter(JdbcTemplate jdbcTemplate, String table, Map<Long, String> undecodable) {
+        String sql = "INSERT IGNORE INTO " + outboxService.getDeadLetterTable()
+                + " (id, message_id, codec, payload, create_time, error)"
+                + " SELECT id, message_id, codec, payload, create_time, ? FROM " + table + " WHERE id = ?";
+        List<Object[]> args = new ArrayList<>(undecodable.size());
+        undecodable.forEach((id, error) -> args.add(new Object[]{error.length() > 512 ? error.substring(0, 512) : error, id}));
+        jdbcTemplate.batchUpdate(sql, args);
+    }
+
+    /**
+     * 按ID列表批量删除，不能按范围删除：范围内可能有读取时尚未提交的消息
+     */
+    private void delete(JdbcTemplate jdbcTemplate, String table, List<Long> ids) {
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        jdbcTemplate.update("DELETE FROM " + table + " WHERE id IN (" + placeholders + ")", ids.toArray());
+    }
+}
@@ -0,0 +1,74 @@
+package online.yueyun.dbswitch.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.codec.MessageCodec;
+import online.yueyun.dbswitch.codec.MessageCodecException;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * 发件箱服务
+ * 在业务写操作所在的连接和事务中写入双写消息和编解码器名称，事务提交后由OutboxRelay批量投递
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dbswitch.outbox.enabled", havingValue = "true")
+public class OutboxService {
+
+    @Autowired
+    private MessageCodec messageCodec;
+
+    @Value("${dbswitch.outbox.table:dbswitch_outbox}")
+    private String outboxTable;
+
+    @Value("${dbswitch.outbox.dead-letter-table:dbswitch_outbox_dead}")
+    private String deadLetterTable;
+
+    /**
+     * 在给定连接上写入发件箱消息
+     *
+     * @param connection 业务写操作使用的连接
+     * @param message 数据库操作消息
+     * @throws SQLException 写入异常
+     */
+    public void save(Connection connection, DBOperationMessage message) throws SQLException {
+        byte[] payload;
+        try {
+            payload = messageCodec.encode(message);
+        } catch (MessageCodecException e) {
+            throw new SQLException("序列化发件箱消息失败: " + message.getMessageId(), e);
+        }
+
+        String sql = "INSERT INTO " + outboxTable + " (message_id, codec, payload, create_time) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, message.getMessageId());
+            statement.setString(2, messageCodec.getName());
+            statement.setBytes(3, payload);
+            statement.setTimestamp(4, new Timestamp(message.getCreateTime().getTime()));
+            statement.executeUpdate();
+        }
+        log.debug("双写消息已写入发件箱: {}", message.getMessageId());
+    }
+
+    /**
+     * 发件箱表名
+     */
+    public String getOutboxTable() {
+        return outboxTable;
+    }
+
+    /**
+     * 死信表名，保存无法解码的发件箱消息
+     */
+    public String getDeadLetterTable() {
+        return deadLetterTable;
+    }
+}
@@ -0,0 +1,19 @@
+package online.yueyun.dbswitch.service;
+
+import online.yueyun.dbswitch.message.DBOperationMessage;
+
+import java.util.List;
+
+/**
+ * 消息批量执行服务接口
+ */
+public interface BatchApplyService {
+
+    /**
+     * 按顺序批量执行一组消息
+     *
+     * @param messages 数据库操作消息
+     * @return 每条消息是否执行成功，与消息顺序一致
+     */
+    boolean[] apply(List<DBOperationMessage> messages);
+}
@@ -1,5 +1,9 @@
 package online.yueyun.dbswitch.service;
 
+import online.yueyun.dbswitch.enums.ClaimStatus;
+
+import java.util.List;
+
 /**
  * 幂等性服务接口
  */
@@ -19,4 +23,34 @@ public interface IdempotentService {
      * @param messageId 消息ID
      */
     void markAsProcessed(String messageId);
-} 
\ No newline at end of file
+
+    /**
+     * 原子认领消息，认领成功后消息进入处理中状态，超时未确认则自动释放
+     *
+     * @param messageId 消息ID
+     * @return 认领结果
+     */
+    ClaimStatus claim(String messageId);
+
+    /**
+     * 批量认领消息
+     *
+     * @param messageIds 消息ID列表
+     * @return 认领结果，与消息ID顺序一致
+     */
+    List<ClaimStatus> claimBatch(List<String> messageIds);
+
+    /**
+     * 确认消息已处理完成
+     *
+     * @param messageIds 消息ID列表
+     */
+    void confirm(List<String> messageIds);
+
+    /**
+     * 释放处理中的消息，使其可以被重新认领
+     *
+     * @param messageIds 消息ID列表
+     */
+    void release(List<String> messageIds);
+}
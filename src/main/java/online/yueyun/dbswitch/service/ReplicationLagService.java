@@ -0,0 +1,64 @@
+package online.yueyun.dbswitch.service;
+
+import online.yueyun.dbswitch.message.DBOperationMessage;
+
+/**
+ * 复制延迟服务接口
+ * 按消息创建时间到在目标库执行完成的时间计算复制延迟，并维护已执行水位：消费端已接收但尚未执行完成的最早消息创建时间。
+ * 水位只反映消费端已接收的消息，仍在发件箱、本地日志、异步发送缓冲区或消息队列中的消息不计入，
+ * 因此只能作为尽力而为的等待条件（配合最小固定时间、等待上限使用），不能单独作为数据已复制的依据
+ */
+public interface ReplicationLagService {
+
+    /**
+     * 消息已接收，进入未执行完成的集合
+     *
+     * @param message 数据库操作消息
+     */
+    void onReceived(DBOperationMessage message);
+
+    /**
+     * 消息处理结束，离开未执行完成的集合；执行成功时记录复制延迟，超过最大重试次数被放弃时applied为false
+     *
+     * @param message 数据库操作消息
+     * @param applied 是否执行成功
+     */
+    void onCompleted(DBOperationMessage message, boolean applied);
+
+    /**
+     * 消息未执行完成、重新投递等待重试，水位保持在其创建时间，直到重新接收后执行完成或被放弃；
+     * 重试消息可能投递到其他实例，超过固定时长仍未被本实例重新接收时解除
+     *
+     * @param message 数据库操作消息
+     */
+    void onRetry(DBOperationMessage message);
+
+    /**
+     * 本实例的已执行水位，没有已接收未执行完成的消息时为当前时间
+     *
+     * @return 水位时间戳（毫秒）
+     */
+    long getLocalWatermark();
+
+    /**
+     * 所有消费实例中最小的已执行水位
+     *
+     * @return 水位时间戳（毫秒）
+     */
+    long getGlobalWatermark();
+
+    /**
+     * 当前复制延迟，即当前时间与全局已执行水位之差
+     *
+     * @return 复制延迟（毫秒）
+     */
+    long getCurrentLagMillis();
+
+    /**
+     * 最近统计窗口内本实例复制延迟的百分位值
+     *
+     * @param percentile 百分位，取值0到100
+     * @return 复制延迟（毫秒）
+     */
+    long getLagPercentile(double percentile);
+}
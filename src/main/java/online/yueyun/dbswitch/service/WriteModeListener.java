@@ -0,0 +1,18 @@
+package online.yueyun.dbswitch.service;
+
+import online.yueyun.dbswitch.enums.WriteMode;
+
+/**
+ * 写入模式变更监听器
+ * 在本节点按新的写入模式路由流量之前同步回调，回调耗时会推迟本节点的切换
+ */
+public interface WriteModeListener {
+
+    /**
+     * 写入模式即将变更
+     *
+     * @param previous 变更前的写入模式，尚未加载时为null
+     * @param current 变更后的写入模式
+     */
+    void beforeWriteModeChange(WriteMode previous, WriteMode current);
+}
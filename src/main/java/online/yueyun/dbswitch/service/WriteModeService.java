@@ -2,11 +2,19 @@ package online.yueyun.dbswitch.service;
 
 import online.yueyun.dbswitch.enums.WriteMode;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * 写入模式服务接口
  */
 public interface WriteModeService {
 
+    /**
+     * 读权重的全局作用域
+     */
+    String GLOBAL_READ_WEIGHT = "*";
+
     /**
      * 获取当前写入模式
      *
@@ -20,4 +28,23 @@ public interface WriteModeService {
      * @param writeMode 写入模式
      */
     void updateWriteMode(WriteMode writeMode);
-} 
\ No newline at end of file
+
+    /**
+     * 获取双写模式下的读权重
+     * 键为语句ID、Mapper命名空间或全局作用域{@link #GLOBAL_READ_WEIGHT}，
+     * 值为查询路由到迁移目标库（双写时异步写入的第二个库）的百分比
+     *
+     * @return 读权重，未设置时为空
+     */
+    default Map<String, Integer> getReadWeights() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 更新读权重
+     *
+     * @param scope 语句ID、Mapper命名空间或{@link #GLOBAL_READ_WEIGHT}
+     * @param targetPercent 查询路由到迁移目标库的百分比（0-100），null表示删除该作用域的权重
+     */
+    void updateReadWeight(String scope, Integer targetPercent);
+}
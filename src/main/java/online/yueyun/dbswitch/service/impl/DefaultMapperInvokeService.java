@@ -1,25 +1,63 @@
 package online.yueyun.dbswitch.service.impl;
 
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
 import online.yueyun.dbswitch.datasource.DynamicDataSource;
 import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
 import online.yueyun.dbswitch.service.MapperInvokeService;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.reflection.ParamNameResolver;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
 
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 默认的Mapper调用服务实现
+ * 按（Mapper类名、方法名、参数类型）缓存已解析的方法句柄调用器，启动时按MyBatis中登记的Mapper接口预先解析
  */
 @Slf4j
 @Service
-public class DefaultMapperInvokeService implements MapperInvokeService {
+public class DefaultMapperInvokeService implements MapperInvokeService, SmartInitializingSingleton {
+
+    private static final String PARAM_MAP_TYPE = MapperMethod.ParamMap.class.getName();
+
+    private static final String[] NO_PARAMETER_TYPES = new String[0];
 
     @Autowired
     private ApplicationContext applicationContext;
 
+    @Autowired
+    private ObjectProvider<SqlSessionFactory> sqlSessionFactories;
+
+    /**
+     * 调用器缓存
+     */
+    private final ConcurrentMap<InvokerKey, MapperInvoker> invokers = new ConcurrentHashMap<>();
+
+    /**
+     * 按MyBatis中登记的Mapper接口预先解析调用器
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        sqlSessionFactories.orderedStream().forEach(factory -> warmUp(factory.getConfiguration()));
+        log.info("Mapper调用器预热完成，共 {} 个", invokers.size());
+    }
+
     @Override
     public Object invoke(String mapperClassName, String methodName, String[] parameterTypeNames, Object[] args) throws Exception {
         // 默认调用方法，不指定数据源
@@ -44,27 +82,158 @@ public class DefaultMapperInvokeService implements MapperInvokeService {
      * 实际执行Mapper方法的内部方法
      */
     private Object invokeMethod(String mapperClassName, String methodName, String[] parameterTypeNames, Object[] args) throws Exception {
+        InvokerKey key = new InvokerKey(mapperClassName, methodName,
+                parameterTypeNames != null ? parameterTypeNames : NO_PARAMETER_TYPES);
         try {
-            // 加载Mapper类
-            Class<?> mapperClass = Class.forName(mapperClassName);
-            
-            // 获取Mapper Bean
-            Object mapperBean = applicationContext.getBean(mapperClass);
-            
-            // 解析参数类型
-            Class<?>[] parameterTypes = new Class<?>[parameterTypeNames.length];
-            for (int i = 0; i < parameterTypeNames.length; i++) {
-                parameterTypes[i] = Class.forName(parameterTypeNames[i]);
+            MapperInvoker invoker = invokers.get(key);
+            if (invoker == null) {
+                invoker = resolve(key);
+                MapperInvoker existing = invokers.putIfAbsent(key, invoker);
+                if (existing != null) {
+                    invoker = existing;
+                }
             }
-            
-            // 获取方法
-            Method method = mapperClass.getMethod(methodName, parameterTypes);
-            
-            // 调用方法
-            return method.invoke(mapperBean, args);
+            return invoker.invoke(args);
         } catch (Exception e) {
             log.error("调用Mapper方法失败: mapperClass={}, method={}", mapperClassName, methodName, e);
             throw e;
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 预先解析Configuration中全部Mapper接口的方法
+     */
+    private void warmUp(Configuration configuration) {
+        for (Class<?> mapperClass : configuration.getMapperRegistry().getMappers()) {
+            Object mapperBean = applicationContext.getBeanProvider(mapperClass).getIfUnique();
+            if (mapperBean == null) {
+                continue;
+            }
+            for (Method method : mapperClass.getMethods()) {
+                if (method.isDefault() || Modifier.isStatic(method.getModifiers())
+                        || !configuration.hasStatement(mapperClass.getName() + "." + method.getName(), false)) {
+                    continue;
+                }
+                try {
+                    register(configuration, mapperBean, mapperClass, method);
+                } catch (Exception e) {
+                    log.warn("预热Mapper调用器失败: {}.{}", mapperClass.getName(), method.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按拦截器生成消息时可能使用的参数类型登记调用器：
+     * 单个参数时为参数的实际类型（基本类型为包装类型），多个参数或使用@Param时为ParamMap
+     */
+    private void register(Configuration configuration, Object mapperBean, Class<?> mapperClass, Method method)
+            throws IllegalAccessException {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        String[] declaredNames = new String[parameterTypes.length];
+        String[] boxedNames = new String[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            declaredNames[i] = parameterTypes[i].getName();
+            boxedNames[i] = ClassUtils.resolvePrimitiveIfNecessary(parameterTypes[i]).getName();
+        }
+
+        MapperInvoker direct = MapperInvoker.direct(mapperBean, method);
+        invokers.putIfAbsent(new InvokerKey(mapperClass.getName(), method.getName(), declaredNames), direct);
+        invokers.putIfAbsent(new InvokerKey(mapperClass.getName(), method.getName(), boxedNames), direct);
+        if (parameterTypes.length > 0 && !hasSpecialParameter(method)) {
+            invokers.putIfAbsent(new InvokerKey(mapperClass.getName(), method.getName(), new String[]{PARAM_MAP_TYPE}),
+                    MapperInvoker.paramMap(mapperBean, method, new ParamNameResolver(configuration, method)));
+        }
+    }
+
+    /**
+     * 缓存未命中时解析调用器：先按参数类型精确匹配，再按同名方法的参数兼容性匹配
+     */
+    private MapperInvoker resolve(InvokerKey key) throws Exception {
+        Class<?> mapperClass = Class.forName(key.mapperClassName);
+        Object mapperBean = applicationContext.getBean(mapperClass);
+
+        String[] parameterTypeNames = key.parameterTypeNames;
+        Class<?>[] parameterTypes = new Class<?>[parameterTypeNames.length];
+        for (int i = 0; i < parameterTypeNames.length; i++) {
+            parameterTypes[i] = ClassUtils.forName(parameterTypeNames[i], mapperClass.getClassLoader());
+        }
+
+        try {
+            return MapperInvoker.direct(mapperBean, mapperClass.getMethod(key.methodName, parameterTypes));
+        } catch (NoSuchMethodException e) {
+            log.debug("未找到参数类型完全匹配的方法，按参数兼容性查找: {}.{}", key.mapperClassName, key.methodName);
+        }
+
+        List<Method> candidates = new ArrayList<>();
+        for (Method method : mapperClass.getMethods()) {
+            if (method.getName().equals(key.methodName) && !method.isDefault()) {
+                candidates.add(method);
+            }
+        }
+        for (Method method : candidates) {
+            if (isCompatible(method.getParameterTypes(), parameterTypes)) {
+                return MapperInvoker.direct(mapperBean, method);
+            }
+        }
+        boolean paramMap = parameterTypes.length == 1 && parameterTypes[0] == MapperMethod.ParamMap.class;
+        if (paramMap && candidates.size() == 1 && !hasSpecialParameter(candidates.get(0))) {
+            Configuration configuration = sqlSessionFactories.orderedStream()
+                    .map(SqlSessionFactory::getConfiguration)
+                    .filter(config -> config.hasMapper(mapperClass))
+                    .findFirst()
+                    .orElseThrow(() -> new NoSuchMethodException("Mapper未在MyBatis中登记: " + key.mapperClassName));
+            Method method = candidates.get(0);
+            return MapperInvoker.paramMap(mapperBean, method, new ParamNameResolver(configuration, method));
+        }
+        throw new NoSuchMethodException(key.mapperClassName + "." + key.methodName);
+    }
+
+    /**
+     * 参数个数相同且各参数类型可赋值（含基本类型与包装类型）
+     */
+    private boolean isCompatible(Class<?>[] declared, Class<?>[] actual) {
+        if (declared.length != actual.length) {
+            return false;
+        }
+        for (int i = 0; i < declared.length; i++) {
+            if (!ClassUtils.isAssignable(declared[i], actual[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 方法是否含有不会放入ParamMap的RowBounds、ResultHandler参数
+     */
+    private boolean hasSpecialParameter(Method method) {
+        for (Class<?> type : method.getParameterTypes()) {
+            if (RowBounds.class.isAssignableFrom(type) || ResultHandler.class.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 已解析的调用器数量
+     */
+    public int getInvokerCount() {
+        return invokers.size();
+    }
+
+    /**
+     * 调用器缓存键
+     */
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class InvokerKey {
+
+        private final String mapperClassName;
+
+        private final String methodName;
+
+        private final String[] parameterTypeNames;
+    }
+}
@@ -0,0 +1,145 @@
+package online.yueyun.dbswitch.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.enums.ClaimStatus;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
+import online.yueyun.dbswitch.service.IdempotentService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带本地前置缓存的幂等性服务
+ * 本节点确认过的消息ID写入最近确认的LRU缓存，LRU命中的消息直接判定为已处理，不再查询或认领Redis；
+ * 未命中的消息可能已由其他节点处理，仍由Redis判定和原子认领
+ */
+@Slf4j
+@Primary
+@Service
+@ConditionalOnProperty(name = "dbswitch.idempotent.local.enabled", havingValue = "true")
+public class LocalCachingIdempotentService implements IdempotentService {
+
+    @Autowired
+    private RedisIdempotentService delegate;
+
+    @Autowired
+    private DBSwitchMetrics metrics;
+
+    @Value("${dbswitch.idempotent.local.lru-size:10000}")
+    private int lruSize;
+
+    /**
+     * 按访问顺序排列，命中时用get刷新位置（containsKey不刷新）
+     */
+    private Map<String, Boolean> confirmed;
+
+    private final AtomicLong lruHits = new AtomicLong();
+
+    private final AtomicLong redisLookups = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        confirmed = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > lruSize;
+            }
+        });
+        metrics.bindIdempotentCache(this);
+        log.info("幂等性本地缓存已启用，LRU大小: {}", lruSize);
+    }
+
+    @Override
+    public boolean isProcessed(String messageId) {
+        if (messageId == null || messageId.isEmpty()) {
+            return false;
+        }
+        if (confirmed.get(messageId) != null) {
+            lruHits.incrementAndGet();
+            return true;
+        }
+        redisLookups.incrementAndGet();
+        return delegate.isProcessed(messageId);
+    }
+
+    @Override
+    public void markAsProcessed(String messageId) {
+        delegate.markAsProcessed(messageId);
+        remember(messageId);
+    }
+
+    @Override
+    public ClaimStatus claim(String messageId) {
+        return claimBatch(Collections.singletonList(messageId)).get(0);
+    }
+
+    @Override
+    public List<ClaimStatus> claimBatch(List<String> messageIds) {
+        List<ClaimStatus> statuses = new ArrayList<>(messageIds.size());
+        List<String> remote = new ArrayList<>(messageIds.size());
+        for (String messageId : messageIds) {
+            if (messageId != null && confirmed.get(messageId) != null) {
+                lruHits.incrementAndGet();
+                statuses.add(ClaimStatus.DONE);
+            } else {
+                statuses.add(null);
+                remote.add(messageId);
+            }
+        }
+        if (remote.isEmpty()) {
+            return statuses;
+        }
+
+        redisLookups.addAndGet(remote.size());
+        List<ClaimStatus> remoteStatuses = delegate.claimBatch(remote);
+        int index = 0;
+        for (int i = 0; i < statuses.size(); i++) {
+            if (statuses.get(i) == null) {
+                statuses.set(i, remoteStatuses.get(index++));
+            }
+        }
+        return statuses;
+    }
+
+    @Override
+    public void confirm(List<String> messageIds) {
+        delegate.confirm(messageIds);
+        messageIds.forEach(this::remember);
+    }
+
+    @Override
+    public void release(List<String> messageIds) {
+        delegate.release(messageIds);
+    }
+
+    private void remember(String messageId) {
+        if (messageId == null || messageId.isEmpty()) {
+            return;
+        }
+        confirmed.put(messageId, Boolean.TRUE);
+    }
+
+    /**
+     * LRU命中次数
+     */
+    public long getLruHits() {
+        return lruHits.get();
+    }
+
+    /**
+     * 查询Redis的次数
+     */
+    public long getRedisLookups() {
+        return redisLookups.get();
+    }
+}
@@ -0,0 +1,127 @@
+package online.yueyun.dbswitch.service.impl;
+
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.reflection.ParamNameResolver;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+/**
+ * 已解析的Mapper方法调用器
+ * 方法句柄绑定Mapper Bean并展开参数数组，调用时不再进行类加载、Bean查找和反射校验；
+ * 消息参数为MyBatis的ParamMap而方法有多个参数时，按参数名从ParamMap中取出各个参数
+ */
+class MapperInvoker {
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final Method method;
+
+    private final MethodHandle handle;
+
+    private final int parameterCount;
+
+    /**
+     * ParamMap中各参数的键，为null时直接传入消息参数
+     */
+    private final String[][] paramMapKeys;
+
+    private MapperInvoker(Method method, MethodHandle handle, String[][] paramMapKeys) {
+        this.method = method;
+        this.handle = handle;
+        this.parameterCount = method.getParameterCount();
+        this.paramMapKeys = paramMapKeys;
+    }
+
+    /**
+     * 创建直接传参的调用器
+     */
+    static MapperInvoker direct(Object mapperBean, Method method) throws IllegalAccessException {
+        return new MapperInvoker(method, bind(mapperBean, method), null);
+    }
+
+    /**
+     * 创建从ParamMap中取参数的调用器
+     *
+     * @param resolver 方法的MyBatis参数名解析器
+     */
+    static MapperInvoker paramMap(Object mapperBean, Method method, ParamNameResolver resolver) throws IllegalAccessException {
+        String[] names = resolver.getNames();
+        String[][] keys = new String[method.getParameterCount()][];
+        for (int i = 0; i < keys.length; i++) {
+            String generic = ParamNameResolver.GENERIC_NAME_PREFIX + (i + 1);
+            keys[i] = i < names.length ? new String[]{names[i], generic} : new String[]{generic};
+        }
+        return new MapperInvoker(method, bind(mapperBean, method), keys);
+    }
+
+    private static MethodHandle bind(Object mapperBean, Method method) throws IllegalAccessException {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // 非public的Mapper接口
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        }
+        return handle.bindTo(mapperBean)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(INVOKER_TYPE);
+    }
+
+    /**
+     * 调用Mapper方法
+     *
+     * @param args 消息中的参数
+     * @return 调用结果
+     * @throws Exception 调用异常
+     */
+    Object invoke(Object[] args) throws Exception {
+        Object[] actualArgs = paramMapKeys != null ? unpack(args) : adapt(args);
+        try {
+            return (Object) handle.invokeExact(actualArgs);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("调用Mapper方法失败: " + method, e);
+        }
+    }
+
+    /**
+     * 从ParamMap中按参数名取出方法参数
+     */
+    private Object[] unpack(Object[] args) {
+        Map<?, ?> paramMap = args != null && args.length == 1 && args[0] instanceof MapperMethod.ParamMap
+                ? (Map<?, ?>) args[0] : null;
+        if (paramMap == null) {
+            return adapt(args);
+        }
+        Object[] actualArgs = new Object[parameterCount];
+        for (int i = 0; i < parameterCount; i++) {
+            for (String key : paramMapKeys[i]) {
+                if (paramMap.containsKey(key)) {
+                    actualArgs[i] = paramMap.get(key);
+                    break;
+                }
+            }
+        }
+        return actualArgs;
+    }
+
+    /**
+     * 无参方法的消息参数为[null]，按方法参数个数对齐
+     */
+    private Object[] adapt(Object[] args) {
+        if (args != null && args.length == parameterCount) {
+            return args;
+        }
+        Object[] actualArgs = new Object[parameterCount];
+        if (args != null) {
+            System.arraycopy(args, 0, actualArgs, 0, Math.min(args.length, parameterCount));
+        }
+        return actualArgs;
+    }
+}
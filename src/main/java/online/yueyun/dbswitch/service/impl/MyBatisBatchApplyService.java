@@ -0,0 +1,140 @@
+package online.yueyun.dbswitch.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.datasource.DynamicDataSource;
+import online.yueyun.dbswitch.datasource.DynamicDataSource.DataSourceType;
+import online.yueyun.dbswitch.enums.OperationType;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.service.BatchApplyService;
+import online.yueyun.dbswitch.service.MapperInvokeService;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于MyBatis批量执行器的消息批量执行服务
+ * 连续的、目标数据源相同的写操作消息在一个事务中通过ExecutorType.BATCH会话执行，
+ * 连续的同一语句由批量执行器合并为一次JDBC批量提交；批量执行失败时整批回滚并逐条执行，以确定每条消息的结果
+ */
+@Slf4j
+@Service
+public class MyBatisBatchApplyService implements BatchApplyService {
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MapperInvokeService mapperInvokeService;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Override
+    public boolean[] apply(List<DBOperationMessage> messages) {
+        boolean[] results = new boolean[messages.size()];
+        List<DBOperationMessage> run = new ArrayList<>();
+        int runStart = 0;
+        boolean runMaster = false;
+
+        for (int i = 0; i < messages.size(); i++) {
+            DBOperationMessage message = messages.get(i);
+            boolean useMaster = Boolean.TRUE.equals(message.getUseSecondMaster());
+            boolean batchable = isBatchable(message);
+
+            if (!run.isEmpty() && (!batchable || useMaster != runMaster)) {
+                applyRun(run, runMaster, results, runStart);
+                run.clear();
+            }
+            if (!batchable) {
+                results[i] = applyOne(message, useMaster);
+                continue;
+            }
+            if (run.isEmpty()) {
+                runStart = i;
+                runMaster = useMaster;
+            }
+            run.add(message);
+        }
+        if (!run.isEmpty()) {
+            applyRun(run, runMaster, results, runStart);
+        }
+        return results;
+    }
+
+    /**
+     * 在一个事务中批量执行连续的消息，失败时逐条执行
+     */
+    private void applyRun(List<DBOperationMessage> run, boolean useMaster, boolean[] results, int offset) {
+        DynamicDataSource.setDataSource(useMaster ? DataSourceType.MASTER : DataSourceType.SLAVE);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+                    for (DBOperationMessage message : run) {
+                        session.update(statementId(message), message.getArgs()[0]);
+                    }
+                    session.flushStatements();
+                }
+            });
+            for (int i = 0; i < run.size(); i++) {
+                results[offset + i] = true;
+            }
+            log.debug("批量执行消息成功，数据源: {}, 数量: {}", useMaster ? "主库" : "从库", run.size());
+            return;
+        } catch (Exception e) {
+            log.warn("批量执行消息失败，已回滚并逐条执行，数量: {}", run.size(), e);
+        } finally {
+            DynamicDataSource.clearDataSource();
+        }
+
+        for (int i = 0; i < run.size(); i++) {
+            results[offset + i] = applyOne(run.get(i), useMaster);
+        }
+    }
+
+    /**
+     * 单条执行消息
+     */
+    private boolean applyOne(DBOperationMessage message, boolean useMaster) {
+        try {
+            mapperInvokeService.invoke(message.getMapperClassName(), message.getMethodName(),
+                    message.getParameterTypes(), message.getArgs(), useMaster);
+            return true;
+        } catch (Exception e) {
+            log.error("数据库操作执行失败: {}", message, e);
+            return false;
+        }
+    }
+
+    /**
+     * 只有对应MappedStatement的写操作可以批量执行
+     */
+    private boolean isBatchable(DBOperationMessage message) {
+        if (message.getOperationType() == null || message.getOperationType() == OperationType.SELECT
+                || message.getArgs() == null || message.getArgs().length != 1) {
+            return false;
+        }
+        Configuration configuration = sqlSessionFactory.getConfiguration();
+        return configuration.hasStatement(statementId(message), false);
+    }
+
+    private String statementId(DBOperationMessage message) {
+        return message.getMapperClassName() + "." + message.getMethodName();
+    }
+}
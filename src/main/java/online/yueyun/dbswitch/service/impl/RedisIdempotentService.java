@@ -1,21 +1,48 @@
 package online.yueyun.dbswitch.service.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.enums.ClaimStatus;
 import online.yueyun.dbswitch.service.IdempotentService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 基于Redis的幂等性服务实现
+ * 键值为0表示处理中（带认领超时），为1表示已处理完成；批量操作通过管道一次往返完成
  */
 @Slf4j
 @Service
 public class RedisIdempotentService implements IdempotentService {
 
+    private static final String PROCESSING = "0";
+
+    private static final String DONE = "1";
+
+    /**
+     * 认领脚本：键不存在时写入处理中状态并返回C，否则返回当前状态
+     */
+    private static final byte[] CLAIM_SCRIPT = ("local v = redis.call('GET', KEYS[1]) "
+            + "if v then return v end "
+            + "redis.call('SET', KEYS[1], '" + PROCESSING + "', 'PX', ARGV[1]) "
+            + "return 'C'").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 释放脚本：仅删除处理中状态的键
+     */
+    private static final byte[] RELEASE_SCRIPT = ("if redis.call('GET', KEYS[1]) == '" + PROCESSING + "' then "
+            + "return redis.call('DEL', KEYS[1]) end "
+            + "return 0").getBytes(StandardCharsets.UTF_8);
+
     @Autowired
     private StringRedisTemplate redisTemplate;
 
@@ -25,15 +52,17 @@ public class RedisIdempotentService implements IdempotentService {
     @Value("${dbswitch.idempotent.expire-hours:24}")
     private long expireHours;
 
+    @Value("${dbswitch.idempotent.claim-timeout-ms:60000}")
+    private long claimTimeoutMs;
+
     @Override
     public boolean isProcessed(String messageId) {
         if (messageId == null || messageId.isEmpty()) {
             return false;
         }
-        
+
         String key = keyPrefix + messageId;
-        Boolean exists = redisTemplate.hasKey(key);
-        return exists != null && exists;
+        return DONE.equals(redisTemplate.opsForValue().get(key));
     }
 
     @Override
@@ -41,9 +70,92 @@ public class RedisIdempotentService implements IdempotentService {
         if (messageId == null || messageId.isEmpty()) {
             return;
         }
-        
+
         String key = keyPrefix + messageId;
-        redisTemplate.opsForValue().set(key, "1", expireHours, TimeUnit.HOURS);
+        redisTemplate.opsForValue().set(key, DONE, expireHours, TimeUnit.HOURS);
         log.debug("消息[{}]已标记为已处理，过期时间{}小时", messageId, expireHours);
     }
-} 
\ No newline at end of file
+
+    @Override
+    public ClaimStatus claim(String messageId) {
+        return claimBatch(Collections.singletonList(messageId)).get(0);
+    }
+
+    @Override
+    public List<ClaimStatus> claimBatch(List<String> messageIds) {
+        List<ClaimStatus> statuses = new ArrayList<>(messageIds.size());
+        List<byte[]> keys = new ArrayList<>(messageIds.size());
+        for (String messageId : messageIds) {
+            byte[] key = toKey(messageId);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        if (keys.isEmpty()) {
+            // 没有消息ID的消息无法做幂等控制，直接处理
+            messageIds.forEach(messageId -> statuses.add(ClaimStatus.CLAIMED));
+            return statuses;
+        }
+
+        byte[] timeout = String.valueOf(claimTimeoutMs).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] key : keys) {
+                connection.scriptingCommands().eval(CLAIM_SCRIPT, ReturnType.VALUE, 1, key, timeout);
+            }
+            return null;
+        });
+
+        int index = 0;
+        for (String messageId : messageIds) {
+            if (messageId == null || messageId.isEmpty()) {
+                statuses.add(ClaimStatus.CLAIMED);
+                continue;
+            }
+            Object result = results.get(index++);
+            if (DONE.equals(result)) {
+                statuses.add(ClaimStatus.DONE);
+            } else if (PROCESSING.equals(result)) {
+                statuses.add(ClaimStatus.IN_PROGRESS);
+            } else {
+                statuses.add(ClaimStatus.CLAIMED);
+            }
+        }
+        return statuses;
+    }
+
+    @Override
+    public void confirm(List<String> messageIds) {
+        long expireSeconds = TimeUnit.HOURS.toSeconds(expireHours);
+        byte[] done = DONE.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String messageId : messageIds) {
+                byte[] key = toKey(messageId);
+                if (key != null) {
+                    connection.stringCommands().setEx(key, expireSeconds, done);
+                }
+            }
+            return null;
+        });
+        log.debug("已确认处理完成的消息数: {}", messageIds.size());
+    }
+
+    @Override
+    public void release(List<String> messageIds) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String messageId : messageIds) {
+                byte[] key = toKey(messageId);
+                if (key != null) {
+                    connection.scriptingCommands().eval(RELEASE_SCRIPT, ReturnType.INTEGER, 1, key);
+                }
+            }
+            return null;
+        });
+    }
+
+    private byte[] toKey(String messageId) {
+        if (messageId == null || messageId.isEmpty()) {
+            return null;
+        }
+        return (keyPrefix + messageId).getBytes(StandardCharsets.UTF_8);
+    }
+}
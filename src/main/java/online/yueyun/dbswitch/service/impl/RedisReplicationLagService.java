@@ -0,0 +1,263 @@
+package online.yueyun.dbswitch.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
+import online.yueyun.dbswitch.service.ReplicationLagService;
+import online.yueyun.dbswitch.util.LogLinearHistogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redis的复制延迟服务实现
+ * 未执行完成的消息按创建时间计数保存在跳表中，最小键即本实例水位；等待重试的消息仍然计数，按消息ID登记，
+ * 重新接收时不再重复计数，超过retry-pin-ms未重新接收时解除。各实例定时把水位和上报时间写入Redis哈希，
+ * 全局水位取未过期实例中的最小值。延迟直方图每个窗口轮换一次，百分位按当前和上一个窗口合并计算
+ */
+@Slf4j
+@Service
+public class RedisReplicationLagService implements ReplicationLagService {
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private DBSwitchMetrics metrics;
+
+    @Value("${dbswitch.lag.redis-key:dbswitch:lag:watermark}")
+    private String watermarkKey;
+
+    @Value("${dbswitch.lag.instance-id:}")
+    private String instanceId;
+
+    @Value("${dbswitch.lag.publish-interval-ms:1000}")
+    private long publishIntervalMs;
+
+    @Value("${dbswitch.lag.instance-timeout-ms:30000}")
+    private long instanceTimeoutMs;
+
+    @Value("${dbswitch.lag.window-seconds:60}")
+    private long windowSeconds;
+
+    @Value("${dbswitch.lag.retry-pin-ms:120000}")
+    private long retryPinMs;
+
+    /**
+     * 未执行完成的消息：创建时间 -> 消息数，计数不可变，增减都在映射的原子操作中完成
+     */
+    private final ConcurrentNavigableMap<Long, Integer> inFlight = new ConcurrentSkipListMap<>();
+
+    /**
+     * 等待重试的消息：消息ID -> 固定信息，这些消息仍计入inFlight
+     */
+    private final ConcurrentMap<String, Pin> retrying = new ConcurrentHashMap<>();
+
+    private final LogLinearHistogram[] histograms = {new LogLinearHistogram(), new LogLinearHistogram()};
+
+    private volatile int currentHistogram;
+
+    private volatile long nextRotation;
+
+    /**
+     * 其他实例中最小的已执行水位，所有实例都空闲时为Long.MAX_VALUE
+     */
+    private volatile long globalWatermark = Long.MAX_VALUE;
+
+    private ScheduledExecutorService publishExecutor;
+
+    /**
+     * 启动水位定时上报
+     */
+    @PostConstruct
+    public void init() {
+        if (instanceId == null || instanceId.isEmpty()) {
+            instanceId = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        nextRotation = System.nanoTime() + TimeUnit.SECONDS.toNanos(windowSeconds);
+        publishExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dbswitch-lag-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publishExecutor.scheduleWithFixedDelay(this::publish, publishIntervalMs, publishIntervalMs, TimeUnit.MILLISECONDS);
+        metrics.bindReplicationLag(this);
+    }
+
+    /**
+     * 停止上报并删除本实例的水位
+     */
+    @PreDestroy
+    public void destroy() {
+        if (publishExecutor != null) {
+            publishExecutor.shutdownNow();
+        }
+        try {
+            redisTemplate.opsForHash().delete(watermarkKey, instanceId);
+        } catch (Exception e) {
+            log.warn("删除复制水位失败: {}", instanceId, e);
+        }
+    }
+
+    @Override
+    public void onReceived(DBOperationMessage message) {
+        if (message.getCreateTime() == null) {
+            return;
+        }
+        if (message.getMessageId() != null && retrying.remove(message.getMessageId()) != null) {
+            // 重试前已计数
+            return;
+        }
+        inFlight.merge(message.getCreateTime().getTime(), 1, Integer::sum);
+    }
+
+    @Override
+    public void onRetry(DBOperationMessage message) {
+        if (message.getCreateTime() == null) {
+            return;
+        }
+        if (message.getMessageId() == null) {
+            release(message.getCreateTime().getTime());
+            return;
+        }
+        long createTime = message.getCreateTime().getTime();
+        if (retrying.put(message.getMessageId(), new Pin(createTime, System.currentTimeMillis() + retryPinMs)) != null) {
+            // 同一消息重复登记时只保留一份计数
+            release(createTime);
+        }
+    }
+
+    @Override
+    public void onCompleted(DBOperationMessage message, boolean applied) {
+        if (message.getCreateTime() == null) {
+            return;
+        }
+        long createTime = message.getCreateTime().getTime();
+        release(createTime);
+        if (applied) {
+            long lagMillis = System.currentTimeMillis() - createTime;
+            rotateIfNecessary();
+            histograms[currentHistogram].record(lagMillis);
+            metrics.recordReplicationLag(lagMillis);
+        }
+    }
+
+    private void release(long createTime) {
+        inFlight.computeIfPresent(createTime, (time, count) -> count <= 1 ? null : count - 1);
+    }
+
+    /**
+     * 解除超过固定时长仍未重新接收的重试消息，这些消息已由其他实例接收或仍在消息队列中
+     */
+    private void expirePins(long now) {
+        for (Map.Entry<String, Pin> entry : retrying.entrySet()) {
+            Pin pin = entry.getValue();
+            if (now >= pin.deadline && retrying.remove(entry.getKey(), pin)) {
+                release(pin.createTime);
+            }
+        }
+    }
+
+    @Override
+    public long getLocalWatermark() {
+        Map.Entry<Long, Integer> oldest = inFlight.firstEntry();
+        return oldest == null ? System.currentTimeMillis() : oldest.getKey();
+    }
+
+    @Override
+    public long getGlobalWatermark() {
+        return Math.min(globalWatermark, getLocalWatermark());
+    }
+
+    @Override
+    public long getCurrentLagMillis() {
+        return Math.max(0, System.currentTimeMillis() - getGlobalWatermark());
+    }
+
+    @Override
+    public long getLagPercentile(double percentile) {
+        rotateIfNecessary();
+        return LogLinearHistogram.percentile(percentile, histograms);
+    }
+
+    /**
+     * 上报本实例水位并刷新全局水位，空闲实例的水位上报为-1，超时未上报的实例从哈希中删除
+     */
+    private void publish() {
+        try {
+            long now = System.currentTimeMillis();
+            expirePins(now);
+            Map.Entry<Long, Integer> oldest = inFlight.firstEntry();
+            redisTemplate.opsForHash().put(watermarkKey, instanceId, (oldest == null ? -1 : oldest.getKey()) + ":" + now);
+
+            long watermark = Long.MAX_VALUE;
+            for (Map.Entry<Object, Object> entry : redisTemplate.opsForHash().entries(watermarkKey).entrySet()) {
+                String value = String.valueOf(entry.getValue());
+                int separator = value.indexOf(':');
+                if (separator < 0) {
+                    continue;
+                }
+                long publishedAt = Long.parseLong(value.substring(separator + 1));
+                if (now - publishedAt > instanceTimeoutMs) {
+                    redisTemplate.opsForHash().delete(watermarkKey, entry.getKey());
+                    log.info("消费实例超时未上报复制水位，已移除: {}", entry.getKey());
+                    continue;
+                }
+                long instanceWatermark = Long.parseLong(value.substring(0, separator));
+                if (instanceWatermark >= 0) {
+                    watermark = Math.min(watermark, instanceWatermark);
+                }
+            }
+            globalWatermark = watermark;
+        } catch (Exception e) {
+            log.warn("上报复制水位失败", e);
+        }
+    }
+
+    /**
+     * 窗口到期时清空较旧的直方图并切换为当前直方图
+     */
+    private void rotateIfNecessary() {
+        if (System.nanoTime() - nextRotation < 0) {
+            return;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - nextRotation < 0) {
+                return;
+            }
+            int next = 1 - currentHistogram;
+            histograms[next].reset();
+            currentHistogram = next;
+            nextRotation = now + TimeUnit.SECONDS.toNanos(windowSeconds);
+        }
+    }
+
+    /**
+     * 等待重试的消息的创建时间和解除时间
+     */
+    private static final class Pin {
+
+        private final long createTime;
+
+        private final long deadline;
+
+        Pin(long createTime, long deadline) {
+            this.createTime = createTime;
+            this.deadline = deadline;
+        }
+    }
+}
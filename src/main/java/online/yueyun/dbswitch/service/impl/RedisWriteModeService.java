@@ -1,44 +1,136 @@
 package online.yueyun.dbswitch.service.impl;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import online.yueyun.dbswitch.enums.WriteMode;
+import online.yueyun.dbswitch.service.WriteModeListener;
 import online.yueyun.dbswitch.service.WriteModeService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * 基于Redis的写入模式服务实现
+ * 本地缓存当前写入模式和读权重，通过Redis发布订阅推送变更，并定时与Redis校对以弥补丢失的通知；
+ * 本节点按新模式路由之前先回调写入模式变更监听器
  */
 @Slf4j
 @Service
 public class RedisWriteModeService implements WriteModeService {
 
+    /**
+     * 读权重变更通知，与写入模式通知共用频道
+     */
+    private static final String READ_WEIGHTS_MESSAGE = "READ_WEIGHTS";
+
     @Autowired
     private StringRedisTemplate redisTemplate;
 
     @Value("${dbswitch.write-mode.redis-key:dbswitch:write-mode}")
     private String writeModeKey;
 
+    @Value("${dbswitch.write-mode.read-weight-key:dbswitch:read-weights}")
+    private String readWeightKey;
+
     @Value("${dbswitch.write-mode.default:MASTER_ONLY}")
     private String defaultWriteMode;
 
-    @Override
-    public WriteMode getCurrentWriteMode() {
+    @Value("${dbswitch.write-mode.local-cache:true}")
+    private boolean localCacheEnabled;
+
+    @Value("${dbswitch.write-mode.channel:dbswitch:write-mode:channel}")
+    private String writeModeChannel;
+
+    @Value("${dbswitch.write-mode.reconcile-interval-ms:5000}")
+    private long reconcileIntervalMs;
+
+    @Autowired
+    private ObjectProvider<WriteModeListener> writeModeListeners;
+
+    /**
+     * 本地缓存的写入模式
+     */
+    private volatile WriteMode cachedWriteMode;
+
+    /**
+     * 本地缓存的读权重，不可变
+     */
+    private volatile Map<String, Integer> cachedReadWeights = Collections.emptyMap();
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    private ScheduledExecutorService reconcileExecutor;
+
+    /**
+     * 初始化本地缓存，订阅写入模式变更通知并启动定时校对
+     */
+    @PostConstruct
+    public void init() {
+        if (!localCacheEnabled) {
+            return;
+        }
+
+        cachedWriteMode = loadWriteMode();
+        cachedReadWeights = loadReadWeights();
+        log.info("写入模式本地缓存已启用，初始写入模式: {}, 读权重: {}", cachedWriteMode, cachedReadWeights);
+
         try {
-            String modeValue = redisTemplate.opsForValue().get(writeModeKey);
-            if (modeValue == null || modeValue.isEmpty()) {
-                log.debug("未设置写入模式，使用默认模式: {}", defaultWriteMode);
-                return WriteMode.valueOf(defaultWriteMode);
-            }
-            
-            log.debug("当前写入模式: {}", modeValue);
-            return WriteMode.valueOf(modeValue);
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(redisTemplate.getRequiredConnectionFactory());
+            listenerContainer.addMessageListener(this::onWriteModeMessage, new ChannelTopic(writeModeChannel));
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
         } catch (Exception e) {
-            log.error("获取写入模式异常，使用默认模式: {}", defaultWriteMode, e);
-            return WriteMode.valueOf(defaultWriteMode);
+            log.error("订阅写入模式变更通知失败，仅依赖定时校对更新本地缓存", e);
+        }
+
+        reconcileExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dbswitch-write-mode-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconcileExecutor.scheduleWithFixedDelay(this::reconcile,
+                reconcileIntervalMs, reconcileIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止订阅和定时校对
+     */
+    @PreDestroy
+    public void destroy() {
+        if (reconcileExecutor != null) {
+            reconcileExecutor.shutdownNow();
         }
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                log.warn("关闭写入模式订阅失败", e);
+            }
+        }
+    }
+
+    @Override
+    public WriteMode getCurrentWriteMode() {
+        WriteMode writeMode = cachedWriteMode;
+        if (writeMode != null) {
+            return writeMode;
+        }
+        return loadWriteMode();
     }
 
     @Override
@@ -47,12 +139,192 @@ public class RedisWriteModeService implements WriteModeService {
             log.warn("写入模式不能为空");
             return;
         }
-        
+
         try {
-            redisTemplate.opsForValue().set(writeModeKey, writeMode.name());
+            synchronized (this) {
+                // 写入Redis之前在发起切换的节点回调监听器（如预热新的目标库），其他节点收到通知时目标库已预热
+                notifyListeners(localCacheEnabled ? cachedWriteMode : loadWriteMode(), writeMode);
+                redisTemplate.opsForValue().set(writeModeKey, writeMode.name());
+                if (localCacheEnabled && cachedWriteMode != writeMode) {
+                    log.info("本地写入模式由 {} 切换为 {}", cachedWriteMode, writeMode);
+                    cachedWriteMode = writeMode;
+                }
+            }
+            if (localCacheEnabled) {
+                // 通知其他节点刷新本地缓存
+                redisTemplate.convertAndSend(writeModeChannel, writeMode.name());
+            }
             log.info("写入模式已更新为: {}", writeMode);
         } catch (Exception e) {
             log.error("更新写入模式异常: {}", writeMode, e);
         }
     }
-} 
\ No newline at end of file
+
+    @Override
+    public Map<String, Integer> getReadWeights() {
+        return localCacheEnabled ? cachedReadWeights : loadReadWeights();
+    }
+
+    @Override
+    public void updateReadWeight(String scope, Integer targetPercent) {
+        if (scope == null || scope.isEmpty()) {
+            throw new IllegalArgumentException("读权重作用域不能为空");
+        }
+        if (targetPercent != null && (targetPercent < 0 || targetPercent > 100)) {
+            throw new IllegalArgumentException("读权重必须在0-100之间: " + targetPercent);
+        }
+
+        try {
+            if (targetPercent == null) {
+                redisTemplate.opsForHash().delete(readWeightKey, scope);
+            } else {
+                redisTemplate.opsForHash().put(readWeightKey, scope, targetPercent.toString());
+            }
+            if (localCacheEnabled) {
+                applyReadWeights(readReadWeights());
+                redisTemplate.convertAndSend(writeModeChannel, READ_WEIGHTS_MESSAGE);
+            }
+            log.info("读权重已更新: {} -> {}", scope, targetPercent);
+        } catch (Exception e) {
+            log.error("更新读权重异常: {} -> {}", scope, targetPercent, e);
+        }
+    }
+
+    /**
+     * 从Redis读取写入模式
+     */
+    private WriteMode loadWriteMode() {
+        try {
+            return readWriteMode();
+        } catch (Exception e) {
+            log.error("获取写入模式异常，使用默认模式: {}", defaultWriteMode, e);
+            return WriteMode.valueOf(defaultWriteMode);
+        }
+    }
+
+    /**
+     * 从Redis读取写入模式，异常直接抛出
+     */
+    private WriteMode readWriteMode() {
+        String modeValue = redisTemplate.opsForValue().get(writeModeKey);
+        if (modeValue == null || modeValue.isEmpty()) {
+            log.debug("未设置写入模式，使用默认模式: {}", defaultWriteMode);
+            return WriteMode.valueOf(defaultWriteMode);
+        }
+
+        log.debug("当前写入模式: {}", modeValue);
+        return WriteMode.valueOf(modeValue);
+    }
+
+    /**
+     * 从Redis读取读权重，异常时不按权重路由
+     */
+    private Map<String, Integer> loadReadWeights() {
+        try {
+            return readReadWeights();
+        } catch (Exception e) {
+            log.error("获取读权重异常，按写入模式路由查询", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * 从Redis读取读权重，忽略无效的值，异常直接抛出
+     */
+    private Map<String, Integer> readReadWeights() {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(readWeightKey);
+        if (entries.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> weights = new HashMap<>(entries.size() * 2);
+        entries.forEach((scope, value) -> {
+            try {
+                int percent = Integer.parseInt(value.toString());
+                if (percent >= 0 && percent <= 100) {
+                    weights.put(scope.toString(), percent);
+                    return;
+                }
+            } catch (NumberFormatException ignored) {
+                // 与超出范围的值一同忽略
+            }
+            log.warn("忽略无效的读权重: {} -> {}", scope, value);
+        });
+        return Collections.unmodifiableMap(weights);
+    }
+
+    /**
+     * 处理写入模式和读权重变更通知
+     */
+    private void onWriteModeMessage(Message message, byte[] pattern) {
+        String modeValue = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (READ_WEIGHTS_MESSAGE.equals(modeValue)) {
+            applyReadWeights(loadReadWeights());
+            return;
+        }
+        try {
+            applyWriteMode(WriteMode.valueOf(modeValue));
+        } catch (IllegalArgumentException e) {
+            log.warn("收到无效的写入模式通知: {}，重新从Redis加载", modeValue);
+            applyWriteMode(loadWriteMode());
+        }
+    }
+
+    /**
+     * 定时与Redis校对本地缓存，Redis不可用时保留当前缓存
+     */
+    private void reconcile() {
+        try {
+            WriteMode latest = readWriteMode();
+            if (latest != cachedWriteMode) {
+                log.warn("本地写入模式[{}]与Redis[{}]不一致，已校正", cachedWriteMode, latest);
+                applyWriteMode(latest);
+            }
+            Map<String, Integer> latestWeights = readReadWeights();
+            if (!latestWeights.equals(cachedReadWeights)) {
+                log.warn("本地读权重{}与Redis{}不一致，已校正", cachedReadWeights, latestWeights);
+                applyReadWeights(latestWeights);
+            }
+        } catch (Exception e) {
+            log.error("校对写入模式失败", e);
+        }
+    }
+
+    /**
+     * 更新本地缓存，通知线程、校对线程和发起切换的线程互斥，同一次变更只回调一次监听器
+     */
+    private synchronized void applyWriteMode(WriteMode writeMode) {
+        if (!localCacheEnabled || writeMode == cachedWriteMode) {
+            return;
+        }
+        notifyListeners(cachedWriteMode, writeMode);
+        log.info("本地写入模式由 {} 切换为 {}", cachedWriteMode, writeMode);
+        cachedWriteMode = writeMode;
+    }
+
+    /**
+     * 更新本地缓存的读权重
+     */
+    private synchronized void applyReadWeights(Map<String, Integer> readWeights) {
+        if (readWeights.equals(cachedReadWeights)) {
+            return;
+        }
+        log.info("本地读权重由 {} 切换为 {}", cachedReadWeights, readWeights);
+        cachedReadWeights = readWeights;
+    }
+
+    /**
+     * 回调写入模式变更监听器，监听器异常不影响切换
+     */
+    private void notifyListeners(WriteMode previous, WriteMode current) {
+        if (previous == current) {
+            return;
+        }
+        writeModeListeners.orderedStream().forEach(listener -> {
+            try {
+                listener.beforeWriteModeChange(previous, current);
+            } catch (Exception e) {
+                log.warn("写入模式变更监听器执行失败: {}", listener.getClass().getName(), e);
+            }
+        });
+    }
+}
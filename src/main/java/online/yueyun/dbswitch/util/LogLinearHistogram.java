@@ -0,0 +1,108 @@
+package online.yueyun.dbswitch.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数线性直方图
+ * 小于2^SUB_BITS的值每个值一个桶，更大的值按2的幂分段，每段再线性分为2^SUB_BITS个桶，
+ * 相对误差不超过1/2^SUB_BITS；记录只做一次原子自增，不加锁、不分配对象
+ */
+public class LogLinearHistogram {
+
+    /**
+     * 每个2的幂分段内的线性桶位数，5位即32个桶，相对误差约3%
+     */
+    private static final int SUB_BITS = 5;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * 记录一个值，负数按0记录
+     *
+     * @param value 值
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucketOf(Math.max(0, value)));
+    }
+
+    /**
+     * 记录的值总数
+     */
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * 清空直方图
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * 合并多个直方图后计算百分位值，返回所在桶的上界；没有记录时返回0
+     *
+     * @param percentile 百分位，取值0到100
+     * @param histograms 直方图
+     * @return 百分位值
+     */
+    public static long percentile(double percentile, LogLinearHistogram... histograms) {
+        long[] merged = new long[BUCKET_COUNT];
+        long total = 0;
+        for (LogLinearHistogram histogram : histograms) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long count = histogram.counts.get(i);
+                merged[i] += count;
+                total += count;
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += merged[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * 值所在的桶
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_COUNT - 1);
+        return (shift + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * 桶内的最大值
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long sub = bucket % SUB_COUNT;
+        long lower = (SUB_COUNT + sub) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
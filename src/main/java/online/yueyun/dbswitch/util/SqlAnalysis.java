@@ -0,0 +1,54 @@
+package online.yueyun.dbswitch.util;
+
+import lombok.Getter;
+import online.yueyun.dbswitch.enums.OperationType;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * SQL语句分析结果
+ * 由SqlParserUtil.analyze生成并缓存，实例不可变，可在线程间共享
+ */
+@Getter
+public class SqlAnalysis {
+
+    /**
+     * 无法识别的语句
+     */
+    public static final SqlAnalysis UNKNOWN = new SqlAnalysis(OperationType.UNKNOWN,
+            Collections.emptySet(), Collections.emptySet(), false);
+
+    /**
+     * 操作类型，REPLACE和INSERT ... ON DUPLICATE KEY UPDATE归为INSERT
+     */
+    private final OperationType operationType;
+
+    /**
+     * 语句涉及的全部表（小写，不含库名和CTE名）
+     */
+    private final Set<String> tables;
+
+    /**
+     * 写操作修改的表，查询语句为空
+     */
+    private final Set<String> writeTables;
+
+    /**
+     * 是否为REPLACE或INSERT ... ON DUPLICATE KEY UPDATE
+     */
+    private final boolean upsert;
+
+    public SqlAnalysis(OperationType operationType, Set<String> tables, Set<String> writeTables, boolean upsert) {
+        this.operationType = operationType;
+        this.tables = Collections.unmodifiableSet(tables);
+        this.writeTables = Collections.unmodifiableSet(writeTables);
+        this.upsert = upsert;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlAnalysis{" + operationType + ", tables=" + tables + ", writeTables=" + writeTables
+                + ", upsert=" + upsert + "}";
+    }
+}
@@ -3,12 +3,64 @@ package online.yueyun.dbswitch.util;
 import lombok.extern.slf4j.Slf4j;
 import online.yueyun.dbswitch.enums.OperationType;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * SQL解析工具类
+ * analyze对SQL做词法扫描（跳过注释和字符串字面量），识别CTE、REPLACE和INSERT ... ON DUPLICATE KEY UPDATE，
+ * 提取涉及的表和写入的表；分析结果先按原始SQL、再按压缩空白后的SQL缓存，缓存条目数有上限
  */
 @Slf4j
 public class SqlParserUtil {
 
+    /**
+     * 单个缓存的最大条目数，超过后淘汰约四分之一的条目
+     */
+    private static final int MAX_CACHE_SIZE = 4096;
+
+    /**
+     * 按原始SQL缓存，静态SQL每次得到相同的字符串，命中时不再压缩空白
+     */
+    private static final Map<String, SqlAnalysis> RAW_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 按压缩空白后的SQL缓存，动态SQL只有空白不同的变体共享一次分析
+     */
+    private static final Map<String, SqlAnalysis> NORMALIZED_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 分析SQL语句，结果会被缓存
+     *
+     * @param sql SQL语句
+     * @return 分析结果，无法识别时为SqlAnalysis.UNKNOWN
+     */
+    public static SqlAnalysis analyze(String sql) {
+        if (sql == null || sql.isEmpty()) {
+            return SqlAnalysis.UNKNOWN;
+        }
+        SqlAnalysis analysis = RAW_CACHE.get(sql);
+        if (analysis != null) {
+            return analysis;
+        }
+        String normalized = normalize(sql);
+        analysis = NORMALIZED_CACHE.get(normalized);
+        if (analysis == null) {
+            analysis = parse(tokenize(sql));
+            putBounded(NORMALIZED_CACHE, normalized, analysis);
+        }
+        putBounded(RAW_CACHE, sql, analysis);
+        return analysis;
+    }
+
     /**
      * 解析操作类型
      *
@@ -20,21 +72,12 @@ public class SqlParserUtil {
         if (sql == null || sql.isEmpty()) {
             return parseOperationTypeByMethodName(methodName);
         }
-
-        String upperSql = sql.trim().toUpperCase();
-        
-        if (upperSql.startsWith("SELECT")) {
-            return OperationType.SELECT;
-        } else if (upperSql.startsWith("INSERT")) {
-            return OperationType.INSERT;
-        } else if (upperSql.startsWith("UPDATE")) {
-            return OperationType.UPDATE;
-        } else if (upperSql.startsWith("DELETE")) {
-            return OperationType.DELETE;
-        } else {
-            log.warn("无法解析SQL操作类型，SQL: {}", sql);
-            return parseOperationTypeByMethodName(methodName);
+        OperationType operationType = analyze(sql).getOperationType();
+        if (operationType != OperationType.UNKNOWN) {
+            return operationType;
         }
+        log.warn("无法解析SQL操作类型，SQL: {}", sql);
+        return parseOperationTypeByMethodName(methodName);
     }
 
     /**
@@ -74,4 +117,321 @@ public class SqlParserUtil {
             return OperationType.UNKNOWN;
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 提取SQL涉及的表，表名统一为小写并去掉库名和反引号，不含CTE名
+     *
+     * @param sql SQL语句
+     * @return 表名集合
+     */
+    public static Set<String> extractTables(String sql) {
+        return analyze(sql).getTables();
+    }
+
+    /**
+     * 压缩连续空白为一个空格并去掉首尾空白；字面量内的空白也会被压缩，不影响分析结果
+     */
+    static String normalize(String sql) {
+        StringBuilder builder = new StringBuilder(sql.length());
+        boolean space = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = builder.length() > 0;
+            } else {
+                if (space) {
+                    builder.append(' ');
+                    space = false;
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void putBounded(Map<String, SqlAnalysis> cache, String key, SqlAnalysis analysis) {
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            Iterator<String> iterator = cache.keySet().iterator();
+            for (int i = 0; i < MAX_CACHE_SIZE / 4 && iterator.hasNext(); i++) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        cache.put(key, analysis);
+    }
+
+    /**
+     * 词法扫描：跳过注释，字符串字面量记为一个占位符号，限定名（库名.表名）合并为一个标识符
+     */
+    static List<Token> tokenize(String sql) {
+        List<Token> tokens = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#' || c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '\'' || c == '"') {
+                i = skipLiteral(sql, i, c);
+                tokens.add(new Token("?", false));
+            } else if (isIdentifierChar(c) || c == '`') {
+                int start = i;
+                while (i < length) {
+                    char current = sql.charAt(i);
+                    if (current == '`') {
+                        int end = sql.indexOf('`', i + 1);
+                        i = end < 0 ? length : end + 1;
+                    } else if (isIdentifierChar(current)) {
+                        i++;
+                    } else if (current == '.' && i + 1 < length
+                            && (isIdentifierChar(sql.charAt(i + 1)) || sql.charAt(i + 1) == '`')) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                tokens.add(new Token(sql.substring(start, i), true));
+            } else {
+                tokens.add(new Token(String.valueOf(c), false));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 跳过字符串字面量，支持反斜杠转义和重复引号转义，返回结束引号之后的位置
+     */
+    private static int skipLiteral(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c != quote) {
+                i++;
+            } else if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                i += 2;
+            } else {
+                return i + 1;
+            }
+        }
+        return sql.length();
+    }
+
+    /**
+     * 按词法单元分析语句
+     */
+    static SqlAnalysis parse(List<Token> tokens) {
+        // 跳过开头的括号和CTE定义，找到主语句关键字
+        int index = 0;
+        while (index < tokens.size() && tokens.get(index).is("(")) {
+            index++;
+        }
+        Set<String> cteNames = new HashSet<>();
+        if (index < tokens.size() && tokens.get(index).is("WITH")) {
+            index = skipCommonTableExpressions(tokens, index + 1, cteNames);
+        }
+        if (index >= tokens.size()) {
+            return SqlAnalysis.UNKNOWN;
+        }
+        Token keyword = tokens.get(index);
+        OperationType operationType;
+        boolean upsert = false;
+        if (keyword.is("SELECT")) {
+            operationType = OperationType.SELECT;
+        } else if (keyword.is("INSERT")) {
+            operationType = OperationType.INSERT;
+        } else if (keyword.is("REPLACE")) {
+            operationType = OperationType.INSERT;
+            upsert = true;
+        } else if (keyword.is("UPDATE")) {
+            operationType = OperationType.UPDATE;
+        } else if (keyword.is("DELETE")) {
+            operationType = OperationType.DELETE;
+        } else {
+            return SqlAnalysis.UNKNOWN;
+        }
+
+        Set<String> tables = new LinkedHashSet<>();
+        Set<String> writeTables = new LinkedHashSet<>();
+        // 括号栈：true为子查询括号，false为函数调用、列表等括号，其中的FROM（如EXTRACT(YEAR FROM d)）不是表引用
+        Deque<Boolean> parentheses = new ArrayDeque<>();
+        // expectTable：下一个标识符是表名；tableList：处于表列表中，逗号后还有表名；writeTarget：表名是写入目标
+        boolean expectTable = false;
+        boolean tableList = false;
+        boolean writeTarget = false;
+        Token previous = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.is("(")) {
+                Token next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+                parentheses.push(next != null && (next.is("SELECT") || next.is("WITH")));
+                expectTable = false;
+                tableList = false;
+            } else if (token.is(")")) {
+                if (!parentheses.isEmpty()) {
+                    parentheses.pop();
+                }
+                expectTable = false;
+                tableList = false;
+            } else if (token.is(",")) {
+                expectTable = tableList;
+            } else if (!token.isWord()) {
+                expectTable = false;
+                tableList = false;
+            } else if (expectTable) {
+                String table = normalizeTable(token.getText());
+                tables.add(table);
+                if (writeTarget) {
+                    writeTables.add(table);
+                }
+                expectTable = false;
+            } else if (parentheses.isEmpty() || parentheses.peek()) {
+                boolean topLevel = parentheses.isEmpty();
+                if (token.is("FROM")) {
+                    expectTable = true;
+                    tableList = true;
+                    writeTarget = topLevel && operationType == OperationType.DELETE;
+                } else if (token.is("JOIN")) {
+                    expectTable = true;
+                    tableList = false;
+                    writeTarget = topLevel && operationType != OperationType.SELECT
+                            && operationType != OperationType.INSERT;
+                } else if (token.is("INTO")) {
+                    expectTable = true;
+                    tableList = false;
+                    writeTarget = topLevel && operationType == OperationType.INSERT;
+                } else if (token.is("UPDATE")) {
+                    if (previous != null && previous.is("KEY")) {
+                        // INSERT ... ON DUPLICATE KEY UPDATE
+                        upsert = true;
+                    } else if (previous == null || !previous.is("FOR")) {
+                        expectTable = true;
+                        tableList = true;
+                        writeTarget = topLevel && operationType == OperationType.UPDATE;
+                    }
+                } else if (tableList && !isAlias(token.getText())) {
+                    tableList = false;
+                }
+            }
+            previous = token;
+        }
+        tables.removeAll(cteNames);
+        writeTables.removeAll(cteNames);
+        return new SqlAnalysis(operationType, tables, writeTables, upsert);
+    }
+
+    /**
+     * 跳过WITH之后的CTE定义并记录CTE名，返回主语句关键字的位置
+     */
+    private static int skipCommonTableExpressions(List<Token> tokens, int index, Set<String> cteNames) {
+        if (index < tokens.size() && tokens.get(index).is("RECURSIVE")) {
+            index++;
+        }
+        while (index < tokens.size()) {
+            cteNames.add(normalizeTable(tokens.get(index).getText()));
+            index++;
+            // 可选的列名列表
+            while (index < tokens.size() && !tokens.get(index).is("AS")) {
+                index = tokens.get(index).is("(") ? skipParentheses(tokens, index) : index + 1;
+            }
+            index++;
+            if (index < tokens.size() && tokens.get(index).is("(")) {
+                index = skipParentheses(tokens, index);
+            }
+            if (index >= tokens.size() || !tokens.get(index).is(",")) {
+                return index;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * 跳过从index处左括号开始的括号块，返回对应右括号之后的位置
+     */
+    private static int skipParentheses(List<Token> tokens, int index) {
+        int depth = 0;
+        for (int i = index; i < tokens.size(); i++) {
+            if (tokens.get(i).is("(")) {
+                depth++;
+            } else if (tokens.get(i).is(")") && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return tokens.size();
+    }
+
+    /**
+     * 表列表中表名之后的别名，遇到关键字时表列表结束
+     */
+    private static boolean isAlias(String word) {
+        switch (word.toUpperCase()) {
+            case "WHERE":
+            case "GROUP":
+            case "ORDER":
+            case "LIMIT":
+            case "HAVING":
+            case "UNION":
+            case "ON":
+            case "USING":
+            case "SET":
+            case "VALUES":
+            case "LEFT":
+            case "RIGHT":
+            case "INNER":
+            case "CROSS":
+            case "NATURAL":
+            case "STRAIGHT_JOIN":
+            case "WINDOW":
+            case "FOR":
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static String normalizeTable(String name) {
+        String table = name.replace("`", "");
+        int dot = table.lastIndexOf('.');
+        return (dot >= 0 ? table.substring(dot + 1) : table).toLowerCase();
+    }
+
+    /**
+     * 词法单元：标识符、关键字、数字或单个符号；反引号括起的标识符不会与关键字相等
+     */
+    static final class Token {
+
+        private final String text;
+
+        private final boolean word;
+
+        Token(String text, boolean word) {
+            this.text = text;
+            this.word = word;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        boolean isWord() {
+            return word;
+        }
+
+        boolean is(String value) {
+            return text.equalsIgnoreCase(value);
+        }
+    }
+}
@@ -8,4 +8,24 @@ CREATE TABLE users (
 
 INSERT INTO users (username, email) VALUES
   ('user1', 'user1@example.com'),
-  ('user2', 'user2@example.com'); 
\ No newline at end of file
+  ('user2', 'user2@example.com');
+
+-- 发件箱表（开启dbswitch.outbox.enabled时，主库和从库都需要创建）
+CREATE TABLE IF NOT EXISTS dbswitch_outbox (
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  message_id VARCHAR(64) NOT NULL,
+  codec VARCHAR(16) NULL,
+  payload MEDIUMBLOB NOT NULL,
+  create_time TIMESTAMP(3) NOT NULL
+);
+
+-- 发件箱死信表，保存无法解码的发件箱消息，id与发件箱中的id相同
+CREATE TABLE IF NOT EXISTS dbswitch_outbox_dead (
+  id BIGINT PRIMARY KEY,
+  message_id VARCHAR(64) NOT NULL,
+  codec VARCHAR(16) NULL,
+  payload MEDIUMBLOB NOT NULL,
+  create_time TIMESTAMP(3) NOT NULL,
+  error VARCHAR(512) NULL,
+  dead_time TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
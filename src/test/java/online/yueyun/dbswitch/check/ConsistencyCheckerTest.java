@@ -0,0 +1,76 @@
+package online.yueyun.dbswitch.check;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ConsistencyChecker范围切分测试
+ */
+class ConsistencyCheckerTest {
+
+    @Test
+    void splitsEvenRangeIntoFanoutParts() {
+        List<long[]> ranges = ConsistencyChecker.split(0, 160, 16);
+
+        assertThat(ranges).hasSize(16);
+        assertContiguous(ranges, 0, 160);
+        assertThat(ranges).allSatisfy(range -> assertThat(range[1] - range[0]).isEqualTo(10));
+    }
+
+    @Test
+    void lastPartTakesTheRemainder() {
+        List<long[]> ranges = ConsistencyChecker.split(-1, 100, 16);
+
+        assertThat(ranges).hasSize(15);
+        assertContiguous(ranges, -1, 100);
+        assertThat(ranges.get(0)).containsExactly(-1, 6);
+        assertThat(ranges.get(ranges.size() - 1)).containsExactly(97, 100);
+    }
+
+    @Test
+    void narrowRangeYieldsOneKeyPerPart() {
+        List<long[]> ranges = ConsistencyChecker.split(10, 13, 16);
+
+        assertThat(ranges).hasSize(3);
+        assertContiguous(ranges, 10, 13);
+    }
+
+    @Test
+    void neverExceedsFanout() {
+        for (long width = 1; width <= 1000; width++) {
+            List<long[]> ranges = ConsistencyChecker.split(5, 5 + width, 7);
+            assertThat(ranges.size()).as("width %d", width).isLessThanOrEqualTo(7);
+            assertContiguous(ranges, 5, 5 + width);
+        }
+    }
+
+    @Test
+    void rangesNearLongBoundsDoNotOverflow() {
+        List<long[]> upperEdge = ConsistencyChecker.split(Long.MAX_VALUE - 1000, Long.MAX_VALUE, 16);
+        assertThat(upperEdge).hasSize(16);
+        assertContiguous(upperEdge, Long.MAX_VALUE - 1000, Long.MAX_VALUE);
+
+        List<long[]> fullSpan = ConsistencyChecker.split(Long.MIN_VALUE, Long.MAX_VALUE, 16);
+        assertThat(fullSpan).hasSize(16);
+        assertContiguous(fullSpan, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * 子范围首尾相接，覆盖(lower, upper]且各自非空
+     */
+    private static void assertContiguous(List<long[]> ranges, long lower, long upper) {
+        assertThat(ranges).isNotEmpty();
+        assertThat(ranges.get(0)[0]).isEqualTo(lower);
+        assertThat(ranges.get(ranges.size() - 1)[1]).isEqualTo(upper);
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            assertThat(range[0]).isLessThan(range[1]);
+            if (i > 0) {
+                assertThat(range[0]).isEqualTo(ranges.get(i - 1)[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package online.yueyun.dbswitch.codec;
+
+import lombok.Data;
+import online.yueyun.dbswitch.aop.MappedStatementRouteRegistry;
+import online.yueyun.dbswitch.enums.OperationType;
+import online.yueyun.dbswitch.message.DBOperationMessage;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * BinaryMessageCodec编解码往返测试
+ */
+class BinaryMessageCodecTest {
+
+    private static final String MAPPER = "com.example.mapper.UserMapper";
+
+    private static final List<String> TEST_TYPES = Arrays.asList(User.class.getName(), Address.class.getName(),
+            Status.class.getName(), Money.class.getName());
+
+    private MappedStatementRouteRegistry routeRegistry;
+
+    private BinaryMessageCodec codec;
+
+    @BeforeEach
+    void setUp() {
+        Configuration configuration = new Configuration();
+        configuration.addMappedStatement(new MappedStatement.Builder(configuration, MAPPER + ".updateUser",
+                new StaticSqlSource(configuration, "UPDATE user SET name = ? WHERE id = ?"), SqlCommandType.UPDATE).build());
+        routeRegistry = new MappedStatementRouteRegistry();
+        routeRegistry.register(configuration);
+        codec = new BinaryMessageCodec(routeRegistry, typeFilter(TEST_TYPES));
+    }
+
+    @Test
+    void roundTripsHeaderFields() {
+        DBOperationMessage message = DBOperationMessage.builder()
+                .messageId(UUID.randomUUID().toString())
+                .mapperClassName(MAPPER)
+                .methodName("updateUser")
+                .parameterTypes(new String[]{"java.lang.String", "java.lang.Long"})
+                .args(new Object[]{"alice", 1L})
+                .operationType(OperationType.UPDATE)
+                .createTime(new Date(1_700_000_000_123L))
+                .retryCount(3)
+                .success(false)
+                .useSecondMaster(true)
+                .build();
+
+        assertThat(roundTrip(message)).usingRecursiveComparison().isEqualTo(message);
+    }
+
+    @Test
+    void roundTripsAbsentAndNonUuidFields() {
+        DBOperationMessage empty = new DBOperationMessage();
+        assertThat(roundTrip(empty)).usingRecursiveComparison().isEqualTo(empty);
+
+        DBOperationMessage message = DBOperationMessage.builder()
+                .messageId("order-42")
+                .mapperClassName(MAPPER)
+                .methodName("updateUser")
+                .args(new Object[0])
+                .retryCount(0)
+                .success(true)
+                .build();
+        assertThat(roundTrip(message)).usingRecursiveComparison().isEqualTo(message);
+    }
+
+    @Test
+    void registeredStatementIsEncodedByDictionary() {
+        DBOperationMessage registered = DBOperationMessage.builder()
+                .mapperClassName(MAPPER).methodName("updateUser").build();
+        DBOperationMessage unregistered = DBOperationMessage.builder()
+                .mapperClassName(MAPPER).methodName("deleteUser").build();
+
+        byte[] dictionaryEncoded = codec.encode(registered);
+        byte[] inlineEncoded = codec.encode(unregistered);
+        assertThat(dictionaryEncoded.length).isLessThan(inlineEncoded.length);
+
+        // 另一个实例只依赖路由表即可解码
+        BinaryMessageCodec receiver = new BinaryMessageCodec(routeRegistry, typeFilter(Collections.emptyList()));
+        DBOperationMessage decoded = receiver.decode(dictionaryEncoded);
+        assertThat(decoded.getMapperClassName()).isEqualTo(MAPPER);
+        assertThat(decoded.getMethodName()).isEqualTo("updateUser");
+        assertThat(receiver.decode(inlineEncoded).getMethodName()).isEqualTo("deleteUser");
+    }
+
+    @Test
+    void roundTripsScalarArguments() {
+        Timestamp timestamp = new Timestamp(1_700_000_000_000L);
+        timestamp.setNanos(123_456_789);
+        Object[] args = {
+                null, "中文 text", Integer.MIN_VALUE, Long.MAX_VALUE, -1L, true, false, 3.5d, -0.25f,
+                (short) -7, (byte) 0x7f, 'x', new BigDecimal("-12345.6789"), new BigInteger("123456789012345678901234567890"),
+                new Date(1_700_000_000_456L), timestamp, LocalDateTime.of(2024, 2, 29, 23, 59, 59, 999_999_999),
+                LocalDate.of(1969, 12, 31), LocalTime.of(0, 0, 1, 1), Instant.ofEpochSecond(-1, 5),
+                Status.DISABLED
+        };
+
+        Object[] decoded = roundTrip(message(args)).getArgs();
+        assertThat(decoded).containsExactly(args);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] != null) {
+                assertThat(decoded[i]).as("arg %d", i).isExactlyInstanceOf(args[i].getClass());
+            }
+        }
+    }
+
+    @Test
+    void roundTripsBytesAndContainers() {
+        MapperMethod.ParamMap<Object> paramMap = new MapperMethod.ParamMap<>();
+        paramMap.put("id", 7L);
+        paramMap.put("param1", 7L);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("names", new ArrayList<>(Arrays.asList("a", "b")));
+        map.put("ids", new LinkedHashSet<>(Arrays.asList(1, 2, 3)));
+
+        Object[] decoded = roundTrip(message(new byte[]{1, -2, 3}, paramMap, map, new Object[]{"x", 1})).getArgs();
+
+        assertThat((byte[]) decoded[0]).containsExactly(1, -2, 3);
+        assertThat(decoded[1]).isExactlyInstanceOf(MapperMethod.ParamMap.class).isEqualTo(paramMap);
+        assertThat(decoded[2]).isEqualTo(map);
+        assertThat((Object[]) decoded[3]).containsExactly("x", 1);
+    }
+
+    @Test
+    void roundTripsPojoByFields() {
+        User user = new User();
+        user.setId(9L);
+        user.setName("bob");
+        user.setStatus(Status.ACTIVE);
+        user.setTags(new ArrayList<>(Arrays.asList("vip", "new")));
+        user.setTransientValue("dropped");
+        Address address = new Address();
+        address.setCity("Hangzhou");
+        user.setAddress(address);
+
+        User decoded = (User) roundTrip(message(user)).getArgs()[0];
+
+        assertThat(decoded).usingRecursiveComparison().ignoringFields("transientValue").isEqualTo(user);
+        assertThat(decoded.getTransientValue()).isNull();
+    }
+
+    @Test
+    void fallsBackToJdkSerializationWithoutNoArgConstructor() {
+        Money money = new Money("CNY", 100);
+
+        Object decoded = roundTrip(message(money)).getArgs()[0];
+
+        assertThat(decoded).isEqualTo(money);
+    }
+
+    @Test
+    void rejectsTypesOutsideWhitelist() {
+        BinaryMessageCodec receiver = new BinaryMessageCodec(routeRegistry, typeFilter(Collections.emptyList()));
+        User user = new User();
+        byte[] pojo = codec.encode(message(user));
+        byte[] serialized = codec.encode(message(new Money("CNY", 1)));
+        byte[] enumValue = codec.encode(message(Status.ACTIVE));
+
+        assertThatThrownBy(() -> receiver.decode(pojo)).isInstanceOf(MessageCodecException.class);
+        assertThatThrownBy(() -> receiver.decode(serialized)).isInstanceOf(MessageCodecException.class);
+        assertThatThrownBy(() -> receiver.decode(enumValue)).isInstanceOf(MessageCodecException.class);
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] data = codec.encode(message("x"));
+        data[0] = 99;
+
+        assertThatThrownBy(() -> codec.decode(data)).isInstanceOf(MessageCodecException.class);
+    }
+
+    @Test
+    void malformedInputFailsWithCodecException() {
+        byte[] data = codec.encode(message("alice", 1L, Arrays.asList(1, 2), new User()));
+
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThatThrownBy(() -> codec.decode(truncated)).isInstanceOf(MessageCodecException.class);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            byte[] corrupted = data.clone();
+            for (int j = 0; j < 1 + random.nextInt(4); j++) {
+                corrupted[random.nextInt(corrupted.length)] = (byte) random.nextInt();
+            }
+            assertDecodesOrRejects(corrupted);
+        }
+        for (int i = 0; i < 20_000; i++) {
+            byte[] garbage = new byte[1 + random.nextInt(64)];
+            random.nextBytes(garbage);
+            garbage[0] = 1;
+            assertDecodesOrRejects(garbage);
+        }
+    }
+
+    @Test
+    void deeplyNestedArgumentsAreRejected() {
+        List<Object> nested = new ArrayList<>();
+        List<Object> current = nested;
+        for (int i = 0; i < 1000; i++) {
+            List<Object> child = new ArrayList<>();
+            current.add(child);
+            current = child;
+        }
+        byte[] data = codec.encode(message(nested));
+
+        assertThatThrownBy(() -> codec.decode(data)).isInstanceOf(MessageCodecException.class);
+    }
+
+    private void assertDecodesOrRejects(byte[] data) {
+        try {
+            codec.decode(data);
+        } catch (MessageCodecException e) {
+            // 格式错误只允许以编解码异常结束
+        }
+    }
+
+    private DBOperationMessage roundTrip(DBOperationMessage message) {
+        return codec.decode(codec.encode(message));
+    }
+
+    private static DBOperationMessage message(Object... args) {
+        return DBOperationMessage.builder()
+                .messageId(UUID.randomUUID().toString())
+                .mapperClassName(MAPPER)
+                .methodName("updateUser")
+                .operationType(OperationType.UPDATE)
+                .args(args)
+                .build();
+    }
+
+    private static ParameterTypeFilter typeFilter(List<String> extraAllowed) {
+        return new ParameterTypeFilter(new StaticListableBeanFactory().getBeanProvider(SqlSessionFactory.class),
+                extraAllowed);
+    }
+
+    enum Status {
+        ACTIVE, DISABLED
+    }
+
+    @Data
+    static class User {
+
+        private Long id;
+
+        private String name;
+
+        private Status status;
+
+        private List<String> tags;
+
+        private Address address;
+
+        private transient String transientValue;
+    }
+
+    @Data
+    static class Address {
+
+        private String city;
+    }
+
+    @Data
+    static class Money implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String currency;
+
+        private final long amount;
+    }
+}
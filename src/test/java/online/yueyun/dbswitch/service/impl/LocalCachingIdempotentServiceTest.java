@@ -0,0 +1,99 @@
+package online.yueyun.dbswitch.service.impl;
+
+import online.yueyun.dbswitch.enums.ClaimStatus;
+import online.yueyun.dbswitch.metrics.DBSwitchMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * LocalCachingIdempotentService本地LRU缓存测试
+ */
+class LocalCachingIdempotentServiceTest {
+
+    private RedisIdempotentService delegate;
+
+    private LocalCachingIdempotentService service;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(RedisIdempotentService.class);
+        service = new LocalCachingIdempotentService();
+        ReflectionTestUtils.setField(service, "delegate", delegate);
+        ReflectionTestUtils.setField(service, "metrics", new DBSwitchMetrics() {
+        });
+        ReflectionTestUtils.setField(service, "lruSize", 2);
+        service.init();
+    }
+
+    @Test
+    void unconfirmedMessagesAreCheckedInRedis() {
+        when(delegate.isProcessed("m1")).thenReturn(false);
+
+        assertThat(service.isProcessed("m1")).isFalse();
+        assertThat(service.isProcessed(null)).isFalse();
+
+        verify(delegate).isProcessed("m1");
+        assertThat(service.getLruHits()).isZero();
+        assertThat(service.getRedisLookups()).isEqualTo(1);
+    }
+
+    @Test
+    void confirmedMessagesAreAnsweredLocally() {
+        service.confirm(Collections.singletonList("m1"));
+        service.markAsProcessed("m2");
+
+        assertThat(service.isProcessed("m1")).isTrue();
+        assertThat(service.claim("m2")).isEqualTo(ClaimStatus.DONE);
+
+        verify(delegate, never()).isProcessed("m1");
+        verify(delegate, never()).claimBatch(anyList());
+        assertThat(service.getLruHits()).isEqualTo(2);
+        assertThat(service.getRedisLookups()).isZero();
+    }
+
+    @Test
+    void claimBatchMergesLocalAndRemoteStatusesInOrder() {
+        service.confirm(Collections.singletonList("m2"));
+        when(delegate.claimBatch(Arrays.asList("m1", "m3")))
+                .thenReturn(Arrays.asList(ClaimStatus.CLAIMED, ClaimStatus.IN_PROGRESS));
+
+        List<ClaimStatus> statuses = service.claimBatch(Arrays.asList("m1", "m2", "m3"));
+
+        assertThat(statuses).containsExactly(ClaimStatus.CLAIMED, ClaimStatus.DONE, ClaimStatus.IN_PROGRESS);
+        assertThat(service.getLruHits()).isEqualTo(1);
+        assertThat(service.getRedisLookups()).isEqualTo(2);
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        service.confirm(Arrays.asList("m1", "m2"));
+        // 访问m1后m2成为最久未使用的条目
+        assertThat(service.isProcessed("m1")).isTrue();
+        service.confirm(Collections.singletonList("m3"));
+
+        assertThat(service.isProcessed("m2")).isFalse();
+        assertThat(service.isProcessed("m1")).isTrue();
+        assertThat(service.isProcessed("m3")).isTrue();
+        verify(delegate).isProcessed("m2");
+    }
+
+    @Test
+    void releasedMessagesAreNotRemembered() {
+        service.release(Collections.singletonList("m1"));
+
+        assertThat(service.isProcessed("m1")).isFalse();
+        verify(delegate).release(Collections.singletonList("m1"));
+    }
+}
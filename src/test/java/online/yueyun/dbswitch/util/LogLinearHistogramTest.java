@@ -0,0 +1,119 @@
+package online.yueyun.dbswitch.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * LogLinearHistogram测试
+ */
+class LogLinearHistogramTest {
+
+    @Test
+    void emptyHistogramReturnsZero() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+
+        assertThat(histogram.count()).isZero();
+        assertThat(LogLinearHistogram.percentile(99, histogram)).isZero();
+        assertThat(LogLinearHistogram.percentile(99)).isZero();
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(LogLinearHistogram.percentile(0, histogram)).isEqualTo(1);
+        assertThat(LogLinearHistogram.percentile(50, histogram)).isEqualTo(10);
+        assertThat(LogLinearHistogram.percentile(95, histogram)).isEqualTo(19);
+        assertThat(LogLinearHistogram.percentile(100, histogram)).isEqualTo(20);
+    }
+
+    @Test
+    void bucketUpperBoundIsWithinRelativeError() {
+        for (long value = 0; value < 1_000_000; value += value < 1000 ? 1 : 997) {
+            assertBucket(value);
+        }
+        for (int exponent = 5; exponent < 63; exponent++) {
+            long power = 1L << exponent;
+            assertBucket(power - 1);
+            assertBucket(power);
+            assertBucket(power + 1);
+        }
+        assertBucket(Long.MAX_VALUE);
+        assertThat(LogLinearHistogram.upperBoundOf(LogLinearHistogram.bucketOf(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void percentilesOfUniformValuesAreWithinRelativeError() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.count()).isEqualTo(100_000);
+        assertWithin(LogLinearHistogram.percentile(50, histogram), 50_000);
+        assertWithin(LogLinearHistogram.percentile(90, histogram), 90_000);
+        assertWithin(LogLinearHistogram.percentile(99, histogram), 99_000);
+        assertWithin(LogLinearHistogram.percentile(99.9, histogram), 99_900);
+        assertWithin(LogLinearHistogram.percentile(100, histogram), 100_000);
+    }
+
+    @Test
+    void percentileMergesHistograms() {
+        LogLinearHistogram fast = new LogLinearHistogram();
+        LogLinearHistogram slow = new LogLinearHistogram();
+        for (int i = 0; i < 90; i++) {
+            fast.record(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            slow.record(10_000);
+        }
+
+        assertThat(LogLinearHistogram.percentile(90, fast, slow)).isEqualTo(10);
+        assertWithin(LogLinearHistogram.percentile(91, fast, slow), 10_000);
+        assertThat(LogLinearHistogram.percentile(50, slow)).isGreaterThanOrEqualTo(10_000);
+    }
+
+    @Test
+    void negativeValuesAreRecordedAsZeroAndResetClears() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MIN_VALUE);
+
+        assertThat(histogram.count()).isEqualTo(2);
+        assertThat(LogLinearHistogram.percentile(100, histogram)).isZero();
+
+        histogram.reset();
+        assertThat(histogram.count()).isZero();
+    }
+
+    @Test
+    void outOfRangePercentileIsClamped() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        histogram.record(3);
+        histogram.record(7);
+
+        assertThat(LogLinearHistogram.percentile(-1, histogram)).isEqualTo(3);
+        assertThat(LogLinearHistogram.percentile(150, histogram)).isEqualTo(7);
+    }
+
+    /**
+     * 值落在所在桶内，上界的相对误差不超过1/32，上界加一落在下一个桶
+     */
+    private static void assertBucket(long value) {
+        int bucket = LogLinearHistogram.bucketOf(value);
+        long upper = LogLinearHistogram.upperBoundOf(bucket);
+        assertThat(upper).as("upper bound of %d", value).isGreaterThanOrEqualTo(value);
+        assertThat((double) (upper - value)).as("error of %d", value).isLessThanOrEqualTo(value / 32.0);
+        if (upper < Long.MAX_VALUE) {
+            assertThat(LogLinearHistogram.bucketOf(upper + 1)).isEqualTo(bucket + 1);
+        }
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        assertThat(actual).isGreaterThanOrEqualTo(expected).isLessThanOrEqualTo(expected + expected / 32);
+    }
+}
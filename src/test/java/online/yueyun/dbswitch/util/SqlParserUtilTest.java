@@ -0,0 +1,104 @@
+package online.yueyun.dbswitch.util;
+
+import online.yueyun.dbswitch.enums.OperationType;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SqlParserUtil.analyze测试
+ */
+class SqlParserUtilTest {
+
+    @Test
+    void plainStatements() {
+        SqlAnalysis select = SqlParserUtil.analyze("SELECT u.id FROM user u JOIN `db`.`order` o ON o.user_id = u.id WHERE u.id = ?");
+        assertThat(select.getOperationType()).isEqualTo(OperationType.SELECT);
+        assertThat(select.getTables()).containsExactly("user", "order");
+        assertThat(select.getWriteTables()).isEmpty();
+
+        SqlAnalysis update = SqlParserUtil.analyze("UPDATE user u, profile p SET u.name = p.name WHERE u.id = p.user_id");
+        assertThat(update.getOperationType()).isEqualTo(OperationType.UPDATE);
+        assertThat(update.getWriteTables()).containsExactly("user", "profile");
+
+        SqlAnalysis delete = SqlParserUtil.analyze("DELETE FROM user WHERE id IN (SELECT user_id FROM blacklist)");
+        assertThat(delete.getOperationType()).isEqualTo(OperationType.DELETE);
+        assertThat(delete.getTables()).containsExactly("user", "blacklist");
+        assertThat(delete.getWriteTables()).containsExactly("user");
+        assertThat(delete.isUpsert()).isFalse();
+    }
+
+    @Test
+    void commonTableExpressionsAreNotTables() {
+        SqlAnalysis select = SqlParserUtil.analyze("WITH recent AS (SELECT * FROM orders WHERE created > ?), "
+                + "totals (user_id, total) AS (SELECT user_id, SUM(amount) FROM recent GROUP BY user_id) "
+                + "SELECT * FROM totals t JOIN user u ON u.id = t.user_id");
+        assertThat(select.getOperationType()).isEqualTo(OperationType.SELECT);
+        assertThat(select.getTables()).containsExactlyInAnyOrder("orders", "user");
+
+        SqlAnalysis delete = SqlParserUtil.analyze("WITH RECURSIVE expired AS (SELECT id FROM session WHERE expire_at < NOW()) "
+                + "DELETE FROM session WHERE id IN (SELECT id FROM expired)");
+        assertThat(delete.getOperationType()).isEqualTo(OperationType.DELETE);
+        assertThat(delete.getTables()).containsExactly("session");
+        assertThat(delete.getWriteTables()).containsExactly("session");
+    }
+
+    @Test
+    void replaceIsUpsertInsert() {
+        SqlAnalysis analysis = SqlParserUtil.analyze("REPLACE INTO user_setting (user_id, name, value) VALUES (?, ?, ?)");
+
+        assertThat(analysis.getOperationType()).isEqualTo(OperationType.INSERT);
+        assertThat(analysis.isUpsert()).isTrue();
+        assertThat(analysis.getWriteTables()).containsExactly("user_setting");
+    }
+
+    @Test
+    void onDuplicateKeyUpdateIsUpsertInsert() {
+        SqlAnalysis analysis = SqlParserUtil.analyze("INSERT INTO counter (id, hits) SELECT id, 1 FROM visit "
+                + "ON DUPLICATE KEY UPDATE hits = hits + VALUES(hits)");
+
+        assertThat(analysis.getOperationType()).isEqualTo(OperationType.INSERT);
+        assertThat(analysis.isUpsert()).isTrue();
+        assertThat(analysis.getTables()).containsExactly("counter", "visit");
+        assertThat(analysis.getWriteTables()).containsExactly("counter");
+
+        SqlAnalysis plain = SqlParserUtil.analyze("INSERT INTO counter (id, hits) VALUES (?, ?)");
+        assertThat(plain.isUpsert()).isFalse();
+    }
+
+    @Test
+    void commentsAndLiteralsAreSkipped() {
+        SqlAnalysis analysis = SqlParserUtil.analyze("/* DELETE FROM audit */ -- UPDATE audit SET x = 1\n"
+                + "# INSERT INTO audit\n"
+                + "UPDATE user SET note = 'FROM secret; DELETE FROM audit', remark = \"it''s UPDATE log\" WHERE id = ?");
+
+        assertThat(analysis.getOperationType()).isEqualTo(OperationType.UPDATE);
+        assertThat(analysis.getTables()).containsExactly("user");
+        assertThat(analysis.getWriteTables()).containsExactly("user");
+    }
+
+    @Test
+    void functionArgumentsAndLockingClausesAreNotTables() {
+        SqlAnalysis analysis = SqlParserUtil.analyze("SELECT EXTRACT(YEAR FROM created) FROM orders WHERE id = ? FOR UPDATE");
+
+        assertThat(analysis.getOperationType()).isEqualTo(OperationType.SELECT);
+        assertThat(analysis.getTables()).containsExactly("orders");
+        assertThat(analysis.getWriteTables()).isEmpty();
+    }
+
+    @Test
+    void whitespaceVariantsShareAnalysis() {
+        SqlAnalysis first = SqlParserUtil.analyze("SELECT * FROM  user\n WHERE id = ?");
+        SqlAnalysis second = SqlParserUtil.analyze("SELECT *\tFROM user WHERE id = ?");
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    void unknownStatements() {
+        assertThat(SqlParserUtil.analyze(null)).isSameAs(SqlAnalysis.UNKNOWN);
+        assertThat(SqlParserUtil.analyze("")).isSameAs(SqlAnalysis.UNKNOWN);
+        assertThat(SqlParserUtil.analyze("-- only a comment")).isSameAs(SqlAnalysis.UNKNOWN);
+        assertThat(SqlParserUtil.analyze("TRUNCATE TABLE user").getOperationType()).isEqualTo(OperationType.UNKNOWN);
+    }
+}